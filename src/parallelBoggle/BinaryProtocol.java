@@ -0,0 +1,383 @@
+package parallelBoggle;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * BinaryProtocol class.
+ * Encodes and decodes the frames of the binary socket protocol. A client
+ * selects this protocol by sending the MAGIC byte as the first byte of the
+ * connection, every other first byte selects the text protocol.
+ *
+ * Every frame is a varint with the length of its payload followed by the
+ * payload. A request payload is the tag of the request, the command (the
+ * same values as the text protocol) and its parameters:
+ *
+ *   1 REQUEST_SESSION            players, username, board dimension
+ *   2 REQUEST_START              session id, username (empty if unknown)
+ *   3 SUBMIT_WORD                session id, username, position of the word
+ *                                in the solution of the session
+ *   4 REQUEST_STATISTICS         session id, username
+ *   5 FINALIZE_SESSION           session id
+ *   6 JOIN_SESSION               session id, username
+ *   7 REQUEST_SESSION_STATISTICS session id, username
+ *   8 SUBSCRIBE_STATISTICS       session id, username
+ *   9 UNSUBSCRIBE_STATISTICS     session id, username
+ *  10 REQUEST_LEADERBOARD        position of the first player, number of
+ *                                players
+ *  11 REQUEST_WINDOW_LEADERBOARD window (0 hour, 1 day, 2 week), position
+ *                                of the first player, number of players
+ *  12 REJOIN_SESSION             session id, username, rejoin token
+ *
+ * A response payload is the tag of its request, a status byte and its
+ * values:
+ *
+ *   0 ERROR     message
+ *   1 SESSION   session id, board dimension, one byte per board cell,
+ *               number of words, words of the solution, rejoin token
+ *   2 RESPONSE  points, score, high score, ranking
+ *   3 ACK       nothing
+ *   4 PUSH      points, score, high score, ranking
+ *   5 LEADERBOARD number of players, and per player its rank, username,
+ *               total score, games, best word, best word score, unique and
+ *               repeated words
+ *
+ * PUSH frames are not answers to a request, they carry the statistics of
+ * a subscribed player and the tag of the request that subscribed it.
+ *
+ * Numbers are unsigned varints (seven bits per byte, least significant
+ * group first), except points and scores that are zigzag encoded because
+ * they can be negative. Strings are a varint with their length in bytes
+ * followed by their UTF-8 bytes. Rejoin tokens are eight bytes, big
+ * endian. The solution of a session is sorted, so
+ * clients find the position of a word with a binary search.
+ *
+ * This class only has static methods, so it is thread safe.
+ */
+final class BinaryProtocol {
+  static final int MAGIC = 0xB6;
+  static final int MAX_REQUEST = 1024;
+  static final int MAX_VARINT_SIZE = 5;
+
+  static final int ERROR = 0;
+  static final int SESSION = 1;
+  static final int RESPONSE = 2;
+  static final int ACK = 3;
+  static final int PUSH = 4;
+  static final int LEADERBOARD = 5;
+
+  private BinaryProtocol() {
+  }
+
+  /**
+   * Writes an unsigned varint.
+   */
+  static void putVarint(ByteBuffer out, int value) {
+    while ((value & ~0x7F) != 0) {
+      out.put((byte) ((value & 0x7F) | 0x80));
+      value >>>= 7;
+    }
+    out.put((byte) value);
+  }
+
+  /**
+   * Reads an unsigned varint.
+   */
+  static int getVarint(ByteBuffer in) {
+    int value = 0;
+    for (int shift = 0; shift < 35; shift += 7) {
+      byte b = in.get();
+      value |= (b & 0x7F) << shift;
+      if (b >= 0)
+        return value;
+    }
+    throw new BoggleException("Malformed varint.");
+  }
+
+  /**
+   * Returns the number of bytes of a varint.
+   */
+  static int varintSize(int value) {
+    int size = 1;
+    while ((value & ~0x7F) != 0) {
+      value >>>= 7;
+      size++;
+    }
+    return size;
+  }
+
+  /**
+   * Writes a signed value as a zigzag varint.
+   */
+  static void putSigned(ByteBuffer out, int value) {
+    putVarint(out, (value << 1) ^ (value >> 31));
+  }
+
+  /**
+   * Reads a signed value written as a zigzag varint.
+   */
+  static int getSigned(ByteBuffer in) {
+    int value = getVarint(in);
+    return (value >>> 1) ^ -(value & 1);
+  }
+
+  /**
+   * Writes a string. ASCII strings are copied without encoding them first.
+   */
+  static void putString(ByteBuffer out, String value) {
+    int length = value.length();
+    for (int i = 0; i < length; i++) {
+      if (value.charAt(i) >= 0x80) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        putVarint(out, bytes.length);
+        out.put(bytes);
+        return;
+      }
+    }
+    putVarint(out, length);
+    for (int i = 0; i < length; i++)
+      out.put((byte) value.charAt(i));
+  }
+
+  /**
+   * Reads a string from a heap buffer.
+   */
+  static String getString(ByteBuffer in) {
+    int length = getVarint(in);
+    if (length > in.remaining())
+      throw new BufferUnderflowException();
+    String value = new String(in.array(), in.arrayOffset() + in.position(), length,
+            StandardCharsets.UTF_8);
+    in.position(in.position() + length);
+    return value;
+  }
+
+  /**
+   * Returns the maximum number of bytes of a string.
+   */
+  static int stringSize(String value) {
+    return MAX_VARINT_SIZE + value.length() * 3;
+  }
+
+  /**
+   * Allocates a buffer for a frame with a payload of at most the given size.
+   * The payload is written after the room that is reserved for its length.
+   */
+  static ByteBuffer allocateFrame(int payloadSize) {
+    ByteBuffer frame = ByteBuffer.allocate(MAX_VARINT_SIZE + payloadSize);
+    frame.position(MAX_VARINT_SIZE);
+    return frame;
+  }
+
+  /**
+   * Writes the length of the payload of a frame created by allocateFrame
+   * right before the payload and prepares the frame to be written.
+   */
+  static ByteBuffer finishFrame(ByteBuffer frame) {
+    int end = frame.position();
+    int length = end - MAX_VARINT_SIZE;
+    int start = MAX_VARINT_SIZE - varintSize(length);
+    frame.position(start);
+    putVarint(frame, length);
+    frame.position(start).limit(end);
+    return frame;
+  }
+
+  /**
+   * Reads a complete request frame from the input if it is available and
+   * returns its payload, otherwise returns null and leaves the input
+   * untouched.
+   */
+  static ByteBuffer nextFrame(ByteBuffer input) {
+    int start = input.position();
+    int length = 0;
+    for (int shift = 0; ; shift += 7) {
+      if (!input.hasRemaining()) {
+        input.position(start);
+        return null;
+      }
+      byte b = input.get();
+      length |= (b & 0x7F) << shift;
+      if (b >= 0)
+        break;
+      if (shift >= 28)
+        throw new BoggleException("Malformed frame length.");
+    }
+    if (length > MAX_REQUEST)
+      throw new BoggleException("The request is too long.");
+    if (input.remaining() < length) {
+      input.position(start);
+      return null;
+    }
+    byte[] payload = new byte[length];
+    input.get(payload);
+    return ByteBuffer.wrap(payload);
+  }
+
+  /**
+   * Encodes an error response.
+   */
+  static ByteBuffer error(int tag, String message) {
+    String text = message == null ? "" : message;
+    ByteBuffer frame = allocateFrame(MAX_VARINT_SIZE + 1 + stringSize(text));
+    putVarint(frame, tag);
+    frame.put((byte) ERROR);
+    putString(frame, text);
+    return finishFrame(frame);
+  }
+
+  /**
+   * Encodes an acknowledgement.
+   */
+  static ByteBuffer ack(int tag) {
+    ByteBuffer frame = allocateFrame(MAX_VARINT_SIZE + 1);
+    putVarint(frame, tag);
+    frame.put((byte) ACK);
+    return finishFrame(frame);
+  }
+
+  /**
+   * Encodes a boggle response.
+   */
+  static ByteBuffer response(int tag, BoggleResponse response) {
+    return response(tag, RESPONSE, response);
+  }
+
+  /**
+   * Encodes the statistics pushed to a subscribed player.
+   */
+  static ByteBuffer push(int tag, BoggleResponse response) {
+    return response(tag, PUSH, response);
+  }
+
+  /**
+   * Encodes a boggle response with the given status.
+   */
+  private static ByteBuffer response(int tag, int status, BoggleResponse response) {
+    ByteBuffer frame = allocateFrame(5 * MAX_VARINT_SIZE + 1);
+    putVarint(frame, tag);
+    frame.put((byte) status);
+    putSigned(frame, response.getLatestPoints());
+    putSigned(frame, response.getScore());
+    putSigned(frame, response.getHighScore());
+    putVarint(frame, response.getRanking());
+    return finishFrame(frame);
+  }
+
+  /**
+   * Decodes a boggle response.
+   */
+  static BoggleResponse getResponse(ByteBuffer in) {
+    int points = getSigned(in);
+    int score = getSigned(in);
+    int highScore = getSigned(in);
+    int ranking = getVarint(in);
+    return new BoggleResponse(points, score, highScore, ranking);
+  }
+
+  /**
+   * Encodes a page of the leaderboard.
+   */
+  static ByteBuffer leaderboard(int tag, List<PlayerRecord> page) {
+    int size = 2 * MAX_VARINT_SIZE + 1;
+    for (PlayerRecord player : page)
+      size += 6 * MAX_VARINT_SIZE + stringSize(player.getUsername())
+              + stringSize(player.getBestWord());
+    ByteBuffer frame = allocateFrame(size);
+    putVarint(frame, tag);
+    frame.put((byte) LEADERBOARD);
+    putVarint(frame, page.size());
+    for (PlayerRecord player : page) {
+      putVarint(frame, player.getRank());
+      putString(frame, player.getUsername());
+      putSigned(frame, player.getTotalScore());
+      putVarint(frame, player.getGames());
+      putString(frame, player.getBestWord());
+      putSigned(frame, player.getBestWordScore());
+      putVarint(frame, player.getUniqueWords());
+      putVarint(frame, player.getRepeatedWords());
+    }
+    return finishFrame(frame);
+  }
+
+  /**
+   * Decodes a page of the leaderboard.
+   */
+  static List<PlayerRecord> getLeaderboard(ByteBuffer in) {
+    int count = getVarint(in);
+    PlayerRecord[] page = new PlayerRecord[count];
+    for (int i = 0; i < count; i++) {
+      int rank = getVarint(in);
+      String username = getString(in);
+      int totalScore = getSigned(in);
+      int games = getVarint(in);
+      String bestWord = getString(in);
+      int bestWordScore = getSigned(in);
+      page[i] = new PlayerRecord(rank, username, totalScore, games, bestWord, bestWordScore,
+              getVarint(in), getVarint(in));
+    }
+    return Arrays.asList(page);
+  }
+
+  /**
+   * Encodes a session. The words of a server-side solution are copied
+   * from the dictionary without turning them into strings.
+   */
+  static ByteBuffer session(int tag, Session session) {
+    List<String> solution = session.getSolution();
+    int dimension = session.getBoardDimension();
+    int size = 4 * MAX_VARINT_SIZE + 1 + dimension * dimension + Long.BYTES;
+    LocalSession local = session instanceof LocalSession.Seat
+            ? ((LocalSession.Seat) session).getSession()
+            : session instanceof LocalSession ? (LocalSession) session : null;
+    WordList words = local != null ? local.getWords() : null;
+    for (int i = 0; i < solution.size(); i++)
+      size += MAX_VARINT_SIZE + (words != null ? words.getLength(i) : stringSize(solution.get(i)));
+    ByteBuffer frame = allocateFrame(size);
+    putVarint(frame, tag);
+    frame.put((byte) SESSION);
+    putVarint(frame, session.getId());
+    putVarint(frame, dimension);
+    String board = session.getBoard();
+    for (int i = 0; i < board.length(); i++) {
+      char c = board.charAt(i);
+      if (c != ' ' && c != ',')
+        frame.put((byte) c);
+    }
+    putVarint(frame, solution.size());
+    for (int i = 0; i < solution.size(); i++) {
+      if (words != null) {
+        putVarint(frame, words.getLength(i));
+        words.copyWord(i, frame);
+      }
+      else
+        putString(frame, solution.get(i));
+    }
+    frame.putLong(session.getRejoinToken());
+    return finishFrame(frame);
+  }
+
+  /**
+   * Decodes a session.
+   */
+  static Session getSession(ByteBuffer in) {
+    int id = getVarint(in);
+    int dimension = getVarint(in);
+    StringBuilder board = new StringBuilder(dimension * dimension * 2);
+    for (int row = 0; row < dimension; row++) {
+      for (int column = 0; column < dimension; column++) {
+        board.append((char) in.get());
+        board.append(column == dimension - 1 ? ',' : ' ');
+      }
+    }
+    int count = getVarint(in);
+    String[] solution = new String[count];
+    for (int i = 0; i < count; i++)
+      solution[i] = getString(in);
+    return new Session(id, board.toString(), dimension, Arrays.asList(solution),
+            null, 0, in.getLong());
+  }
+}
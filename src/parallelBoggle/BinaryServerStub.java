@@ -0,0 +1,356 @@
+package parallelBoggle;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.rmi.RemoteException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * BinaryServerStub class.
+ * Implements the BoggleServerInterface over a persistent socket connection
+ * that uses the binary protocol, so socket clients can use the same calls
+ * as RMI clients. Requests are tagged and a reader thread completes the
+ * future of each request when its response arrives, so several threads
+ * can share the connection.
+ *
+ * The stub keeps the solution of the sessions it receives in order to send
+ * the position of the submitted words instead of the words themselves.
+ * The statistics pushed by the server are passed to the listeners by the
+ * reader thread.
+ *
+ * This class is thread safe.
+ */
+public class BinaryServerStub implements BoggleServerInterface {
+  private final Socket socket;
+  private final OutputStream out;
+  private final AtomicInteger nextTag;
+  private final Map<Integer, CompletableFuture<ByteBuffer>> pending;
+  private final Map<Integer, List<String>> solutions;
+  private final Map<Integer, StatisticsListener> listeners;
+  private final Map<String, Integer> subscriptions;
+  private volatile boolean closed;
+
+  /**
+   * Connects to the server in the given host and port and selects
+   * the binary protocol.
+   */
+  public BinaryServerStub(String host, int port) throws IOException {
+    this.socket = new Socket(host, port);
+    socket.setTcpNoDelay(true);
+    socket.setKeepAlive(true);
+    this.out = socket.getOutputStream();
+    this.nextTag = new AtomicInteger();
+    this.pending = new ConcurrentHashMap<>();
+    this.solutions = new ConcurrentHashMap<>();
+    this.listeners = new ConcurrentHashMap<>();
+    this.subscriptions = new ConcurrentHashMap<>();
+    out.write(BinaryProtocol.MAGIC);
+    out.flush();
+    Thread reader = new Thread(this::readResponses, "binary-stub-reader");
+    reader.setDaemon(true);
+    reader.start();
+  }
+
+  /**
+   * Creates a request frame with room for the given number of parameter
+   * bytes, with its tag and command already written.
+   */
+  private ByteBuffer request(int tag, int command, int size) {
+    ByteBuffer frame = BinaryProtocol.allocateFrame(2 * BinaryProtocol.MAX_VARINT_SIZE + size);
+    BinaryProtocol.putVarint(frame, tag);
+    BinaryProtocol.putVarint(frame, command);
+    return frame;
+  }
+
+  /**
+   * Sends a request and waits for its response. Error responses are
+   * thrown as BoggleExceptions, like the RMI service does.
+   */
+  private ByteBuffer call(int tag, ByteBuffer frame, int expected) throws RemoteException {
+    CompletableFuture<ByteBuffer> future = new CompletableFuture<>();
+    pending.put(tag, future);
+    BinaryProtocol.finishFrame(frame);
+    if (closed) {
+      pending.remove(tag);
+      throw new RemoteException("The connection to the server was lost.");
+    }
+    try {
+      synchronized (out) {
+        out.write(frame.array(), frame.position(), frame.remaining());
+        out.flush();
+      }
+    } catch (IOException e) {
+      pending.remove(tag);
+      throw new RemoteException("The request could not be sent.", e);
+    }
+    ByteBuffer response;
+    try {
+      response = future.join();
+    } catch (CompletionException e) {
+      throw new RemoteException("The connection to the server was lost.", e.getCause());
+    }
+    int status = response.get();
+    if (status == BinaryProtocol.ERROR)
+      throw new BoggleException(BinaryProtocol.getString(response));
+    if (status != expected)
+      throw new RemoteException("Unexpected response type " + status + ".");
+    return response;
+  }
+
+  /**
+   * Reads the response frames until the connection is closed.
+   */
+  private void readResponses() {
+    try (InputStream in = new BufferedInputStream(socket.getInputStream())) {
+      while (true) {
+        int length = readVarint(in);
+        byte[] payload = in.readNBytes(length);
+        if (payload.length < length)
+          throw new EOFException();
+        ByteBuffer frame = ByteBuffer.wrap(payload);
+        int tag = BinaryProtocol.getVarint(frame);
+        if (frame.get(frame.position()) == BinaryProtocol.PUSH) {
+          StatisticsListener listener = listeners.get(tag);
+          if (listener != null) {
+            frame.get();
+            try {
+              listener.statisticsChanged(BinaryProtocol.getResponse(frame));
+            } catch (RemoteException e) {
+              e.printStackTrace();
+            }
+          }
+          continue;
+        }
+        CompletableFuture<ByteBuffer> future = pending.remove(tag);
+        if (future != null)
+          future.complete(frame);
+      }
+    } catch (IOException e) {
+      System.out.println("Connection lost. " + e.getMessage());
+    }
+    closed = true;
+    IOException lost = new IOException("The connection to the server was lost.");
+    for (CompletableFuture<ByteBuffer> future : pending.values())
+      future.completeExceptionally(lost);
+    pending.clear();
+  }
+
+  /**
+   * Reads a varint from a stream.
+   */
+  private static int readVarint(InputStream in) throws IOException {
+    int value = 0;
+    for (int shift = 0; shift < 35; shift += 7) {
+      int b = in.read();
+      if (b < 0)
+        throw new EOFException();
+      value |= (b & 0x7F) << shift;
+      if ((b & 0x80) == 0)
+        return value;
+    }
+    throw new IOException("Malformed varint.");
+  }
+
+  /**
+   * Decodes a session and keeps its solution.
+   */
+  private Session readSession(ByteBuffer response) {
+    Session session = BinaryProtocol.getSession(response);
+    solutions.put(session.getId(), session.getSolution());
+    return session;
+  }
+
+  @Override
+  public Session createSession(int numPlayers, String playerName) throws RemoteException {
+    return createSession(numPlayers, playerName, BoggleServer.BOARD_DIMENSION);
+  }
+
+  @Override
+  public Session createSession(int numPlayers, String playerName, int boardDimension)
+          throws RemoteException {
+    int tag = nextTag.incrementAndGet();
+    ByteBuffer frame = request(tag, BoggleServer.REQUEST_SESSION,
+            2 * BinaryProtocol.MAX_VARINT_SIZE + BinaryProtocol.stringSize(playerName));
+    BinaryProtocol.putVarint(frame, numPlayers);
+    BinaryProtocol.putString(frame, playerName);
+    BinaryProtocol.putVarint(frame, boardDimension);
+    return readSession(call(tag, frame, BinaryProtocol.SESSION));
+  }
+
+  @Override
+  public Session joinSession(int sessionId, String playerName) throws RemoteException {
+    int tag = nextTag.incrementAndGet();
+    ByteBuffer frame = request(tag, BoggleServer.JOIN_SESSION,
+            BinaryProtocol.MAX_VARINT_SIZE + BinaryProtocol.stringSize(playerName));
+    BinaryProtocol.putVarint(frame, sessionId);
+    BinaryProtocol.putString(frame, playerName);
+    return readSession(call(tag, frame, BinaryProtocol.SESSION));
+  }
+
+  @Override
+  public Session rejoinSession(int sessionId, String playerName, long token)
+          throws RemoteException {
+    int tag = nextTag.incrementAndGet();
+    ByteBuffer frame = request(tag, BoggleServer.REJOIN_SESSION, BinaryProtocol.MAX_VARINT_SIZE
+            + BinaryProtocol.stringSize(playerName) + Long.BYTES);
+    BinaryProtocol.putVarint(frame, sessionId);
+    BinaryProtocol.putString(frame, playerName);
+    frame.putLong(token);
+    return readSession(call(tag, frame, BinaryProtocol.SESSION));
+  }
+
+  @Override
+  public void requestStart(int id) throws RemoteException {
+    requestStart(id, "");
+  }
+
+  @Override
+  public void requestStart(int id, String playerName) throws RemoteException {
+    int tag = nextTag.incrementAndGet();
+    ByteBuffer frame = request(tag, BoggleServer.REQUEST_START,
+            BinaryProtocol.MAX_VARINT_SIZE + BinaryProtocol.stringSize(playerName));
+    BinaryProtocol.putVarint(frame, id);
+    BinaryProtocol.putString(frame, playerName);
+    call(tag, frame, BinaryProtocol.ACK);
+  }
+
+  /**
+   * Submits a word by sending its position in the solution of the session.
+   * Words that are not in the solution are rejected without contacting
+   * the server.
+   */
+  @Override
+  public BoggleResponse submitWord(int id, String playerName, String word)
+          throws RemoteException {
+    List<String> solution = solutions.get(id);
+    if (solution == null)
+      throw new BoggleException("The game session id is not valid");
+    int index = Collections.binarySearch(solution, word);
+    if (index < 0)
+      throw new BoggleException("The word is not in the board solution.");
+    int tag = nextTag.incrementAndGet();
+    ByteBuffer frame = request(tag, BoggleServer.SUBMIT_WORD,
+            2 * BinaryProtocol.MAX_VARINT_SIZE + BinaryProtocol.stringSize(playerName));
+    BinaryProtocol.putVarint(frame, id);
+    BinaryProtocol.putString(frame, playerName);
+    BinaryProtocol.putVarint(frame, index);
+    return BinaryProtocol.getResponse(call(tag, frame, BinaryProtocol.RESPONSE));
+  }
+
+  @Override
+  public BoggleResponse getStatistics(int id, String playerName) throws RemoteException {
+    return statistics(BoggleServer.REQUEST_STATISTICS, id, playerName);
+  }
+
+  /**
+   * Subscribes a player to its statistics. The listener is called by the
+   * reader thread of the stub, it does not have to be exported.
+   */
+  @Override
+  public void subscribeStatistics(int id, String playerName, StatisticsListener listener)
+          throws RemoteException {
+    int tag = nextTag.incrementAndGet();
+    ByteBuffer frame = request(tag, BoggleServer.SUBSCRIBE_STATISTICS,
+            BinaryProtocol.MAX_VARINT_SIZE + BinaryProtocol.stringSize(playerName));
+    BinaryProtocol.putVarint(frame, id);
+    BinaryProtocol.putString(frame, playerName);
+    listeners.put(tag, listener);
+    try {
+      call(tag, frame, BinaryProtocol.ACK);
+    } catch (RemoteException | RuntimeException e) {
+      listeners.remove(tag);
+      throw e;
+    }
+    Integer previous = subscriptions.put(id + "|" + playerName, tag);
+    if (previous != null)
+      listeners.remove(previous);
+  }
+
+  @Override
+  public void unsubscribeStatistics(int id, String playerName) throws RemoteException {
+    int tag = nextTag.incrementAndGet();
+    ByteBuffer frame = request(tag, BoggleServer.UNSUBSCRIBE_STATISTICS,
+            BinaryProtocol.MAX_VARINT_SIZE + BinaryProtocol.stringSize(playerName));
+    BinaryProtocol.putVarint(frame, id);
+    BinaryProtocol.putString(frame, playerName);
+    call(tag, frame, BinaryProtocol.ACK);
+    Integer subscription = subscriptions.remove(id + "|" + playerName);
+    if (subscription != null)
+      listeners.remove(subscription);
+  }
+
+  @Override
+  public void finalizeSession(int id) throws RemoteException {
+    int tag = nextTag.incrementAndGet();
+    ByteBuffer frame = request(tag, BoggleServer.FINALIZE_SESSION, BinaryProtocol.MAX_VARINT_SIZE);
+    BinaryProtocol.putVarint(frame, id);
+    call(tag, frame, BinaryProtocol.ACK);
+    solutions.remove(id);
+  }
+
+  @Override
+  public BoggleResponse getSessionStatistics(int id, String playerName) throws RemoteException {
+    return statistics(BoggleServer.REQUEST_SESSION_STATISTICS, id, playerName);
+  }
+
+  @Override
+  public List<PlayerRecord> getLeaderboard(int offset, int count) throws RemoteException {
+    int tag = nextTag.incrementAndGet();
+    ByteBuffer frame = request(tag, BoggleServer.REQUEST_LEADERBOARD,
+            2 * BinaryProtocol.MAX_VARINT_SIZE);
+    BinaryProtocol.putVarint(frame, offset);
+    BinaryProtocol.putVarint(frame, count);
+    return BinaryProtocol.getLeaderboard(call(tag, frame, BinaryProtocol.LEADERBOARD));
+  }
+
+  @Override
+  public List<PlayerRecord> getWindowLeaderboard(int window, int offset, int count)
+          throws RemoteException {
+    int tag = nextTag.incrementAndGet();
+    ByteBuffer frame = request(tag, BoggleServer.REQUEST_WINDOW_LEADERBOARD,
+            3 * BinaryProtocol.MAX_VARINT_SIZE);
+    BinaryProtocol.putVarint(frame, window);
+    BinaryProtocol.putVarint(frame, offset);
+    BinaryProtocol.putVarint(frame, count);
+    return BinaryProtocol.getLeaderboard(call(tag, frame, BinaryProtocol.LEADERBOARD));
+  }
+
+  /**
+   * Sends one of the statistics requests.
+   */
+  private BoggleResponse statistics(int command, int id, String playerName)
+          throws RemoteException {
+    int tag = nextTag.incrementAndGet();
+    ByteBuffer frame = request(tag, command,
+            BinaryProtocol.MAX_VARINT_SIZE + BinaryProtocol.stringSize(playerName));
+    BinaryProtocol.putVarint(frame, id);
+    BinaryProtocol.putString(frame, playerName);
+    return BinaryProtocol.getResponse(call(tag, frame, BinaryProtocol.RESPONSE));
+  }
+
+  /**
+   * Verifies if the connection was lost or closed. A closed stub cannot be
+   * used again, the client has to create a new one.
+   */
+  public boolean isClosed() {
+    return closed;
+  }
+
+  /**
+   * Closes the connection.
+   */
+  public void close() throws IOException {
+    socket.close();
+  }
+}
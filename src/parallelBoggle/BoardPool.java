@@ -0,0 +1,196 @@
+package parallelBoggle;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * BoardPool class.
+ * Keeps a bounded set of boards that have already been generated, solved
+ * and qualified, so sessions can be created without solving a board on the
+ * thread of the request.
+ *
+ * Background workers refill the pool up to the high watermark every time
+ * the number of available boards drops below the low watermark. If the pool
+ * is empty when a board is requested, the board is generated by the caller
+ * and the miss is counted.
+ *
+ * This class is thread safe.
+ */
+public class BoardPool {
+  private final BlockingQueue<Board> boards;
+  private final Supplier<Board> generator;
+  private final int lowWatermark;
+  private final int highWatermark;
+  private final ReentrantLock refillLock;
+  private final Condition refillNeeded;
+  private final AtomicLong hits;
+  private final AtomicLong misses;
+  private final AtomicLong generated;
+
+  /**
+   * Creates a pool that uses the given generator to produce boards and
+   * starts the background workers that keep it filled.
+   */
+  public BoardPool(Supplier<Board> generator, int lowWatermark,
+                   int highWatermark, int workers) {
+    if (lowWatermark < 0 || highWatermark < 1 || lowWatermark > highWatermark)
+      throw new IllegalArgumentException("Invalid pool watermarks: "
+              + lowWatermark + "/" + highWatermark);
+    this.boards = new ArrayBlockingQueue<>(highWatermark);
+    this.generator = generator;
+    this.lowWatermark = lowWatermark;
+    this.highWatermark = highWatermark;
+    this.refillLock = new ReentrantLock();
+    this.refillNeeded = refillLock.newCondition();
+    this.hits = new AtomicLong();
+    this.misses = new AtomicLong();
+    this.generated = new AtomicLong();
+    for (int i = 0; i < workers; i++) {
+      Thread worker = new Thread(this::fill, "board-pool-" + i);
+      worker.setDaemon(true);
+      worker.start();
+    }
+  }
+
+  /**
+   * Takes a board from the pool. If the pool is empty a new board is
+   * generated by the calling thread.
+   */
+  public Board take() {
+    Board board = boards.poll();
+    if (board == null) {
+      misses.incrementAndGet();
+      board = generate();
+    }
+    else {
+      hits.incrementAndGet();
+    }
+    if (boards.size() < lowWatermark || boards.isEmpty())
+      signalRefill();
+    return board;
+  }
+
+  /**
+   * Wakes up the workers so they can refill the pool.
+   */
+  private void signalRefill() {
+    refillLock.lock();
+    try {
+      refillNeeded.signalAll();
+    } finally {
+      refillLock.unlock();
+    }
+  }
+
+  /**
+   * Generates and counts a new board.
+   */
+  private Board generate() {
+    Board board = generator.get();
+    generated.incrementAndGet();
+    return board;
+  }
+
+  /**
+   * Worker loop. Fills the pool up to the high watermark and then waits
+   * until it drops below the low watermark.
+   */
+  private void fill() {
+    while (!Thread.currentThread().isInterrupted()) {
+      try {
+        while (boards.size() < highWatermark) {
+          if (!boards.offer(generate()))
+            break;
+        }
+        refillLock.lock();
+        try {
+          while (boards.size() >= lowWatermark && boards.size() > 0)
+            refillNeeded.await();
+        } finally {
+          refillLock.unlock();
+        }
+      } catch (InterruptedException e) {
+        return;
+      } catch (RuntimeException e) {
+        e.printStackTrace();
+      }
+    }
+  }
+
+  /**
+   * Returns the number of boards that are ready to be used.
+   */
+  public int size() {
+    return boards.size();
+  }
+
+  /**
+   * Returns the number of requests that were served from the pool.
+   */
+  public long getHits() {
+    return hits.get();
+  }
+
+  /**
+   * Returns the number of requests that found the pool empty.
+   */
+  public long getMisses() {
+    return misses.get();
+  }
+
+  /**
+   * Returns the number of boards generated by the pool.
+   */
+  public long getGenerated() {
+    return generated.get();
+  }
+
+  /**
+   * Returns the low watermark of the pool.
+   */
+  public int getLowWatermark() {
+    return lowWatermark;
+  }
+
+  /**
+   * Returns the high watermark of the pool.
+   */
+  public int getHighWatermark() {
+    return highWatermark;
+  }
+
+  /**
+   * Board class.
+   * A game board together with the word ids of its solution.
+   */
+  public static class Board {
+    private final String board;
+    private final int[] solution;
+
+    /**
+     * Creates a board with the given solution.
+     */
+    public Board(String board, int[] solution) {
+      this.board = board;
+      this.solution = solution;
+    }
+
+    /**
+     * Returns the letters of the board.
+     */
+    public String getBoard() {
+      return board;
+    }
+
+    /**
+     * Returns the ids of the words that can be formed in the board.
+     */
+    public int[] getSolution() {
+      return solution;
+    }
+  }
+}
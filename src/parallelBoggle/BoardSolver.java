@@ -0,0 +1,213 @@
+package parallelBoggle;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * BoardSolver class.
+ * Finds every dictionary word that can be formed in a boggle board.
+ * The search walks the board and the dictionary trie at the same time,
+ * so a path is abandoned as soon as no word starts with its letters.
+ *
+ * The board is stored as a char array with one cell per position, the
+ * neighbours of every cell are computed once when the solver is created
+ * and the cells of the current path are tracked in a bit mask. The words
+ * that are found are recorded by their dictionary id in a bit set, so the
+ * search does not allocate anything per step. There is no limit on the length of the
+ * words, the trie alone decides how deep a path can go, which keeps the
+ * search tractable on big boards.
+ *
+ * Boards of PARALLEL_DIMENSION or more cells per side are solved in a
+ * fork/join pool, one task per start cell. From SPLIT_DIMENSION on, every
+ * start cell is split again into one task per neighbour. Each task collects
+ * its own word ids and the bit sets are merged when the tasks are joined.
+ * Smaller boards are solved sequentially to avoid the cost of forking.
+ *
+ * This class is thread safe, every call to solve uses its own state.
+ */
+public class BoardSolver {
+  public static final int MIN_WORD_LENGTH = 3;
+  public static final int PARALLEL_DIMENSION =
+          Integer.getInteger("boggle.solver.parallelDimension", 5);
+  public static final int SPLIT_DIMENSION =
+          Integer.getInteger("boggle.solver.splitDimension", 6);
+
+  private final WordTrie trie;
+  private final int dimension;
+  private final int[][] neighbours;
+  private final ForkJoinPool pool;
+
+  /**
+   * Creates a solver for square boards of the given dimension.
+   */
+  public BoardSolver(WordTrie trie, int dimension) {
+    if (dimension * dimension > Long.SIZE)
+      throw new IllegalArgumentException("Unsupported board dimension: " + dimension);
+    this.trie = trie;
+    this.dimension = dimension;
+    this.neighbours = buildNeighbours(dimension);
+    this.pool = ForkJoinPool.commonPool();
+  }
+
+  /**
+   * Computes the adjacency table of a board. Diagonal cells are neighbours.
+   */
+  private static int[][] buildNeighbours(int dimension) {
+    int[][] table = new int[dimension * dimension][];
+    for (int i = 0; i < dimension; i++) {
+      for (int j = 0; j < dimension; j++) {
+        int[] cells = new int[8];
+        int count = 0;
+        for (int di = -1; di <= 1; di++) {
+          for (int dj = -1; dj <= 1; dj++) {
+            int ni = i + di;
+            int nj = j + dj;
+            if ((di != 0 || dj != 0) && ni >= 0 && nj >= 0
+                    && ni < dimension && nj < dimension)
+              cells[count++] = ni * dimension + nj;
+          }
+        }
+        int[] trimmed = new int[count];
+        System.arraycopy(cells, 0, trimmed, 0, count);
+        table[i * dimension + j] = trimmed;
+      }
+    }
+    return table;
+  }
+
+  /**
+   * Returns the dimension of the boards solved by this solver.
+   */
+  public int getDimension() {
+    return dimension;
+  }
+
+  /**
+   * Generates the solution of a board. The board has one row per
+   * comma separated value and one letter per space separated cell.
+   * Returns the sorted ids of the words that can be formed.
+   */
+  public int[] solve(String board) {
+    char[] cells = toCells(board);
+    BitSet solution;
+    if (dimension >= PARALLEL_DIMENSION)
+      solution = pool.invoke(new StartCellsTask(cells, 0, cells.length));
+    else {
+      solution = new BitSet();
+      for (int cell = 0; cell < cells.length; cell++)
+        search(cell, WordTrie.ROOT, 1, 0L, cells, solution);
+    }
+    return solution.stream().toArray();
+  }
+
+  /**
+   * Converts a board into an array with the lower case letter of each cell.
+   */
+  private char[] toCells(String board) {
+    char[] cells = new char[dimension * dimension];
+    int count = 0;
+    for (int i = 0; i < board.length() && count < cells.length; i++) {
+      char c = board.charAt(i);
+      if (Character.isLetter(c))
+        cells[count++] = Character.toLowerCase(c);
+    }
+    if (count < cells.length)
+      throw new BoggleException("The board does not have enough cells.");
+    return cells;
+  }
+
+  /**
+   * Extends the current path with the given cell and recursively
+   * visits its neighbours while the path is a prefix of some word.
+   * The length is the number of letters of the path including the cell.
+   */
+  private void search(int cell, int node, int length, long visited,
+                      char[] cells, BitSet solution) {
+    int next = trie.child(node, cells[cell]);
+    if (next == WordTrie.NONE)
+      return;
+    if (length >= MIN_WORD_LENGTH && trie.isWord(next))
+      solution.set(trie.wordId(next));
+    if (trie.hasChildren(next)) {
+      visited |= 1L << cell;
+      for (int neighbour : neighbours[cell])
+        if ((visited & (1L << neighbour)) == 0)
+          search(neighbour, next, length + 1, visited, cells, solution);
+    }
+  }
+
+  /**
+   * Solves the searches that start in a range of cells. The range is split
+   * in halves until a single start cell remains.
+   */
+  private class StartCellsTask extends RecursiveTask<BitSet> {
+    private static final long serialVersionUID = -7981381657211299417L;
+
+    private final char[] cells;
+    private final int from;
+    private final int to;
+
+    StartCellsTask(char[] cells, int from, int to) {
+      this.cells = cells;
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override
+    protected BitSet compute() {
+      if (to - from > 1) {
+        int middle = (from + to) >>> 1;
+        StartCellsTask left = new StartCellsTask(cells, from, middle);
+        left.fork();
+        BitSet words = new StartCellsTask(cells, middle, to).compute();
+        words.or(left.join());
+        return words;
+      }
+      BitSet words = new BitSet();
+      if (dimension < SPLIT_DIMENSION) {
+        search(from, WordTrie.ROOT, 1, 0L, cells, words);
+        return words;
+      }
+      int node = trie.child(WordTrie.ROOT, cells[from]);
+      if (node == WordTrie.NONE || !trie.hasChildren(node))
+        return words;
+      List<NeighbourTask> tasks = new ArrayList<>(neighbours[from].length);
+      for (int neighbour : neighbours[from])
+        tasks.add(new NeighbourTask(cells, from, neighbour, node));
+      for (NeighbourTask task : ForkJoinTask.invokeAll(tasks))
+        words.or(task.join());
+      return words;
+    }
+  }
+
+  /**
+   * Solves the searches that start in a cell and continue in one of its
+   * neighbours. Used to split the work of big boards.
+   */
+  private class NeighbourTask extends RecursiveTask<BitSet> {
+    private static final long serialVersionUID = 764367147002453785L;
+
+    private final char[] cells;
+    private final int start;
+    private final int neighbour;
+    private final int node;
+
+    NeighbourTask(char[] cells, int start, int neighbour, int node) {
+      this.cells = cells;
+      this.start = start;
+      this.neighbour = neighbour;
+      this.node = node;
+    }
+
+    @Override
+    protected BitSet compute() {
+      BitSet words = new BitSet();
+      search(neighbour, node, 2, 1L << start, cells, words);
+      return words;
+    }
+  }
+}
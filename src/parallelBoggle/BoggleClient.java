@@ -8,12 +8,12 @@ import javax.swing.table.DefaultTableModel;
 import java.awt.*;
 import java.awt.event.*;
 import java.io.IOException;
-import java.io.OutputStreamWriter;
-import java.net.Socket;
 import java.rmi.NotBoundException;
 import java.rmi.RemoteException;
+import java.rmi.server.UnicastRemoteObject;
 import java.util.*;
 import java.util.List;
+import java.util.function.Consumer;
 
 /**
  * Boggle client.
@@ -29,10 +29,24 @@ import java.util.List;
  * 1 and 5 that will indicate the frecuency with which the ghost player will submit
  * words to the server. This parameter can be null.
  *
+ * Socket clients use the text protocol unless the boggle.socket.binary
+ * system property is true, in which case the binary protocol is used
+ * through a BinaryServerStub.
+ *
+ * The dimension of the boards of the sessions created by the client can be
+ * selected with the boggle.boardDimension system property (4, 5 or 6).
+ *
+ * The client keeps the id of its session, the username and the rejoin
+ * token of the player. When the connection to the server is lost, for
+ * example because the server restarted, the game clock connects again,
+ * rejoins the session with the token and subscribes to the statistics
+ * again.
+ *
  * Created by ecarpio
  */
 public class BoggleClient {
-  private static final int BOARD_DIMENSION = BoggleServer.BOARD_DIMENSION;
+  private static final int BOARD_DIMENSION =
+          Integer.getInteger("boggle.boardDimension", BoggleServer.BOARD_DIMENSION);
   private static final int REQUEST_SESSION = BoggleServer.REQUEST_SESSION;
   private static final int REQUEST_START = BoggleServer.REQUEST_START;
   private static final int SUBMIT_WORD = BoggleServer.SUBMIT_WORD;
@@ -40,7 +54,9 @@ public class BoggleClient {
   private static final int FINALIZE_SESSION = BoggleServer.FINALIZE_SESSION;
   private static final short JOIN_SESSION = BoggleServer.JOIN_SESSION;
   private static final int REQUEST_SESSION_STATISTICS = BoggleServer.REQUEST_SESSION_STATISTICS;
-  private final BoggleServerInterface server;
+  private static final int SUBSCRIBE_STATISTICS = BoggleServer.SUBSCRIBE_STATISTICS;
+  private static final int REJOIN_SESSION = BoggleServer.REJOIN_SESSION;
+  private BoggleServerInterface server;
   private JTable gameBoard;
   private JTextField userTextField;
   private JTextField gameIdTextField;
@@ -60,8 +76,14 @@ public class BoggleClient {
   private Session session;
   private final int port;
   private final String host;
-  private Socket socket;
+  private final String service;
+  private final SocketConnection connection;
   private boolean sessionOwner;
+  private volatile boolean subscribed;
+  private int rejoinId;
+  private String rejoinName;
+  private long rejoinToken;
+  private volatile boolean connectionLost;
   private boolean isGhost;
   private int ghostTime;
   private Random r;
@@ -87,50 +109,63 @@ public class BoggleClient {
     this.r = new Random();
     makeGUIUnplayable();
     if (!serviceLocation.substring(0,1).equals("-")) {
-      String service = "rmi://" + serviceLocation + "/" + GameServer.SERVER_NAME;
+      service = "rmi://" + serviceLocation + "/" + GameServer.SERVER_NAME;
       server = (BoggleServerInterface) java.rmi.Naming.lookup(service);
       port = 0;
       host = "";
-      socket = null;
+      connection = null;
     }
     else {
-      server = null;
       String[] info = serviceLocation.split(":");
       port = Integer.parseInt(info[1]);
       host = info[0].replace("-","");
-      socket = new Socket(host, port);
+      service = null;
+      if (Boolean.getBoolean("boggle.socket.binary")) {
+        server = new BinaryServerStub(host, port);
+        connection = null;
+      }
+      else {
+        server = null;
+        connection = new SocketConnection(host, port);
+      }
       System.out.println("Connection established.");
     }
   }
 
   /**
-   * Sends a text command to the server using a socket connection.
+   * Sends a text command to the server using the socket connection and
+   * waits for the response.
    */
   private String sendTextCommand(String command) {
     String retVal = "";
-    if (socket.isClosed())
-      try {
-        socket = new Socket(host, port);
-      } catch (IOException e) {
-        e.printStackTrace();
-      }
-    try (
-            Scanner in = new Scanner(socket.getInputStream());
-            OutputStreamWriter out = new OutputStreamWriter(socket.getOutputStream())
-    ) {
-      out.write(command);
-      out.write("\n");
-      out.flush();
-      retVal = in.nextLine();
+    try {
+      retVal = connection.request(command);
       System.out.println("Client message: " + command);
       System.out.println("Server response: " + retVal);
     }
     catch (IOException e) {
       e.printStackTrace();
+      connectionLost = true;
     }
     return retVal;
   }
 
+  /**
+   * Sends a text command to the server using the socket connection without
+   * waiting for the response. The response is passed to the given action in
+   * the event dispatch thread.
+   */
+  private void sendTextCommand(String command, Consumer<String> action) {
+    connection.send(command).whenComplete((response, error) -> {
+      if (error != null) {
+        error.printStackTrace();
+        connectionLost = true;
+      }
+      else
+        SwingUtilities.invokeLater(() -> action.accept(response));
+    });
+  }
+
   /**
    * Adds listeners to some of the controls of the form.
    */
@@ -150,11 +185,13 @@ public class BoggleClient {
               else {
                 String command = generateTextCommand(SUBMIT_WORD, session.getId(),
                         userTextField.getText() + "|" + word);
-                String sResponse = sendTextCommand(command);
-                response = createResponse(sResponse);
+                sendTextCommand(command, sResponse ->
+                        updateStatistics(createResponse(sResponse), ""));
+                return;
               }
             } catch (RemoteException e1) {
               e1.printStackTrace();
+              connectionLost = true;
             }
             updateStatistics(response, "");
           }
@@ -251,26 +288,31 @@ public class BoggleClient {
               }
             } catch (RemoteException e1) {
               e1.printStackTrace();
+              connectionLost = true;
             }
           }
           else {
             try {
+              if ((connectionLost || isDisconnected()) && !rejoinSession())
+                return;
               if (isGhost && ((gameTime%ghostTime) == 0)) {
                 int index = r.nextInt(session.getSolution().size());
                 submissionsTextField.setText(session.getAnswer(index));
               }
-              BoggleResponse response;
+              if (subscribed)
+                return;
               if (server != null)
-                response = server.getStatistics(session.getId(), userTextField.getText());
+                updateStatistics(server.getStatistics(session.getId(),
+                        userTextField.getText()), "");
               else {
                 String command = generateTextCommand(REQUEST_STATISTICS,
                         session.getId(), userTextField.getText());
-                String sResponse = sendTextCommand(command);
-                response = createResponse(sResponse);
+                sendTextCommand(command, sResponse ->
+                        updateStatistics(createResponse(sResponse), ""));
               }
-              updateStatistics(response, "");
             } catch (RemoteException e1) {
               e1.printStackTrace();
+              connectionLost = true;
             }
           }
         }
@@ -321,6 +363,7 @@ public class BoggleClient {
             "\nYour score: " + response.getScore() +
             "\nHighest score: " + response.getHighScore(),
             JOptionPane.INFORMATION_MESSAGE);
+    rejoinName = null;
     makeGUIUnplayable();
   }
 
@@ -345,15 +388,18 @@ public class BoggleClient {
       } else {
         try {
           if (server != null)
-            session = server.createSession(numPlayers, username);
+            session = server.createSession(numPlayers, username, BOARD_DIMENSION);
           else {
-            String command = generateTextCommand(REQUEST_SESSION, numPlayers, username);
+            String command = generateTextCommand(REQUEST_SESSION, numPlayers,
+                    username + "|" + BOARD_DIMENSION);
             String tsession = sendTextCommand(command);
             session = createSession(tsession);
           }
+          rememberSession(username);
           sessionOwner = true;
           paramLabel.setText("Game Id:");
           resetStats();
+          subscribeStatistics();
           setupAndStartRound("Created session " + Integer.toString(session.getId()) + ".");
         } catch (RemoteException e) {
           showMessage(e.getMessage(), JOptionPane.WARNING_MESSAGE);
@@ -375,9 +421,13 @@ public class BoggleClient {
     else {
       int id = Integer.parseInt(values[1]);
       String board = values[2];
-      String[] solutions = values[3].split(",");
-      List<String> solution = new LinkedList<>(Arrays.asList(solutions));
-      return new Session(id, board, solution, null, 0);
+      int dimension = board.split(",").length;
+      List<String> solution = new ArrayList<>();
+      for (String word : values[3].split(","))
+        if (!word.isEmpty())
+          solution.add(word);
+      long token = values.length > 4 ? Long.parseLong(values[4]) : 0;
+      return new Session(id, board, dimension, solution, null, 0, token);
     }
   }
 
@@ -391,7 +441,7 @@ public class BoggleClient {
         command += iparam + "|" + sparam;
         break;
       case REQUEST_START:
-        command += iparam;
+        command += iparam + (sparam != null ? "|" + sparam : "");
         break;
       case SUBMIT_WORD:
         command += iparam + "|" + sparam;
@@ -408,6 +458,12 @@ public class BoggleClient {
       case REQUEST_SESSION_STATISTICS:
         command += iparam + "|" + sparam;
         break;
+      case SUBSCRIBE_STATISTICS:
+        command += iparam + "|" + sparam;
+        break;
+      case REJOIN_SESSION:
+        command += iparam + "|" + sparam;
+        break;
     }
     return command;
   }
@@ -454,8 +510,10 @@ public class BoggleClient {
             String tsession = sendTextCommand(command);
             session = createSession(tsession);
           }
+          rememberSession(username);
           sessionOwner = false;
           resetStats();
+          subscribeStatistics();
           setupAndStartRound("Joined session " + Integer.toString(id) + ".");
         }
         catch (RemoteException | BoggleException e) {
@@ -465,6 +523,102 @@ public class BoggleClient {
     }
   }
 
+  /**
+   * Subscribes the player to its statistics, so the server pushes them when
+   * they change and the game clock does not have to poll for them. The
+   * clock keeps polling if the subscription fails, for example when the
+   * server cannot call back an RMI client.
+   */
+  private void subscribeStatistics() {
+    subscribed = false;
+    try {
+      if (server != null) {
+        StatisticsListener listener = new ClientStatisticsListener();
+        if (!(server instanceof BinaryServerStub))
+          listener = (StatisticsListener) UnicastRemoteObject.exportObject(listener, 0);
+        server.subscribeStatistics(session.getId(), userTextField.getText(), listener);
+        subscribed = true;
+      }
+      else {
+        String command = generateTextCommand(SUBSCRIBE_STATISTICS, session.getId(),
+                userTextField.getText());
+        connection.subscribe(command, line -> SwingUtilities.invokeLater(() ->
+                updateStatistics(createResponse(line), "")))
+                .thenAccept(response -> subscribed = response.startsWith("2|"));
+      }
+    } catch (RemoteException | BoggleException e) {
+      System.out.println("Statistics will be polled. " + e.getMessage());
+    }
+  }
+
+  /**
+   * Keeps what the player needs to rejoin its session if the connection to
+   * the server is lost.
+   */
+  private void rememberSession(String username) {
+    rejoinId = session.getId();
+    rejoinName = username;
+    rejoinToken = session.getRejoinToken();
+    connectionLost = false;
+  }
+
+  /**
+   * Verifies if the socket of the client was closed. The RMI calls report
+   * a lost connection when they fail.
+   */
+  private boolean isDisconnected() {
+    if (connection != null)
+      return connection.isClosed();
+    return server instanceof BinaryServerStub && ((BinaryServerStub) server).isClosed();
+  }
+
+  /**
+   * Connects to the server again, rejoins the session of the player with
+   * its rejoin token and subscribes to its statistics again. A session that
+   * was not restored by a restart of the server cannot be rejoined, but it
+   * is still active, so the player subscribes to it anyway. Returns false
+   * if the server could not be reached, so the game clock tries again.
+   */
+  private boolean rejoinSession() {
+    if (rejoinName == null)
+      return true;
+    subscribed = false;
+    try {
+      if (connection != null) {
+        String command = generateTextCommand(REJOIN_SESSION, rejoinId,
+                rejoinName + "|" + rejoinToken);
+        rejoinToken = createSession(connection.request(command)).getRejoinToken();
+      }
+      else {
+        if (service != null)
+          server = (BoggleServerInterface) java.rmi.Naming.lookup(service);
+        else if (((BinaryServerStub) server).isClosed())
+          server = new BinaryServerStub(host, port);
+        rejoinToken = server.rejoinSession(rejoinId, rejoinName, rejoinToken).getRejoinToken();
+      }
+      statusLabel.setText("Rejoined session " + rejoinId + ".");
+    } catch (IOException | NotBoundException e) {
+      statusLabel.setText("Connection error... Trying again.");
+      return false;
+    } catch (BoggleException e) {
+      System.out.println("The session was not rejoined. " + e.getMessage());
+    }
+    connectionLost = false;
+    subscribeStatistics();
+    return true;
+  }
+
+  /**
+   * ClientStatisticsListener class.
+   * Shows the statistics pushed by the server.
+   */
+  private class ClientStatisticsListener implements StatisticsListener {
+    @Override
+    public void statisticsChanged(BoggleResponse response) {
+      SwingUtilities.invokeLater(() -> updateStatistics(response, ""));
+    }
+  }
+
   /**
    * Sends the server a request to start the next boggle round.
    */
@@ -474,12 +628,13 @@ public class BoggleClient {
     showMessage(message + "\nClick OK to request the start of the round.",
             JOptionPane.INFORMATION_MESSAGE);
     if (server != null)
-      server.requestStart(session.getId());
+      server.requestStart(session.getId(), userTextField.getText());
     else {
-      String command = generateTextCommand(REQUEST_START, session.getId(), null);
+      String command = generateTextCommand(REQUEST_START, session.getId(),
+              userTextField.getText());
       sendTextCommand(command);
     }
-    fillBoard(session.getBoard());
+    fillBoard(session.getBoard(), session.getBoardDimension());
     gameClock.start();
   }
 
@@ -499,13 +654,16 @@ public class BoggleClient {
   }
 
   /**
-   * Updates the game board.
+   * Updates the game board. The table is resized if the board of
+   * the session has a different dimension.
    */
-  private void fillBoard(String board) {
+  private void fillBoard(String board, int dimension) {
+    if (gameBoard.getRowCount() != dimension)
+      gameBoard.setModel(new DefaultTableModel(dimension, dimension));
     String[] rows = board.split(",");
-    for (int i = 0; i < BOARD_DIMENSION; i++) {
+    for (int i = 0; i < dimension; i++) {
       String[] cells = rows[i].split(" ");
-      for (int j = 0; j < BOARD_DIMENSION; j++) {
+      for (int j = 0; j < dimension; j++) {
         gameBoard.setValueAt(cells[j], i, j);
       }
     }
@@ -520,8 +678,8 @@ public class BoggleClient {
     sendButton.setEnabled(true);
     submissionsTextField.setText("");
     submissionsTextField.setEnabled(false);
-    for (int i = 0; i < BOARD_DIMENSION; i++) {
-      for (int j = 0; j < BOARD_DIMENSION; j++) {
+    for (int i = 0; i < gameBoard.getRowCount(); i++) {
+      for (int j = 0; j < gameBoard.getColumnCount(); j++) {
         gameBoard.setValueAt("-", i, j);
       }
     }
@@ -1,15 +1,17 @@
 package parallelBoggle;
 
 import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Paths;
 import java.rmi.RemoteException;
 import java.rmi.server.UnicastRemoteObject;
 import java.util.*;
-import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.CyclicBarrier;
-import java.util.stream.Stream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
 
 /**
  * BoggleServer class.
@@ -20,7 +22,18 @@ import java.util.stream.Stream;
  */
 public class BoggleServer extends UnicastRemoteObject
         implements BoggleServerInterface {
+  private static final long serialVersionUID = -6686759376255110690L;
+
   public static final int BOARD_DIMENSION = 4;
+  public static final int MIN_BOARD_DIMENSION = 4;
+  public static final int MAX_BOARD_DIMENSION = 6;
+  public static final int MIN_SOLUTION_WORDS = 15;
+  public static final int POOL_LOW_WATERMARK =
+          Integer.getInteger("boggle.pool.low", 16);
+  public static final int POOL_HIGH_WATERMARK =
+          Integer.getInteger("boggle.pool.high", 64);
+  public static final int POOL_WORKERS =
+          Integer.getInteger("boggle.pool.workers", 1);
 
   public static final int REQUEST_SESSION = 1;
   public static final int REQUEST_START = 2;
@@ -29,14 +42,51 @@ public class BoggleServer extends UnicastRemoteObject
   public static final int FINALIZE_SESSION = 5;
   public static final short JOIN_SESSION = 6;
   public static final int REQUEST_SESSION_STATISTICS = 7;
+  public static final int SUBSCRIBE_STATISTICS = 8;
+  public static final int UNSUBSCRIBE_STATISTICS = 9;
+  public static final int REQUEST_LEADERBOARD = 10;
+  public static final int REQUEST_WINDOW_LEADERBOARD = 11;
+  public static final int REJOIN_SESSION = 12;
+  public static final int REGISTRY_SHARDS =
+          Integer.getInteger("boggle.registry.shards", Runtime.getRuntime().availableProcessors());
+  public static final long ROUND_TIMEOUT =
+          Long.getLong("boggle.round.timeout", 120) * 1000;
+  public static final long ROUND_LENGTH =
+          Long.getLong("boggle.round.length", 64) * 1000;
+  public static final long ROUND_GRACE =
+          Long.getLong("boggle.round.grace", 2) * 1000;
+  public static final long SESSION_IDLE =
+          Long.getLong("boggle.session.idle", 600) * 1000;
+  public static final long SESSION_TTL =
+          Long.getLong("boggle.session.ttl", 4 * 3600) * 1000;
+  public static final boolean SESSION_ACTORS =
+          Boolean.getBoolean("boggle.session.actors");
+  public static final int TIMER_TICK =
+          Integer.getInteger("boggle.timer.tick", 100);
+  public static final int FINALIZE_QUEUE =
+          Integer.getInteger("boggle.finalize.queue", 1024);
+  public static final long FINALIZE_WAIT =
+          Long.getLong("boggle.finalize.wait", 500);
+  public static final int PUBLISHER_THREADS =
+          Integer.getInteger("boggle.publisher.threads", 2);
+  public static final long PUBLISHER_TIMEOUT =
+          Long.getLong("boggle.publisher.timeout", 5) * 1000;
 
   private final String serverName;
-  private final Map<Integer, LocalSession> activeGames;
-  private final Map<Integer, CyclicBarrier> startBarriers;
-  private final Map<String, Integer> dictionary;
-  private int sessionCounter = 0;
-  private final Object sessionLock;
+  private final SessionRegistry sessions;
+  private final WordDictionary dictionary;
+  private final BoardSolver[] solvers;
+  private final Map<Integer, BoardPool> boardPools;
+  private final TimingWheel timers;
+  private final ExecutorService publisher;
+  private final AtomicLong finalizedSessions;
+  private final AtomicLong idleEvictions;
+  private final AtomicLong expiredEvictions;
   private Records records;
+  private final Leaderboard leaderboard;
+  private final WindowLeaderboard windows;
+  private final RecordsAggregator aggregator;
+  private final SessionCheckpointer checkpoints;
   private Random r;
   private String[] vowels;
 
@@ -47,47 +97,68 @@ public class BoggleServer extends UnicastRemoteObject
     this.r = new Random();
     vowels = new String[]{"A","E","I","O","U","Y"};
     this.serverName = serverName;
-    this.activeGames = new ConcurrentHashMap<>();
-    this.dictionary = new ConcurrentHashMap<>();
-    this.startBarriers = new ConcurrentHashMap<>();
-    this.sessionLock = new Object();
-    this.records = new Records();
-    loadDictionary();
+    this.sessions = new SessionRegistry(REGISTRY_SHARDS);
+    this.records = new Records(Records.PATH);
+    this.leaderboard = new Leaderboard(Leaderboard.PATH);
+    this.windows = new WindowLeaderboard();
+    this.aggregator = new RecordsAggregator(records, leaderboard, windows, FINALIZE_QUEUE);
+    this.solvers = new BoardSolver[MAX_BOARD_DIMENSION + 1];
+    this.boardPools = new ConcurrentHashMap<>();
+    this.timers = new TimingWheel(TIMER_TICK, TimeUnit.MILLISECONDS, 512, "session-timer");
+    this.publisher = Executors.newFixedThreadPool(PUBLISHER_THREADS,
+            ServerSocketHandler.daemonThreads("statistics-publisher-"));
+    this.finalizedSessions = new AtomicLong();
+    this.idleEvictions = new AtomicLong();
+    this.expiredEvictions = new AtomicLong();
+    this.dictionary = loadDictionary();
+    this.checkpoints = new SessionCheckpointer(dictionary);
+    restoreSessions();
+    checkpoints.start(sessions);
+    getBoardPool(BOARD_DIMENSION);
   }
 
   /**
-   * Loads the dictionary file from disk.
-   * The value of each words in the dictionary is calculated while
-   * they are being loaded into the server's memory.
-   * This is executed only once during the server lifecycle.
+   * Restores the sessions that were active when the server stopped, with
+   * their ids, so their players can rejoin them. A round that was in
+   * progress is considered played, and the restored sessions are evicted
+   * like new ones if nobody rejoins them.
    */
-  private void loadDictionary() {
-    try (Stream<String> words =
-                 Files.lines(Paths.get("resources/dictionary.txt"))) {
-        words.forEach(line -> dictionary.put(line, calculatePoints(line)));
-    } catch (IOException e) {
-      e.printStackTrace();
+  private void restoreSessions() {
+    List<LocalSession> restored = checkpoints.restore(SessionCheckpointer.PATH);
+    for (LocalSession session : restored) {
+      RoundCoordinator coordinator = new RoundCoordinator(session.getMinPlayers(),
+              ROUND_TIMEOUT, timers, session.getRoundsStarted());
+      for (String player : session.getPlayers())
+        coordinator.register(player);
+      SessionRegistry.Entry entry = sessions.restore(session, coordinator);
+      scheduleExpiry(entry, Math.min(SESSION_IDLE, SESSION_TTL));
     }
-    System.out.println("Loaded words: " + dictionary.size());
+    if (!restored.isEmpty())
+      System.out.printf("Restored sessions: %d%n", restored.size());
   }
 
   /**
-   * Function that calculates the value of the words in the dictionary.
+   * Loads the dictionary from disk.
+   * The compiled dictionary image is memory-mapped if it is available,
+   * otherwise the words are read from the text word list and their values
+   * are calculated while they are being loaded into the server's memory.
+   * The trie of the dictionary is used to solve the game boards.
+   * This is executed only once during the server lifecycle.
    */
-  private Integer calculatePoints(String line) {
-    switch (line.length()) {
-      case 3:
-      case 4:
-        return 1;
-      case 5:
-        return 2;
-      case 6:
-        return 3;
-      case 7:
-        return 5;
-      default:
-        return 11;
+  private WordDictionary loadDictionary() {
+    long start = System.nanoTime();
+    WordDictionary words;
+    try {
+      words = WordDictionary.load();
+    } catch (IOException e) {
+      e.printStackTrace();
+      throw new BoggleException("The dictionary could not be loaded.");
     }
+    for (int d = MIN_BOARD_DIMENSION; d <= MAX_BOARD_DIMENSION; d++)
+      solvers[d] = new BoardSolver(words.getTrie(), d);
+    System.out.printf("Loaded words: %d (%d ms)%n", words.size(),
+            (System.nanoTime() - start) / 1000000);
+    return words;
   }
 
   /**
@@ -96,11 +167,50 @@ public class BoggleServer extends UnicastRemoteObject
    */
   public Map<Integer, List<String>> getActiveGames() {
     Map<Integer, List<String>> retMap = new ConcurrentHashMap<>();
-    for (Map.Entry<Integer, LocalSession> game : activeGames.entrySet())
-      retMap.put(game.getKey(), game.getValue().getPlayers());
+    for (SessionRegistry.Entry entry : sessions.getEntries())
+      retMap.put(entry.getSession().getId(), entry.getSession().getPlayers());
     return retMap;
   }
 
+  /**
+   * Returns the shards of the session registry.
+   */
+  public List<SessionRegistry.Shard> getRegistryShards() {
+    return sessions.getShards();
+  }
+
+  /**
+   * Returns the entry of an active session.
+   */
+  private SessionRegistry.Entry getEntry(int id) {
+    SessionRegistry.Entry entry = sessions.get(id);
+    if (entry == null)
+      throw new BoggleException("The game session id is not valid");
+    return entry;
+  }
+
+  /**
+   * Runs an operation of a session and waits for its result. When the
+   * server uses actors (boggle.session.actors) the operation is queued in
+   * the mailbox of the session, otherwise it runs in the calling thread.
+   */
+  private <T> T call(SessionRegistry.Entry entry, Supplier<T> operation) {
+    if (SESSION_ACTORS)
+      return await(entry.getActor().call(operation));
+    return operation.get();
+  }
+
+  /**
+   * Runs an operation of a session without waiting for it when the server
+   * uses actors. Otherwise the operation runs in the calling thread and its
+   * exceptions are thrown right away.
+   */
+  private <T> CompletableFuture<T> submit(SessionRegistry.Entry entry, Supplier<T> operation) {
+    if (SESSION_ACTORS)
+      return entry.getActor().call(operation);
+    return CompletableFuture.completedFuture(operation.get());
+  }
+
   /**
    * Creates a session with the given number of players.
    * The player that creates the session is set as the session owner.
@@ -108,151 +218,173 @@ public class BoggleServer extends UnicastRemoteObject
   @Override
   public Session createSession(int numPlayers, String playerName)
           throws RemoteException {
-    int newSessionId;
-    synchronized(sessionLock) {
-      sessionCounter++;
-      newSessionId = sessionCounter;
+    return createSession(numPlayers, playerName, BOARD_DIMENSION);
+  }
+
+  /**
+   * Creates a session with the given number of players that is played
+   * in a board with the given dimension.
+   * The player that creates the session is set as the session owner.
+   */
+  @Override
+  public Session createSession(int numPlayers, String playerName,
+                               int boardDimension) throws RemoteException {
+    if (boardDimension < MIN_BOARD_DIMENSION || boardDimension > MAX_BOARD_DIMENSION)
+      throw new BoggleException("The board dimension must be between "
+              + MIN_BOARD_DIMENSION + " and " + MAX_BOARD_DIMENSION + ".");
+    BoardPool.Board board = getBoardPool(boardDimension).take();
+    Map<String, Player> players = new ConcurrentHashMap<>();
+    players.put(playerName, new Player(playerName));
+    RoundCoordinator coordinator = new RoundCoordinator(numPlayers, ROUND_TIMEOUT, timers);
+    coordinator.register(playerName);
+    SessionRegistry.Entry entry = sessions.add(id -> new LocalSession(id, board.getBoard(),
+            boardDimension, board.getSolution(), dictionary, players, numPlayers), coordinator);
+    scheduleExpiry(entry, Math.min(SESSION_IDLE, SESSION_TTL));
+    return entry.getSession().forPlayer(playerName);
+  }
+
+  /**
+   * Schedules the next expiry check of a session.
+   */
+  private void scheduleExpiry(SessionRegistry.Entry entry, long delay) {
+    timers.schedule(() -> checkExpiry(entry), delay, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Evicts a session that has not been used for boggle.session.idle seconds
+   * or that was created more than boggle.session.ttl seconds ago, which is
+   * what happens to the sessions whose owner never finalizes them. Otherwise
+   * the session is checked again at its next deadline, so the requests of
+   * the players do not have to move the timer.
+   */
+  private void checkExpiry(SessionRegistry.Entry entry) {
+    LocalSession session = entry.getSession();
+    if (sessions.get(session.getId()) != entry)
+      return;
+    long now = System.nanoTime();
+    long idle = TimeUnit.NANOSECONDS.toMillis(now - session.getLastActivity());
+    long age = TimeUnit.NANOSECONDS.toMillis(now - session.getCreated());
+    if (age >= SESSION_TTL) {
+      if (removeSession(entry))
+        expiredEvictions.incrementAndGet();
     }
-    int numWords = 0;
-    List<String> solution = new LinkedList<>();
-    String board = "";
-    while (numWords < 15) {
-      board = getBoard();
-      solution = getSolution(board);
-      numWords = solution.size();
+    else if (idle >= SESSION_IDLE) {
+      if (removeSession(entry))
+        idleEvictions.incrementAndGet();
+    }
+    else
+      scheduleExpiry(entry, Math.min(SESSION_IDLE - idle, SESSION_TTL - age));
+  }
+
+  /**
+   * Removes a session and everything the server keeps for it. Returns false
+   * if the session was already removed.
+   */
+  private boolean removeSession(SessionRegistry.Entry entry) {
+    if (!sessions.remove(entry))
+      return false;
+    entry.getSession().close();
+    return true;
+  }
+
+  /**
+   * Returns the pool of boards of the given dimension. The pools of the
+   * bigger boards are only created once a session requests them.
+   */
+  private BoardPool getBoardPool(int dimension) {
+    return boardPools.computeIfAbsent(dimension, d ->
+            new BoardPool(() -> generateBoard(d), POOL_LOW_WATERMARK,
+                    POOL_HIGH_WATERMARK, POOL_WORKERS));
+  }
+
+  /**
+   * Generates boards until one of them has enough words in its solution.
+   * Used by the board pools to prepare the boards of new sessions.
+   */
+  private BoardPool.Board generateBoard(int dimension) {
+    while (true) {
+      String board = getBoard(dimension);
+      int[] solution = getSolution(board, dimension);
+      if (solution.length >= MIN_SOLUTION_WORDS)
+        return new BoardPool.Board(board, solution);
     }
-    Map<String, Player> players = new HashMap<>();
-    players.put(playerName, new Player(playerName));
-    LocalSession newSession = new LocalSession(newSessionId,
-            board, solution, players, numPlayers);
-    activeGames.put(newSessionId, newSession);
-    startBarriers.put(newSessionId, new CyclicBarrier(numPlayers));
-    return newSession;
   }
 
   /**
-   * Creates a game board with random letters.
+   * Creates a game board of the given dimension with random letters.
+   * One out of every four cells is replaced by a random vowel.
    */
-  private String getBoard() {
+  private String getBoard(int dimension) {
     int min = 65;
     int max = 90;
-    String[] board = new String[16];
-    for (int i = 0; i < 16; i ++) {
+    int cells = dimension * dimension;
+    String[] board = new String[cells];
+    for (int i = 0; i < cells; i ++) {
       board[i] = String.valueOf((char)((char) r.nextInt((max - min) + 1) + min));
     }
-    for (int i = 0; i < 4; i ++) {
-      board[r.nextInt(16)] = vowels[r.nextInt(6)];
+    for (int i = 0; i < cells / 4; i ++) {
+      board[r.nextInt(cells)] = vowels[r.nextInt(6)];
     }
-    String ret = "";
+    StringBuilder ret = new StringBuilder(cells * 2);
     int counter = 0;
-    for (int i = 0; i < 16; i ++) {
-      ret += board[i];
+    for (int i = 0; i < cells; i ++) {
+      ret.append(board[i]);
       counter++;
-      if (counter == 4) {
-        ret += ",";
+      if (counter == dimension) {
+        ret.append(',');
         counter = 0;
       }
       else {
-        ret += " ";
+        ret.append(' ');
       }
     }
-    return ret;
+    return ret.toString();
     //return "S S T P,R E H G,D Y R W,U U B P";
   }
 
   /**
-   * Generates a solution for a given boggle board.
+   * Generates the word ids of the solution of a given boggle board.
    */
-  private List<String> getSolution(String board) {
-    String[][] boardMatrix = new String[BOARD_DIMENSION][BOARD_DIMENSION];
-    String[] rows = board.split(",");
-    Set<String> solution = new HashSet<>();
-    for (int i = 0; i < BOARD_DIMENSION; i++) {
-      boardMatrix[i] = rows[i].split(" ");
-    }
-    for (int i = 0; i < BOARD_DIMENSION; i++) {
-      for (int j = 0; j < BOARD_DIMENSION; j++) {
-        String[][] tBoard = deepArrayCopy(boardMatrix);
-        String word = "";
-        recursiveSolver(i, j, tBoard, word, solution);
-      }
-    }
-    return Collections.unmodifiableList(new LinkedList<>(solution));
-  }
-
-  /**
-   * Creates a copy of the board. Used for recursively finding
-   * possible words in the boggle board.
-   */
-  private String[][] deepArrayCopy(String[][] boardMatrix) {
-    String[][] ret = new String[BOARD_DIMENSION][BOARD_DIMENSION];
-    for (int i = 0; i < BOARD_DIMENSION; i++)
-      for (int j = 0; j < BOARD_DIMENSION; j++)
-        ret[i][j] = boardMatrix[i][j];
-    return ret;
+  private int[] getSolution(String board, int dimension) {
+    return solvers[dimension].solve(board);
   }
 
   /**
-   * Used to recursively look for words in a boggle board.
+   * Joins the player to the given boggle session.
    */
-  private void recursiveSolver(int i, int j, String[][] boardMatrix,
-                               String word, Set<String> solution) {
-    word += boardMatrix[i][j].toLowerCase();
-    boardMatrix[i][j] = "-";
-    if (word.length() > 2)
-      if (dictionary.containsKey(word)) {
-        solution.add(word);
-      }
-    if (word.length() < 8) {
-      if ((i != 0) && (j != 0) && (!boardMatrix[i - 1][j - 1].equals("-"))) {
-        String[][] tBoard = deepArrayCopy(boardMatrix);
-        recursiveSolver(i - 1, j - 1, tBoard, word, solution);
-      }
-      if ((j != 0) && (!boardMatrix[i][j - 1].equals("-"))) {
-        String[][] tBoard = deepArrayCopy(boardMatrix);
-        recursiveSolver(i, j - 1, tBoard, word, solution);
-      }
-      if ((i != BOARD_DIMENSION - 1) && (j != 0) &&
-              (!boardMatrix[i + 1][j - 1].equals("-"))) {
-        String[][] tBoard = deepArrayCopy(boardMatrix);
-        recursiveSolver(i + 1, j - 1, tBoard, word, solution);
-      }
-      if ((i != 0) && (!boardMatrix[i - 1][j].equals("-"))) {
-        String[][] tBoard = deepArrayCopy(boardMatrix);
-        recursiveSolver(i - 1, j, tBoard, word, solution);
-      }
-      if ((i != BOARD_DIMENSION - 1) && (!boardMatrix[i + 1][j].equals("-"))) {
-        String[][] tBoard = deepArrayCopy(boardMatrix);
-        recursiveSolver(i + 1, j, tBoard, word, solution);
-      }
-      if ((i != 0) && (j != BOARD_DIMENSION - 1) &&
-              (!boardMatrix[i - 1][j + 1].equals("-"))) {
-        String[][] tBoard = deepArrayCopy(boardMatrix);
-        recursiveSolver(i - 1, j + 1, tBoard, word, solution);
-      }
-      if ((j != BOARD_DIMENSION - 1) && (!boardMatrix[i][j + 1].equals("-"))) {
-        String[][] tBoard = deepArrayCopy(boardMatrix);
-        recursiveSolver(i, j + 1, tBoard, word, solution);
-      }
-      if ((i != BOARD_DIMENSION - 1) && (j != BOARD_DIMENSION - 1) &&
-              (!boardMatrix[i + 1][j + 1].equals("-"))) {
-        String[][] tBoard = deepArrayCopy(boardMatrix);
-        recursiveSolver(i + 1, j + 1, tBoard, word, solution);
-      }
-    }
+  @Override
+  public Session joinSession(int sessionId, String playerName)
+          throws RemoteException {
+    SessionRegistry.Entry entry = sessions.get(sessionId);
+    if (entry == null)
+      throw new BoggleException("The game session id is not valid.");
+    return call(entry, () -> {
+      LocalSession session = entry.getSession();
+      session.touch();
+      session.addPlayer(playerName);
+      entry.getCoordinator().register(playerName);
+      publishStatistics(entry);
+      return session.forPlayer(playerName);
+    });
   }
 
   /**
-   * Joins the player to the given boggle session.
+   * Rejoins a player to a session that was restored after a restart of the
+   * server, if the given token is the rejoin token of the player.
    */
   @Override
-  public Session joinSession(int sessionId, String playerName)
+  public Session rejoinSession(int sessionId, String playerName, long token)
           throws RemoteException {
-    if (!activeGames.containsKey(sessionId))
+    SessionRegistry.Entry entry = sessions.get(sessionId);
+    if (entry == null)
       throw new BoggleException("The game session id is not valid.");
-    LocalSession session = activeGames.get(sessionId);
-    session.addPlayer(playerName);
-    return session;
+    return call(entry, () -> {
+      LocalSession session = entry.getSession();
+      session.rejoin(playerName, token);
+      session.touch();
+      publishStatistics(entry);
+      return session.forPlayer(playerName);
+    });
   }
 
   /**
@@ -261,15 +393,66 @@ public class BoggleServer extends UnicastRemoteObject
    */
   @Override
   public void requestStart(int id) {
-    CyclicBarrier startBarrier = startBarriers.get(id);
-    if (!activeGames.containsKey(id))
-        throw new BoggleException("The game session id is not valid");
+    await(requestStartAsync(id, null));
+  }
+
+  /**
+   * Requests a session to be started on behalf of the given player.
+   */
+  @Override
+  public void requestStart(int id, String playerName) {
+    await(requestStartAsync(id, playerName));
+  }
+
+  /**
+   * Registers a start request and returns without waiting for the rest of
+   * the players. The future is completed when the round starts, or when the
+   * start times out without some of the players.
+   */
+  public CompletableFuture<Void> requestStartAsync(int id, String playerName) {
+    SessionRegistry.Entry entry = getEntry(id);
+    entry.getSession().touch();
+    return entry.getCoordinator().arrive(playerName).thenCompose(phase -> submit(entry, () -> {
+      openRound(entry, phase);
+      return null;
+    }));
+  }
+
+  /**
+   * Opens the round of a session that starts with the given phase and
+   * schedules its end. The server owns the deadline of the round, the
+   * clients only count down to it, so the grace period covers their
+   * network delay.
+   */
+  private void openRound(SessionRegistry.Entry entry, int phase) {
+    long length = ROUND_LENGTH + ROUND_GRACE;
+    if (entry.getSession().openRound(phase, TimeUnit.MILLISECONDS.toNanos(length)))
+      timers.schedule(() -> submit(entry, () -> closeRound(entry)), length,
+              TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Closes the current round of a session. The players that were waiting
+   * for the end of the round receive their statistics.
+   */
+  private Void closeRound(SessionRegistry.Entry entry) {
+    if (entry.getSession().closeRound())
+      publishStatistics(entry);
+    return null;
+  }
+
+  /**
+   * Waits for a future of the round coordination. Used by the calls that
+   * must block, like the RMI ones, which wait at most until the phase they
+   * are waiting for times out.
+   */
+  private static <T> T await(CompletableFuture<T> future) {
     try {
-      startBarrier.await();
-      startBarrier.reset();
-    } catch (BrokenBarrierException|InterruptedException e) {
-      e.printStackTrace();
-      throw new BoggleException(e.getMessage());
+      return future.join();
+    } catch (CompletionException e) {
+      if (e.getCause() instanceof RuntimeException)
+        throw (RuntimeException) e.getCause();
+      throw e;
     }
   }
 
@@ -279,20 +462,84 @@ public class BoggleServer extends UnicastRemoteObject
    */
   @Override
   public BoggleResponse submitWord(int id, String playerName, String word) {
-    if (!activeGames.containsKey(id))
-      throw new BoggleException("The game session id is not valid");
-    LocalSession session = activeGames.get(id);
-    Integer count = session.evaluateWord(word);
-    int points = getSubmissionPoints(word, count);
-    return session.updateScoreBoard(points, playerName, word);
+    SessionRegistry.Entry entry = getEntry(id);
+    return call(entry, () -> scoreWord(entry, playerName, word));
+  }
+
+  /**
+   * Submits a word without waiting for its evaluation when the server uses
+   * actors.
+   */
+  public CompletableFuture<BoggleResponse> submitWordAsync(int id, String playerName,
+                                                           String word) {
+    SessionRegistry.Entry entry = getEntry(id);
+    return submit(entry, () -> scoreWord(entry, playerName, word));
+  }
+
+  /**
+   * Evaluates a submitted word and updates the score of the player.
+   */
+  private BoggleResponse scoreWord(SessionRegistry.Entry entry, String playerName, String word) {
+    LocalSession session = entry.getSession();
+    session.touch();
+    if (!session.isRoundOpen())
+      throw new BoggleException("The round is not in progress.");
+    int wordId = dictionary.lookup(word);
+    if (!session.isValidWord(wordId))
+      throw new BoggleException("The word is not in the board solution.");
+    int count = session.evaluateWord(wordId);
+    int points = getSubmissionPoints(wordId, count);
+    BoggleResponse response = session.updateScoreBoard(points, playerName, word);
+    publishStatistics(entry);
+    return response;
+  }
+
+  /**
+   * Submits the word in the given position of the solution of a session.
+   * Used by the binary socket protocol, so the word does not have to be
+   * sent or looked up as a string.
+   */
+  public BoggleResponse submitWord(int id, String playerName, int solutionIndex) {
+    SessionRegistry.Entry entry = getEntry(id);
+    return call(entry, () -> scoreWord(entry, playerName, solutionIndex));
+  }
+
+  /**
+   * Submits the word in the given position of the solution without waiting
+   * for its evaluation when the server uses actors.
+   */
+  public CompletableFuture<BoggleResponse> submitWordAsync(int id, String playerName,
+                                                           int solutionIndex) {
+    SessionRegistry.Entry entry = getEntry(id);
+    return submit(entry, () -> scoreWord(entry, playerName, solutionIndex));
+  }
+
+  /**
+   * Evaluates the word in the given position of the solution and updates
+   * the score of the player.
+   */
+  private BoggleResponse scoreWord(SessionRegistry.Entry entry, String playerName,
+                                   int solutionIndex) {
+    LocalSession session = entry.getSession();
+    session.touch();
+    if (!session.isRoundOpen())
+      throw new BoggleException("The round is not in progress.");
+    int wordId = session.getSolutionWordId(solutionIndex);
+    int count = session.evaluateWord(wordId);
+    int points = getSubmissionPoints(wordId, count);
+    BoggleResponse response = session.updateScoreBoard(points, playerName, wordId);
+    publishStatistics(entry);
+    return response;
   }
 
   /**
    * Gets the points associated with a given word in a specific session.
+   * The first submission gets the value of the word, every other
+   * submission deducts as many points as times the word was submitted.
    */
-  private int getSubmissionPoints(String word, Integer count) {
-    if (count == null) {
-      return dictionary.get(word);
+  private int getSubmissionPoints(int wordId, int count) {
+    if (count == 1) {
+      return dictionary.getPoints(wordId);
     }
     else {
       return -count;
@@ -304,38 +551,213 @@ public class BoggleServer extends UnicastRemoteObject
    */
   @Override
   public BoggleResponse getStatistics(int id, String playerName) {
-    if (!activeGames.containsKey(id))
-      throw new BoggleException("The game session id is not valid");
-    LocalSession session = activeGames.get(id);
+    SessionRegistry.Entry entry = getEntry(id);
+    return call(entry, () -> readStatistics(entry, playerName));
+  }
+
+  /**
+   * Retrieves the current statistics without waiting for them when the
+   * server uses actors.
+   */
+  public CompletableFuture<BoggleResponse> getStatisticsAsync(int id, String playerName) {
+    SessionRegistry.Entry entry = getEntry(id);
+    return submit(entry, () -> readStatistics(entry, playerName));
+  }
+
+  /**
+   * Reads the statistics of a player.
+   */
+  private BoggleResponse readStatistics(SessionRegistry.Entry entry, String playerName) {
+    LocalSession session = entry.getSession();
+    session.touch();
     return session.getPlayerStatistics(playerName);
   }
 
   /**
-   * Finalizes the boggle session. Updates the server wide statistics.
+   * Subscribes a player to its statistics. The statistics are pushed to the
+   * listener when they change instead of being polled by the client.
+   */
+  @Override
+  public void subscribeStatistics(int id, String playerName, StatisticsListener listener) {
+    SessionRegistry.Entry entry = getEntry(id);
+    LocalSession session = entry.getSession();
+    session.touch();
+    session.subscribe(playerName, listener);
+    publisher.execute(session::publishStatistics);
+  }
+
+  /**
+   * Cancels the subscription of a player to its statistics.
+   */
+  @Override
+  public void unsubscribeStatistics(int id, String playerName) {
+    SessionRegistry.Entry entry = sessions.get(id);
+    if (entry != null)
+      entry.getSession().unsubscribe(playerName);
+  }
+
+  /**
+   * Schedules the publication of the statistics of a session to its
+   * subscribers. The changes that happen while a publication is pending
+   * are sent together, so bursts of submissions cost a single publication.
+   * The publication runs in the publisher pool, because the RMI listeners
+   * are called synchronously, so a slow client never delays the operations
+   * of the sessions.
+   */
+  private void publishStatistics(SessionRegistry.Entry entry) {
+    LocalSession session = entry.getSession();
+    if (session.statisticsChanged())
+      publisher.execute(session::publishStatistics);
+  }
+
+  /**
+   * Finalizes the boggle session. The session is queued to update the
+   * server wide statistics, so the request does not wait for the records.
+   * If the queue stays full for FINALIZE_WAIT milliseconds the request is
+   * rejected and the session is kept, so the client can try again.
    */
   @Override
   public void finalizeSession(int id) throws RemoteException {
-    LocalSession session = activeGames.remove(id);
-    records.updateRecords(session);
+    SessionRegistry.Entry entry = getEntry(id);
+    if (!aggregator.reserve(FINALIZE_WAIT))
+      throw new BoggleException("The server is busy, try again later.");
+    if (!removeSession(entry)) {
+      aggregator.cancel();
+      throw new BoggleException("The game session id is not valid");
+    }
+    finalizedSessions.incrementAndGet();
+    aggregator.submit(entry.getSession());
+  }
+
+  /**
+   * Retrieves a page of the all-time ranking of the players of the server.
+   */
+  @Override
+  public List<PlayerRecord> getLeaderboard(int offset, int count) throws RemoteException {
+    if (offset < 0 || count < 1 || count > Leaderboard.MAX_PAGE)
+      throw new BoggleException("The page of the leaderboard is not valid.");
+    return leaderboard.getPage(offset, count);
+  }
+
+  /**
+   * Retrieves a page of the ranking of the players in the sessions
+   * finalized during the last hour, day or week.
+   */
+  @Override
+  public List<PlayerRecord> getWindowLeaderboard(int window, int offset, int count)
+          throws RemoteException {
+    if (window < WindowLeaderboard.HOUR || window > WindowLeaderboard.WEEK)
+      throw new BoggleException("The leaderboard window is not valid.");
+    if (offset < 0 || count < 1 || count > Leaderboard.MAX_PAGE)
+      throw new BoggleException("The page of the leaderboard is not valid.");
+    return windows.getPage(window, offset, count);
   }
 
   /**
    * Retrieves all the statistics of the boggle session. It serves as a synchronization point
-   * to make sure that the statistics in every client reflect the current statistics.
+   * to make sure that the statistics in every client reflect the final statistics of the round.
    */
   @Override
   public BoggleResponse getSessionStatistics(int id, String playerName) throws RemoteException {
-    if (!activeGames.containsKey(id))
-      throw new BoggleException("The game session id is not valid");
-    CyclicBarrier startBarrier = startBarriers.get(id);
-    try {
-      startBarrier.await();
-    } catch (InterruptedException|BrokenBarrierException e) {
-      e.printStackTrace();
-    }
-    startBarrier.reset();
-    LocalSession session = activeGames.get(id);
-    return session.getPlayerStatistics(playerName);
+    return await(getSessionStatisticsAsync(id, playerName));
+  }
+
+  /**
+   * Returns without waiting for the end of the round. The future is
+   * completed with the statistics of the player once the server closes the
+   * round, so no submission can change them afterwards.
+   */
+  public CompletableFuture<BoggleResponse> getSessionStatisticsAsync(int id, String playerName) {
+    SessionRegistry.Entry entry = getEntry(id);
+    LocalSession session = entry.getSession();
+    return submit(entry, () -> {
+      session.touch();
+      session.getPlayerStatistics(playerName);
+      return session.getRoundEnd();
+    }).thenCompose(roundEnd -> roundEnd)
+            .thenCompose(round -> submit(entry, () -> session.getPlayerStatistics(playerName)));
+  }
+
+  /**
+   * Returns the pools that hold the boards of new sessions,
+   * mapped by board dimension.
+   */
+  public Map<Integer, BoardPool> getBoardPools() {
+    return Collections.unmodifiableMap(boardPools);
+  }
+
+  /**
+   * Returns the aggregator that merges the finalized sessions into the
+   * records.
+   */
+  public RecordsAggregator getAggregator() {
+    return aggregator;
+  }
+
+  /**
+   * Returns the number of players in the leaderboard.
+   */
+  public int getLeaderboardSize() {
+    return leaderboard.size();
+  }
+
+  /**
+   * Returns the number of players ranked in the given leaderboard window.
+   */
+  public int getWindowLeaderboardSize(int window) {
+    return windows.size(window);
+  }
+
+  /**
+   * Returns the number of results the leaderboard windows dropped because
+   * their bucket was full.
+   */
+  public long getWindowLeaderboardDropped() {
+    return windows.getDropped();
+  }
+
+  /**
+   * Returns the checkpointer that saves the active sessions.
+   */
+  public SessionCheckpointer getCheckpointer() {
+    return checkpoints;
+  }
+
+  /**
+   * Saves the sessions that changed since the last checkpoint and waits
+   * until they are written. Called when the server stops.
+   */
+  public void saveSessions() {
+    checkpoints.close(sessions, 5000);
+  }
+
+  /**
+   * Returns the number of round and session deadlines that are pending.
+   */
+  public int getPendingTimers() {
+    return timers.getPending();
+  }
+
+  /**
+   * Returns the number of sessions that were finalized by their owner.
+   */
+  public long getFinalizedSessions() {
+    return finalizedSessions.get();
+  }
+
+  /**
+   * Returns the number of sessions that were evicted because they were idle.
+   */
+  public long getIdleEvictions() {
+    return idleEvictions.get();
+  }
+
+  /**
+   * Returns the number of sessions that were evicted because they reached
+   * their time to live.
+   */
+  public long getExpiredEvictions() {
+    return expiredEvictions.get();
   }
 
   /**
@@ -353,7 +775,14 @@ public class BoggleServer extends UnicastRemoteObject
   }
 
   /**
-   * Serializes the records and saves them to disk.
+   * Prints the counters of the log of the records.
+   */
+  public void printRecordsLog() {
+    records.printLogStatus();
+  }
+
+  /**
+   * Saves a snapshot of the records to disk.
    */
   public void saveRecords(){
     records.saveRecords();
@@ -367,7 +796,7 @@ public class BoggleServer extends UnicastRemoteObject
   }
 
   /**
-   * Loads an existing set of records from disk.
+   * Loads the records saved by older versions of the server from disk.
    */
   public void loadRecords() {
     records.loadRecords();
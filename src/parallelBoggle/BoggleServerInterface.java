@@ -2,6 +2,7 @@ package parallelBoggle;
 
 import java.rmi.Remote;
 import java.rmi.RemoteException;
+import java.util.List;
 
 /**
  * BoggleServerInterface interface.
@@ -17,17 +18,38 @@ public interface BoggleServerInterface extends Remote {
    */
   Session createSession(int numPlayers, String playerName) throws RemoteException;
 
+  /**
+   * Creates a session with the given number of players that is played
+   * in a board with the given dimension (4 to 6 cells per side).
+   * The player that creates the session is set as the session owner.
+   */
+  Session createSession(int numPlayers, String playerName, int boardDimension)
+          throws RemoteException;
+
   /**
    * Joins the player to the given boggle session.
    */
   Session joinSession(int sessionId, String playerName) throws RemoteException;
 
+  /**
+   * Rejoins a player to a session that was restored after a restart of the
+   * server. The player keeps its statistics and proves who it is with the
+   * rejoin token of the session it received when it joined or created it.
+   */
+  Session rejoinSession(int sessionId, String playerName, long token) throws RemoteException;
+
   /**
    * Requests a session to be started. A session starts when all the players
    * have sent their start request to the server.
    */
   void requestStart(int id) throws RemoteException;
 
+  /**
+   * Requests a session to be started on behalf of the given player, so the
+   * server can tell which players are missing if the start times out.
+   */
+  void requestStart(int id, String playerName) throws RemoteException;
+
   /**
    * Submits a word to be reviewed by the boggle server. Points are awarded
    * to the player if it is a new word, otherwise points get deducted.
@@ -39,6 +61,19 @@ public interface BoggleServerInterface extends Remote {
    */
   BoggleResponse getStatistics(int id, String playerName) throws RemoteException;
 
+  /**
+   * Subscribes a player to its statistics. The listener receives the
+   * current statistics right away and then every time the score or the
+   * ranking of the player or the high score of the session change.
+   */
+  void subscribeStatistics(int id, String playerName, StatisticsListener listener)
+          throws RemoteException;
+
+  /**
+   * Cancels the subscription of a player to its statistics.
+   */
+  void unsubscribeStatistics(int id, String playerName) throws RemoteException;
+
   /**
    * Finalizes the boggle session. Updates the server wide statistics.
    */
@@ -49,4 +84,19 @@ public interface BoggleServerInterface extends Remote {
    * to make sure that the statistics in every client reflect the current statistics.
    */
   BoggleResponse getSessionStatistics(int id, String playerName) throws RemoteException;
+
+  /**
+   * Retrieves a page of the all-time ranking of the players of the server,
+   * starting at the given position (0 is the first place). A page has at
+   * most 100 players.
+   */
+  List<PlayerRecord> getLeaderboard(int offset, int count) throws RemoteException;
+
+  /**
+   * Retrieves a page of the ranking of the players in the sessions that
+   * were finalized during the last hour (window 0), day (1) or week (2).
+   * The records carry the score, games and word counts in the window.
+   */
+  List<PlayerRecord> getWindowLeaderboard(int window, int offset, int count)
+          throws RemoteException;
 }
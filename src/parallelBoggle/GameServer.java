@@ -1,8 +1,5 @@
 package parallelBoggle;
 
-import java.io.*;
-import java.net.ServerSocket;
-import java.net.Socket;
 import java.rmi.RemoteException;
 import java.rmi.registry.LocateRegistry;
 import java.rmi.registry.Registry;
@@ -11,8 +8,6 @@ import java.util.List;
 import java.util.Map;
 import java.util.Random;
 import java.util.Scanner;
-import java.util.concurrent.Executor;
-import java.util.concurrent.Executors;
 
 /**
  * GameServer class.
@@ -23,6 +18,7 @@ import java.util.concurrent.Executors;
  */
 public class GameServer {
   public static final String SERVER_NAME = "ERP48Server";
+  public static final int LEADERBOARD_PAGE = 10;
   private final BoggleServer boggle;
   private Registry registry;
 
@@ -100,6 +96,38 @@ public class GameServer {
    * Prints all active games and their players.
    */
   public synchronized void printStatus() {
+    for (Map.Entry<Integer, BoardPool> entry : boggle.getBoardPools().entrySet()) {
+      BoardPool pool = entry.getValue();
+      System.out.printf("Board pool %dx%d: %d ready (low %d, high %d), %d hits, %d misses.%n",
+              entry.getKey(), entry.getKey(), pool.size(), pool.getLowWatermark(),
+              pool.getHighWatermark(), pool.getHits(), pool.getMisses());
+    }
+    System.out.printf("Timers: %d pending.%n", boggle.getPendingTimers());
+    boggle.printRecordsLog();
+    RecordsAggregator aggregator = boggle.getAggregator();
+    System.out.printf("Finalization: %d queued (capacity %d), lag %d ms (max %d ms), "
+                    + "%d merged in %d batches, %d rejected, %d failed updates.%n",
+            aggregator.getDepth(), aggregator.getCapacity(), aggregator.getLag(),
+            aggregator.getMaxLag(), aggregator.getMerged(), aggregator.getBatches(),
+            aggregator.getRejected(), aggregator.getFailures());
+    for (SessionRegistry.Shard shard : boggle.getRegistryShards())
+      System.out.printf("Session shard %d: %d active, %d created, %d removed, %d queued tasks.%n",
+              shard.getIndex(), shard.size(), shard.getCreated(), shard.getRemoved(),
+              shard.getQueued());
+    System.out.printf("Sessions: %d finalized, %d evicted idle, %d evicted by ttl.%n",
+            boggle.getFinalizedSessions(), boggle.getIdleEvictions(),
+            boggle.getExpiredEvictions());
+    SessionCheckpointer checkpoints = boggle.getCheckpointer();
+    System.out.printf("Checkpoints: %d sessions saved, %d checkpoints, %d copies written, "
+                    + "last took %d ms.%n", checkpoints.getSaved(), checkpoints.getCheckpoints(),
+            checkpoints.getCopied(), checkpoints.getLastDuration());
+    System.out.printf("Leaderboards: %d players, %d in the last hour, %d in the last day, "
+                    + "%d in the last week, %d window results dropped.%n",
+            boggle.getLeaderboardSize(),
+            boggle.getWindowLeaderboardSize(WindowLeaderboard.HOUR),
+            boggle.getWindowLeaderboardSize(WindowLeaderboard.DAY),
+            boggle.getWindowLeaderboardSize(WindowLeaderboard.WEEK),
+            boggle.getWindowLeaderboardDropped());
     System.out.printf("Server status:");
     Map<Integer, List<String>> games = boggle.getActiveGames();
     if (games.isEmpty()) {
@@ -112,10 +140,59 @@ public class GameServer {
               game.getValue());
   }
 
+  /**
+   * Prints a page of the all-time ranking of the players. The pages have
+   * LEADERBOARD_PAGE players and start at 1.
+   */
+  public void printLeaderboard(int page) {
+    List<PlayerRecord> players;
+    try {
+      players = boggle.getLeaderboard((page - 1) * LEADERBOARD_PAGE, LEADERBOARD_PAGE);
+    } catch (RemoteException | BoggleException e) {
+      System.out.println("The leaderboard could not be printed. " + e.getMessage());
+      return;
+    }
+    int size = boggle.getLeaderboardSize();
+    System.out.printf("Leaderboard page %d of %d (%d players):%n", page,
+            Math.max(1, (size + LEADERBOARD_PAGE - 1) / LEADERBOARD_PAGE), size);
+    for (PlayerRecord player : players)
+      System.out.printf("  %d. %s: %d points in %d games, best word %s (%d points), "
+                      + "%d valid words, %d repeated words%n", player.getRank(),
+              player.getUsername(), player.getTotalScore(), player.getGames(),
+              player.getBestWord(), player.getBestWordScore(), player.getUniqueWords(),
+              player.getRepeatedWords());
+  }
+
+  /**
+   * Prints a page of the ranking of the players in the sessions finalized
+   * during the last hour, day or week.
+   */
+  public void printWindowLeaderboard(int window, int page) {
+    List<PlayerRecord> players;
+    try {
+      players = boggle.getWindowLeaderboard(window, (page - 1) * LEADERBOARD_PAGE,
+              LEADERBOARD_PAGE);
+    } catch (RemoteException | BoggleException e) {
+      System.out.println("The leaderboard could not be printed. " + e.getMessage());
+      return;
+    }
+    int size = boggle.getWindowLeaderboardSize(window);
+    System.out.printf("Leaderboard of the last %s, page %d of %d (%d players):%n",
+            WindowLeaderboard.getName(window), page,
+            Math.max(1, (size + LEADERBOARD_PAGE - 1) / LEADERBOARD_PAGE), size);
+    for (PlayerRecord player : players)
+      System.out.printf("  %d. %s: %d points in %d games, %d valid words, %d repeated words%n",
+              player.getRank(), player.getUsername(), player.getTotalScore(), player.getGames(),
+              player.getUniqueWords(), player.getRepeatedWords());
+  }
+
   /**
    * Command-line program.  Single (optional) argument is a port number (see {@link #start(int)}).
    */
   public static void main(String[] args) throws Exception {
+    if (System.getProperty("sun.rmi.transport.tcp.responseTimeout") == null)
+      System.setProperty("sun.rmi.transport.tcp.responseTimeout",
+              String.valueOf(BoggleServer.PUBLISHER_TIMEOUT));
     int port = 0;
     if (args.length > 0)
       port = Integer.parseInt(args[0]);
@@ -134,7 +211,10 @@ public class GameServer {
         System.err.println("Cannot start server: " + e.getMessage());
       UnicastRemoteObject.unexportObject(boggle, false);
     }
-    Runtime.getRuntime().addShutdownHook(new Thread(server::stop));
+    Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+      server.stop();
+      boggle.saveSessions();
+    }));
     ServerSocketHandler socketHandler = new ServerSocketHandler(port + 1, boggle);
     server.waitForCommands();
   }
@@ -150,6 +230,20 @@ public class GameServer {
         if (line.isEmpty()) {
           continue;
         }
+        if (line.startsWith("print leaderboard")) {
+          String[] options = line.substring("print leaderboard".length()).trim().split("\\s+");
+          int window = WindowLeaderboard.getWindow(options[0]);
+          String page = window < 0 ? options[0] : options.length > 1 ? options[1] : "";
+          try {
+            if (window < 0)
+              printLeaderboard(page.isEmpty() ? 1 : Integer.parseInt(page));
+            else
+              printWindowLeaderboard(window, page.isEmpty() ? 1 : Integer.parseInt(page));
+          } catch (NumberFormatException e) {
+            System.out.println("The page of the leaderboard is not valid.");
+          }
+          continue;
+        }
         switch (line) {
           case "print status":
             printStatus();
@@ -176,145 +270,3 @@ public class GameServer {
     }
   }
 }
-
-/**
- * ServerSocketHandler.
- * Handles socket connections established to the game server.
- */
-class ServerSocketHandler {
-  private final Executor exec;
-  private final BoggleServer boggle;
-
-  /**
-   * Creates a new server socket handler object and initializes the
-   * executor thread pool and stores a reference to the boggle server
-   * it will use to process requests.
-   */
-  public ServerSocketHandler(int port, BoggleServer boggle) throws IOException {
-    this.boggle = boggle;
-    exec = Executors.newCachedThreadPool();
-    exec.execute(new Listener(port));
-  }
-
-  /**
-   * Listener class.
-   * Listens requests received in a given port. For each requests it schedules
-   * a new task in the thread pool provided by the server socket handler.
-   */
-  class Listener implements Runnable {
-    private final ServerSocket serv;
-
-    /**
-     * Creates a new listener in the given port.
-     */
-    public Listener(int port) throws IOException {
-      System.out.println("Server listening on port " + port);
-      serv = new ServerSocket(port);
-    }
-
-    /**
-     * Listens for requests in a given socket. Schedules the execution
-     * of any received commands.
-     */
-    public void run() {
-      while (true) {
-        try {
-          Socket s = serv.accept();
-          exec.execute(new ConnectionHandler(s));
-        } catch (IOException e) {
-          e.printStackTrace();
-          return;
-        }
-      }
-    }
-  }
-
-  /**
-   * ConnectionHandler class.
-   * Handles any incoming commands into the given socket.
-   */
-  class ConnectionHandler implements Runnable {
-    private final Socket socket;
-
-    /**
-     * Assigns the socket provided as a parameter as the class socket.
-     */
-    public ConnectionHandler(Socket s) {
-      socket = s;
-    }
-
-    /**
-     * Processes any received commands and passes them to the boggle server.
-     */
-    public void run() {
-      BufferedReader in = null;
-      PrintWriter out = null;
-
-      try {
-        socket.setKeepAlive(true);
-
-        in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-        out = new PrintWriter(new OutputStreamWriter(socket.getOutputStream()), true);
-
-        String input;
-        try {
-          input = in.readLine();
-        } catch (IOException e) {
-          input = "";
-        }
-        if (!input.equals("")) {
-          String response = processMessage(input);
-          out.print(response);
-          out.flush();
-        }
-      }
-      catch (IOException e) {
-        System.out.println("IO error in socket service. " + e.getMessage());
-      }
-      finally {
-        try {
-          if (in != null)
-            in.close();
-          if (out != null)
-            out.close();
-        } catch (IOException e) {
-          System.out.println("IO error when closing socket. " + e.getMessage());
-        }
-      }
-    }
-
-    /**
-     * Processes the received messages and passes them to the boggle server after
-     * they have been processed and turned into boggle instructions.
-     */
-    private String processMessage(String input) throws RemoteException {
-      String[] values = input.split("[|]");
-      int commandId = Integer.valueOf(values[0]);
-      try {
-        switch (commandId) {
-          case BoggleServer.REQUEST_SESSION:
-            return boggle.createSession(Integer.parseInt(values[1]), values[2]).toString();
-          case BoggleServer.REQUEST_START:
-            boggle.requestStart(Integer.parseInt(values[1]));
-            return "2|Command processed";
-          case BoggleServer.SUBMIT_WORD:
-            return boggle.submitWord(Integer.parseInt(values[1]), values[2], values[3]).toString();
-          case BoggleServer.REQUEST_STATISTICS:
-            return boggle.getStatistics(Integer.parseInt(values[1]), values[2]).toString();
-          case BoggleServer.FINALIZE_SESSION:
-            boggle.finalizeSession(Integer.parseInt(values[1]));
-            return "2|Command processed";
-          case BoggleServer.JOIN_SESSION:
-            return boggle.joinSession(Integer.parseInt(values[1]), values[2]).toString();
-          case BoggleServer.REQUEST_SESSION_STATISTICS:
-            return boggle.getSessionStatistics(Integer.parseInt(values[1]), values[2]).toString();
-          default:
-            return "0|Command not recognized";
-        }
-      }
-      catch (Exception e) {
-        return "0|" + e.getMessage();
-      }
-    }
-  }
-}
\ No newline at end of file
@@ -0,0 +1,107 @@
+package parallelBoggle;
+
+import java.util.Arrays;
+
+/**
+ * IntIntMap class.
+ * Open addressing hash map from non-negative int keys to int values. It is
+ * used to find the index of a word id in the solution of a session without
+ * boxing the keys or the values. Collisions are solved with linear probing and the table is
+ * doubled when it becomes half full.
+ *
+ * This class is not thread safe.
+ */
+public class IntIntMap {
+  private static final int EMPTY = -1;
+
+  private int[] keys;
+  private int[] values;
+  private int size;
+
+  /**
+   * Creates a map with room for the given number of keys.
+   */
+  public IntIntMap(int expectedSize) {
+    int capacity = Integer.highestOneBit(Math.max(4, expectedSize * 2 - 1)) << 1;
+    keys = new int[capacity];
+    values = new int[capacity];
+    Arrays.fill(keys, EMPTY);
+  }
+
+  /**
+   * Returns the slot of a key, or the empty slot where it would be inserted.
+   */
+  private int slot(int key) {
+    int mask = keys.length - 1;
+    int slot = mix(key) & mask;
+    while (keys[slot] != EMPTY && keys[slot] != key)
+      slot = (slot + 1) & mask;
+    return slot;
+  }
+
+  /**
+   * Spreads the bits of a key so consecutive ids do not form long runs.
+   */
+  private static int mix(int key) {
+    int h = key * 0x9E3779B9;
+    return h ^ (h >>> 16);
+  }
+
+  /**
+   * Returns the value of a key, or the default value if it is not present.
+   */
+  public int get(int key, int defaultValue) {
+    int slot = slot(key);
+    return keys[slot] == EMPTY ? defaultValue : values[slot];
+  }
+
+  /**
+   * Verifies if the map contains a key.
+   */
+  public boolean containsKey(int key) {
+    return keys[slot(key)] != EMPTY;
+  }
+
+  /**
+   * Sets the value of a key.
+   */
+  public void put(int key, int value) {
+    if (key < 0)
+      throw new IllegalArgumentException("Negative key: " + key);
+    int slot = slot(key);
+    if (keys[slot] == EMPTY) {
+      keys[slot] = key;
+      size++;
+      values[slot] = value;
+      if (size * 2 > keys.length)
+        grow();
+    }
+    else
+      values[slot] = value;
+  }
+
+  /**
+   * Returns the number of keys in the map.
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Doubles the capacity of the table.
+   */
+  private void grow() {
+    int[] oldKeys = keys;
+    int[] oldValues = values;
+    keys = new int[oldKeys.length * 2];
+    values = new int[oldValues.length * 2];
+    Arrays.fill(keys, EMPTY);
+    for (int i = 0; i < oldKeys.length; i++) {
+      if (oldKeys[i] != EMPTY) {
+        int slot = slot(oldKeys[i]);
+        keys[slot] = oldKeys[i];
+        values[slot] = oldValues[i];
+      }
+    }
+  }
+}
@@ -0,0 +1,349 @@
+package parallelBoggle;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Leaderboard class.
+ * Keeps the all-time statistics of every player that has completed a game
+ * in the server, ranked by the sum of their scores. The players are kept in
+ * a map by username and in a RankedSet by score, so the statistics of a
+ * player are updated in O(log N) time, where N is the number of players,
+ * and a page of the ranking is read in O(log N) time plus its size,
+ * however deep it is.
+ *
+ * The first boggle.leaderboard.top positions are cached in an array that is
+ * only rebuilt when a change reaches them, so the pages of the top of the
+ * ranking are copied without searching the tree.
+ *
+ * Like the Records class, every change is appended to a RecordsLog and a
+ * snapshot of the players compacts the log from time to time, so the
+ * leaderboard is restored when the server starts.
+ *
+ * This class is thread safe. The rankings are read in parallel, the
+ * updates take the write side of a ReentrantReadWriteLock.
+ */
+public class Leaderboard {
+  public static final String PATH = System.getProperty("boggle.leaderboard.path", "server.players");
+  public static final int TOP = Math.max(1, Integer.getInteger("boggle.leaderboard.top", 100));
+  public static final int MAX_PAGE = 100;
+
+  private final Map<String, Standing> players;
+  private final RankedSet<Standing> ranking;
+  private final ReentrantReadWriteLock lock;
+  private volatile Top top;
+  private RecordsLog log;
+  private int eventsSinceSnapshot;
+
+  /**
+   * Creates an empty leaderboard that is only kept in memory.
+   */
+  public Leaderboard() {
+    this.players = new HashMap<>();
+    this.ranking = new RankedSet<>();
+    this.lock = new ReentrantReadWriteLock();
+  }
+
+  /**
+   * Creates the leaderboard of the server, restored from the snapshot and
+   * the log stored next to the given path.
+   */
+  public Leaderboard(String path) {
+    this();
+    RecordsLog restoring = new RecordsLog(path, Records.SYNC);
+    try {
+      restoring.restore(this::restoreSnapshot, this::replay);
+      log = restoring;
+    } catch (IOException | RuntimeException e) {
+      System.out.println("The leaderboard could not be restored, it will not be saved. "
+              + e.getMessage());
+    }
+  }
+
+  /**
+   * Adds the results of the players of a batch of finalized sessions to
+   * their statistics. The results are read before taking the lock.
+   */
+  public void update(List<LocalSession> sessions) {
+    List<List<Result>> games = new ArrayList<>(sessions.size());
+    for (LocalSession session : sessions) {
+      List<Result> results = new ArrayList<>();
+      for (Player player : session.getParticipants())
+        results.add(new Result(player));
+      games.add(results);
+    }
+    lock.writeLock().lock();
+    try {
+      for (List<Result> results : games) {
+        int size = BinaryProtocol.MAX_VARINT_SIZE;
+        for (Result result : results) {
+          apply(result);
+          size += result.size();
+        }
+        if (log != null) {
+          ByteBuffer event = ByteBuffer.allocate(size);
+          BinaryProtocol.putVarint(event, results.size());
+          for (Result result : results)
+            result.write(event);
+          event.flip();
+          log.append(event);
+          if (++eventsSinceSnapshot >= Math.max(Records.SNAPSHOT_EVENTS, players.size())
+                  || log.needsSnapshot())
+            snapshot();
+        }
+      }
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Adds the result of a game to the statistics of its player and moves the
+   * player in the ranking. The cached top positions are dropped if the
+   * player was or is now among them. Called while holding the write lock.
+   */
+  private void apply(Result result) {
+    Standing standing = players.get(result.username);
+    boolean wasTop = false;
+    if (standing == null) {
+      standing = new Standing(result.username);
+      players.put(result.username, standing);
+    }
+    else {
+      wasTop = inTop(standing);
+      ranking.remove(standing);
+    }
+    standing.totalScore += result.score;
+    standing.games++;
+    if (result.bestWordScore > standing.bestWordScore) {
+      standing.bestWordScore = result.bestWordScore;
+      standing.bestWord = result.bestWord;
+    }
+    standing.uniqueWords += result.uniqueWords;
+    standing.repeatedWords += result.repeatedWords;
+    ranking.add(standing);
+    if (wasTop || inTop(standing))
+      top = null;
+  }
+
+  /**
+   * Verifies if a player is placed among the cached top positions.
+   */
+  private boolean inTop(Standing standing) {
+    Top cached = top;
+    return cached == null || cached.records.length < TOP || standing.compareTo(cached.last) <= 0;
+  }
+
+  /**
+   * Returns the cached top positions, rebuilding them if a change reached
+   * them. Called while holding the read lock.
+   */
+  private Top getTop() {
+    Top cached = top;
+    if (cached == null) {
+      List<Standing> first = ranking.range(0, TOP);
+      PlayerRecord[] records = new PlayerRecord[first.size()];
+      for (int i = 0; i < records.length; i++)
+        records[i] = first.get(i).toRecord(i + 1);
+      cached = new Top(records, first.isEmpty() ? null : first.get(first.size() - 1));
+      top = cached;
+    }
+    return cached;
+  }
+
+  /**
+   * Returns a page of the ranking that starts at the given position
+   * (0 is the first place) and has at most the given number of players,
+   * up to MAX_PAGE players.
+   */
+  public List<PlayerRecord> getPage(int offset, int count) {
+    count = Math.min(count, MAX_PAGE);
+    if (offset < 0 || count <= 0)
+      return Collections.emptyList();
+    lock.readLock().lock();
+    try {
+      Top cached = getTop();
+      int end = (int) Math.min((long) offset + count, ranking.size());
+      List<PlayerRecord> page = new ArrayList<>(Math.max(0, end - offset));
+      for (int i = offset; i < Math.min(end, cached.records.length); i++)
+        page.add(cached.records[i]);
+      int position = Math.max(offset, cached.records.length);
+      if (end > position) {
+        for (Standing standing : ranking.range(position, end - position))
+          page.add(standing.toRecord(++position));
+      }
+      return page;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Returns the number of players in the leaderboard.
+   */
+  public int size() {
+    lock.readLock().lock();
+    try {
+      return players.size();
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Queues a snapshot of every player. Called while holding the write lock.
+   */
+  private void snapshot() {
+    int size = BinaryProtocol.MAX_VARINT_SIZE;
+    for (Standing standing : ranking)
+      size += standing.size();
+    ByteBuffer state = ByteBuffer.allocate(size);
+    BinaryProtocol.putVarint(state, ranking.size());
+    for (Standing standing : ranking)
+      standing.write(state);
+    state.flip();
+    if (log.snapshot(state))
+      eventsSinceSnapshot = 0;
+  }
+
+  /**
+   * Restores the players from a snapshot.
+   */
+  private void restoreSnapshot(ByteBuffer state) {
+    int count = BinaryProtocol.getVarint(state);
+    for (int i = 0; i < count; i++) {
+      Standing standing = new Standing(BinaryProtocol.getString(state));
+      standing.totalScore = BinaryProtocol.getSigned(state);
+      standing.games = BinaryProtocol.getVarint(state);
+      standing.bestWord = BinaryProtocol.getString(state);
+      standing.bestWordScore = BinaryProtocol.getSigned(state);
+      standing.uniqueWords = BinaryProtocol.getVarint(state);
+      standing.repeatedWords = BinaryProtocol.getVarint(state);
+      players.put(standing.username, standing);
+      ranking.add(standing);
+    }
+  }
+
+  /**
+   * Applies an event of the log to the players.
+   */
+  private void replay(ByteBuffer event) {
+    int count = BinaryProtocol.getVarint(event);
+    for (int i = 0; i < count; i++)
+      apply(new Result(event));
+    eventsSinceSnapshot++;
+  }
+
+  /**
+   * Top class.
+   * The cached top positions of the ranking and the player in the last of
+   * them.
+   */
+  private static final class Top {
+    private final PlayerRecord[] records;
+    private final Standing last;
+
+    Top(PlayerRecord[] records, Standing last) {
+      this.records = records;
+      this.last = last;
+    }
+  }
+
+  /**
+   * Standing class.
+   * The all-time statistics of a player. Players are ordered by their total
+   * score, highest first, and then by their username.
+   */
+  private static final class Standing implements Comparable<Standing> {
+    private final String username;
+    private int totalScore;
+    private int games;
+    private String bestWord;
+    private int bestWordScore;
+    private int uniqueWords;
+    private int repeatedWords;
+
+    Standing(String username) {
+      this.username = username;
+      this.bestWord = "";
+    }
+
+    @Override
+    public int compareTo(Standing other) {
+      if (totalScore != other.totalScore)
+        return totalScore > other.totalScore ? -1 : 1;
+      return username.compareTo(other.username);
+    }
+
+    PlayerRecord toRecord(int rank) {
+      return new PlayerRecord(rank, username, totalScore, games, bestWord, bestWordScore,
+              uniqueWords, repeatedWords);
+    }
+
+    int size() {
+      return 5 * BinaryProtocol.MAX_VARINT_SIZE + BinaryProtocol.stringSize(username)
+              + BinaryProtocol.stringSize(bestWord);
+    }
+
+    void write(ByteBuffer out) {
+      BinaryProtocol.putString(out, username);
+      BinaryProtocol.putSigned(out, totalScore);
+      BinaryProtocol.putVarint(out, games);
+      BinaryProtocol.putString(out, bestWord);
+      BinaryProtocol.putSigned(out, bestWordScore);
+      BinaryProtocol.putVarint(out, uniqueWords);
+      BinaryProtocol.putVarint(out, repeatedWords);
+    }
+  }
+
+  /**
+   * Result class.
+   * The statistics of a player in one finalized game.
+   */
+  private static final class Result {
+    private final String username;
+    private final int score;
+    private final String bestWord;
+    private final int bestWordScore;
+    private final int uniqueWords;
+    private final int repeatedWords;
+
+    Result(Player player) {
+      this.username = player.getUsername();
+      this.score = player.getScore();
+      this.bestWord = player.getBestWord();
+      this.bestWordScore = player.getBestWordScore();
+      this.uniqueWords = player.getNewWords();
+      this.repeatedWords = player.getRepeatedWords();
+    }
+
+    Result(ByteBuffer in) {
+      this.username = BinaryProtocol.getString(in);
+      this.score = BinaryProtocol.getSigned(in);
+      this.bestWord = BinaryProtocol.getString(in);
+      this.bestWordScore = BinaryProtocol.getSigned(in);
+      this.uniqueWords = BinaryProtocol.getVarint(in);
+      this.repeatedWords = BinaryProtocol.getVarint(in);
+    }
+
+    int size() {
+      return 4 * BinaryProtocol.MAX_VARINT_SIZE + BinaryProtocol.stringSize(username)
+              + BinaryProtocol.stringSize(bestWord);
+    }
+
+    void write(ByteBuffer out) {
+      BinaryProtocol.putString(out, username);
+      BinaryProtocol.putSigned(out, score);
+      BinaryProtocol.putString(out, bestWord);
+      BinaryProtocol.putSigned(out, bestWordScore);
+      BinaryProtocol.putVarint(out, uniqueWords);
+      BinaryProtocol.putVarint(out, repeatedWords);
+    }
+  }
+}
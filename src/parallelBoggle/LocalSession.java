@@ -1,22 +1,55 @@
 package parallelBoggle;
 
+import java.rmi.RemoteException;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * LocalSession class.
  * This class extends the session class and it is used to execute server-side
  * actions to the active boggle sessions in the server.
  *
- * This class is thread safe.
+ * This class is thread safe. Submissions do not take the session lock:
+ * the submission count of each word of the solution is an atomic counter
+ * and the scores of the players are atomic as well, so the words submitted
+ * by different players are evaluated in parallel. The rest of the state is
+ * guarded by a ReentrantLock, and the publications of the statistics by a
+ * separate one.
  *
  * Created by ecarpio
  */
 public class LocalSession extends Session {
-  Map<String, Integer> submissions;
+  private static final SecureRandom TOKENS = new SecureRandom();
+
+  private final WordList words;
+  private final AtomicIntegerArray submissions;
+  private final IntIntMap solutionIndex;
+  private final WordDictionary dictionary;
+  private final ScoreIndex scoreIndex;
+  private final Map<String, Subscription> subscriptions;
+  private final Map<String, Long> tokens;
+  private final AtomicBoolean publishPending;
+  private final ReentrantLock lock;
+  private final ReentrantLock publishLock;
+  private long created;
+  private final AtomicLong version;
+  private volatile long lastActivity;
+  private CompletableFuture<Integer> roundEnd;
+  private volatile long roundDeadline;
+  private volatile boolean roundOpen;
+  private boolean restored;
+  private int roundsStarted;
+  private int roundsPlayed;
   private int bestWordScore;
   private int highestScore;
   private int uniqueWordCounter;
@@ -26,11 +59,45 @@ public class LocalSession extends Session {
 
   /**
    * Creates a session with the values received as parameters.
+   * The solution is stored as the dictionary ids of its words.
    */
-  public LocalSession(int id, String board, List<String> solution,
+  public LocalSession(int id, String board, int boardDimension,
+                      int[] solution, WordDictionary dictionary,
                       Map<String, Player> players, int numPlayers) {
-    super(id, board, solution, players, numPlayers);
-    submissions = new ConcurrentHashMap<>();
+    this(id, board, boardDimension, new WordList(dictionary, solution), solution,
+            dictionary, players, numPlayers);
+  }
+
+  /**
+   * Creates a session whose solution is backed by the given word list.
+   */
+  private LocalSession(int id, String board, int boardDimension, WordList words,
+                       int[] solution, WordDictionary dictionary,
+                       Map<String, Player> players, int numPlayers) {
+    super(id, board, boardDimension, words, players, numPlayers);
+    this.dictionary = dictionary;
+    this.words = words;
+    solutionIndex = new IntIntMap(solution.length);
+    int maxScore = 0;
+    for (int i = 0; i < solution.length; i++) {
+      solutionIndex.put(solution[i], i);
+      maxScore += dictionary.getPoints(solution[i]);
+    }
+    scoreIndex = new ScoreIndex(maxScore);
+    for (Player p : players.values())
+      scoreIndex.add(p.getScore());
+    submissions = new AtomicIntegerArray(solution.length);
+    subscriptions = new ConcurrentHashMap<>();
+    tokens = new ConcurrentHashMap<>();
+    for (String player : players.keySet())
+      tokens.put(player, newToken());
+    publishPending = new AtomicBoolean();
+    lock = new ReentrantLock();
+    publishLock = new ReentrantLock();
+    roundEnd = CompletableFuture.completedFuture(0);
+    created = System.nanoTime();
+    version = new AtomicLong();
+    lastActivity = created;
     bestWord = "";
     winner = "";
     bestWordScore = 0;
@@ -40,140 +107,548 @@ public class LocalSession extends Session {
   }
 
   /**
-   * Adds a player to the session.
+   * Adds a player to the session and issues the token that lets the player
+   * rejoin it after a restart of the server.
    */
-  public synchronized void addPlayer(String playerName) {
-    if (players.size() < minPlayers)
-      players.put(playerName, new Player(playerName));
-    else
-      throw new BoggleException("The maximum number of players has been reached.");
+  public void addPlayer(String playerName) {
+    lock.lock();
+    try {
+      if (players.containsKey(playerName))
+        throw new BoggleException("The username is already in use in this session.");
+      if (players.size() < minPlayers) {
+        players.put(playerName, new Player(playerName));
+        tokens.put(playerName, newToken());
+        scoreIndex.add(0);
+        version.incrementAndGet();
+      }
+      else
+        throw new BoggleException("The maximum number of players has been reached.");
+    } finally {
+      lock.unlock();
+    }
   }
 
   /**
-   * Verifies if a username has not been used in the session.
+   * Lets a player that already joined the session back in, keeping its
+   * statistics. Only the sessions restored from a checkpoint can be
+   * rejoined, and the player proves who it is with the token it received
+   * when it joined or created the session.
+   */
+  public void rejoin(String playerName, long token) {
+    lock.lock();
+    try {
+      if (!restored)
+        throw new BoggleException("Only the sessions restored after a restart can be rejoined.");
+      Long expected = tokens.get(playerName);
+      if (expected == null || expected != token)
+        throw new BoggleException("The rejoin token is not valid.");
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Returns the session as it is sent to the given player, with its rejoin
+   * token.
    */
-  public synchronized boolean validPlayer(String playerName) {
-    return !players.containsKey(playerName);
+  public Seat forPlayer(String playerName) {
+    Long token = tokens.get(playerName);
+    return new Seat(this, token == null ? 0 : token);
   }
 
   /**
-   * Increments the submission count for a word.
+   * Returns the rejoin token of a player, or 0 if the player did not join
+   * the session.
    */
-  public synchronized Integer evaluateWord(String word) {
-    Integer count = submissions.get(word);
-    if (count == null)
-      submissions.put(word, 1);
-    else {
-      Integer oldval = count;
-      count += 1;
-      submissions.replace(word, oldval, count);
+  long getToken(String playerName) {
+    Long token = tokens.get(playerName);
+    return token == null ? 0 : token;
+  }
+
+  /**
+   * Returns a new random rejoin token, never 0.
+   */
+  private static long newToken() {
+    long token;
+    do {
+      token = TOKENS.nextLong();
+    } while (token == 0);
+    return token;
+  }
+
+  /**
+   * Verifies if a username has not been used in the session.
+   */
+  public boolean validPlayer(String playerName) {
+    lock.lock();
+    try {
+      return !players.containsKey(playerName);
+    } finally {
+      lock.unlock();
     }
-    return count;
+  }
+
+  /**
+   * Verifies if a word is contained in the game solution.
+   * The word is looked up in the dictionary and its id is checked
+   * against the index of the solution.
+   */
+  @Override
+  public boolean isValidWord(String word) {
+    return isValidWord(dictionary.lookup(word));
+  }
+
+  /**
+   * Verifies if the word with the given dictionary id is contained in
+   * the game solution. The index is never modified after the session is
+   * created, so it can be read without synchronization.
+   */
+  public boolean isValidWord(int wordId) {
+    return wordId != WordTrie.NONE && solutionIndex.containsKey(wordId);
+  }
+
+  /**
+   * Returns the words of the solution backed by their dictionary ids.
+   */
+  WordList getWords() {
+    return words;
+  }
+
+  /**
+   * Returns the dictionary id of the word in the given position
+   * of the solution.
+   */
+  public int getSolutionWordId(int index) {
+    if (index < 0 || index >= words.size())
+      throw new BoggleException("The word is not in the board solution.");
+    return words.getId(index);
+  }
+
+  /**
+   * Increments the submission count for a word id and
+   * returns the number of times it has been submitted.
+   * The word must be part of the solution.
+   */
+  public int evaluateWord(int wordId) {
+    return submissions.incrementAndGet(solutionIndex.get(wordId, -1));
   }
 
   /**
    * Updates the current score board and returns an object that reflects all
    * of the changes that were applied.
    */
-  public synchronized BoggleResponse updateScoreBoard(int points,
-                                                      String playerName,
-                                                      String word) {
-    int score = players.get(playerName).updateScore(points, word);
-    TreeSet<Integer> scores = new TreeSet<>();
-    for (Player p: players.values()) {
-      scores.add(p.getScore());
-    }
-    Iterator i = scores.descendingIterator();
-    int rank = 1;
-    Integer highScore = scores.last();
-    while (i.hasNext()) {
-      Integer val = (Integer) i.next();
-      if (score < val) {
-        rank++;
-      }
-    }
-    return new BoggleResponse(points, score, highScore, rank);
+  public BoggleResponse updateScoreBoard(int points, String playerName,
+                                         String word) {
+    int score = getPlayer(playerName).updateScore(points, word);
+    scoreIndex.move(score - points, score);
+    version.incrementAndGet();
+    return rank(points, score);
+  }
+
+  /**
+   * Updates the current score board with the word that has the given
+   * dictionary id. The word is only turned into a string if it becomes
+   * the best word of the player.
+   */
+  public BoggleResponse updateScoreBoard(int points, String playerName,
+                                         int wordId) {
+    int score = getPlayer(playerName).updateScore(points, dictionary::getWord, wordId);
+    scoreIndex.move(score - points, score);
+    version.incrementAndGet();
+    return rank(points, score);
   }
 
   /**
    * Returns the statistics of a specific player.
    */
-  public synchronized BoggleResponse getPlayerStatistics(String playerName) {
-    int score = players.get(playerName).getScore();
-    TreeSet<Integer> scores = new TreeSet<>();
-    for (Player p: players.values()) {
-      scores.add(p.getScore());
-    }
-    Iterator i = scores.descendingIterator();
-    int rank = 1;
-    Integer highScore = scores.last();
-    while (i.hasNext()) {
-      Integer val = (Integer) i.next();
-      if (score < val) {
-        rank++;
+  public BoggleResponse getPlayerStatistics(String playerName) {
+    return rank(0, getPlayer(playerName).getScore());
+  }
+
+  /**
+   * Returns a player of the session.
+   */
+  private Player getPlayer(String playerName) {
+    Player player = players.get(playerName);
+    if (player == null)
+      throw new BoggleException("The player is not part of the session.");
+    return player;
+  }
+
+  /**
+   * Computes the ranking of a score and the current high score of the
+   * session from the score index. The index is updated incrementally by
+   * every submission, so this takes logarithmic time in the range of
+   * scores and does not depend on the number of players. The submissions
+   * that are being processed at the same time may or may not be counted.
+   */
+  private BoggleResponse rank(int points, int score) {
+    return new BoggleResponse(points, score, scoreIndex.highScore(),
+            scoreIndex.rank(score));
+  }
+
+  /**
+   * Opens the round that starts with the given phase of the round
+   * coordinator, so it ends after the given number of nanoseconds. Returns
+   * false if the round was already opened, which happens because every
+   * player of the session tries to open it.
+   */
+  public boolean openRound(int phase, long duration) {
+    lock.lock();
+    try {
+      if (phase < roundsStarted)
+        return false;
+      roundsStarted = phase + 1;
+      roundEnd = new CompletableFuture<>();
+      roundDeadline = System.nanoTime() + duration;
+      roundOpen = true;
+      version.incrementAndGet();
+      return true;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Closes the current round and completes its future with the number of
+   * rounds that have been played. Returns false if no round was open.
+   */
+  public boolean closeRound() {
+    CompletableFuture<Integer> ended;
+    int played;
+    lock.lock();
+    try {
+      if (!roundOpen)
+        return false;
+      roundOpen = false;
+      played = ++roundsPlayed;
+      ended = roundEnd;
+      version.incrementAndGet();
+    } finally {
+      lock.unlock();
+    }
+    ended.complete(played);
+    return true;
+  }
+
+  /**
+   * Verifies if the current round accepts submissions. The deadline is
+   * checked as well, so a submission is rejected even if the timer that
+   * closes the round has not run yet.
+   */
+  public boolean isRoundOpen() {
+    return roundOpen && System.nanoTime() - roundDeadline < 0;
+  }
+
+  /**
+   * Returns a future that is completed when the current round ends. It is
+   * already completed if there is no round in progress.
+   */
+  public CompletableFuture<Integer> getRoundEnd() {
+    lock.lock();
+    try {
+      return roundEnd;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Returns the number of rounds that have been played.
+   */
+  public int getRoundsPlayed() {
+    lock.lock();
+    try {
+      return roundsPlayed;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Returns the number of rounds that have been started.
+   */
+  public int getRoundsStarted() {
+    lock.lock();
+    try {
+      return roundsStarted;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Returns a number that changes every time a player joins the session,
+   * a word is scored or a round starts or ends, so the checkpoints only
+   * copy the sessions that changed since they were last copied.
+   */
+  public long getVersion() {
+    return version.get();
+  }
+
+  /**
+   * Returns the number of times the word in the given position of the
+   * solution has been submitted.
+   */
+  int getSubmissions(int index) {
+    return submissions.get(index);
+  }
+
+  /**
+   * Restores the submission counts of the words of the solution, the
+   * number of rounds, the age, in nanoseconds, and the rejoin tokens of the
+   * players of a session read from a checkpoint, which can then be
+   * rejoined. A round that was in progress when the checkpoint was taken
+   * is considered played. Called before the session is published.
+   */
+  void restore(int[] submissionCounts, int rounds, long age, Map<String, Long> playerTokens) {
+    lock.lock();
+    try {
+      tokens.putAll(playerTokens);
+      restored = true;
+      for (int i = 0; i < submissionCounts.length; i++)
+        submissions.set(i, submissionCounts[i]);
+      roundsStarted = rounds;
+      roundsPlayed = rounds;
+      created = System.nanoTime() - age;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Records that a player used the session. Only a timestamp is written,
+   * the idle sessions are found by the server when it checks them.
+   */
+  public void touch() {
+    lastActivity = System.nanoTime();
+  }
+
+  /**
+   * Returns the time when the session was created, in the scale of
+   * System.nanoTime.
+   */
+  public long getCreated() {
+    return created;
+  }
+
+  /**
+   * Returns the time when the session was last used, in the scale of
+   * System.nanoTime.
+   */
+  public long getLastActivity() {
+    return lastActivity;
+  }
+
+  /**
+   * Releases the resources of a session that is removed from the server:
+   * the subscriptions are dropped and the players that wait for the end of
+   * the round are released.
+   */
+  public void close() {
+    subscriptions.clear();
+    closeRound();
+  }
+
+  /**
+   * Subscribes a player to the changes of its statistics.
+   */
+  public void subscribe(String playerName, StatisticsListener listener) {
+    getPlayer(playerName);
+    subscriptions.put(playerName, new Subscription(listener));
+  }
+
+  /**
+   * Cancels the subscription of a player.
+   */
+  public void unsubscribe(String playerName) {
+    subscriptions.remove(playerName);
+  }
+
+  /**
+   * Records that the statistics of the session changed. Returns true if the
+   * session has subscribers and no publication is pending yet, in which case
+   * the caller must schedule a call to publishStatistics. Changes that
+   * happen before the publication runs are coalesced into it.
+   */
+  public boolean statisticsChanged() {
+    return !subscriptions.isEmpty() && publishPending.compareAndSet(false, true);
+  }
+
+  /**
+   * Sends the current statistics to every subscriber whose statistics
+   * changed since the last time they were sent. Subscribers that cannot be
+   * reached are removed.
+   */
+  public void publishStatistics() {
+    publishLock.lock();
+    try {
+      publishPending.set(false);
+      Iterator<Map.Entry<String, Subscription>> entries = subscriptions.entrySet().iterator();
+      while (entries.hasNext()) {
+        Map.Entry<String, Subscription> entry = entries.next();
+        Player player = players.get(entry.getKey());
+        if (player == null)
+          continue;
+        BoggleResponse response = rank(0, player.getScore());
+        try {
+          entry.getValue().publish(response);
+        } catch (RemoteException e) {
+          entries.remove();
+        }
       }
+    } finally {
+      publishLock.unlock();
+    }
+  }
+
+  /**
+   * Subscription class.
+   * Listener of a player together with the last statistics it received.
+   */
+  private static class Subscription {
+    private final StatisticsListener listener;
+    private BoggleResponse last;
+
+    Subscription(StatisticsListener listener) {
+      this.listener = listener;
+    }
+
+    /**
+     * Sends the statistics if they are different from the last ones.
+     */
+    void publish(BoggleResponse response) throws RemoteException {
+      if (last != null && last.getScore() == response.getScore()
+              && last.getHighScore() == response.getHighScore()
+              && last.getRanking() == response.getRanking())
+        return;
+      last = response;
+      listener.statisticsChanged(response);
     }
-    return new BoggleResponse(0, score, highScore, rank);
   }
 
   /**
    * Retrieves the bestWordScore field.
    */
-  public synchronized int getBestWordScore() {
-    return bestWordScore;
+  public int getBestWordScore() {
+    lock.lock();
+    try {
+      return bestWordScore;
+    } finally {
+      lock.unlock();
+    }
   }
 
   /**
    * Retrieves the bestWord field.
    */
-  public synchronized String getBestWord() {
-    return bestWord;
+  public String getBestWord() {
+    lock.lock();
+    try {
+      return bestWord;
+    } finally {
+      lock.unlock();
+    }
   }
 
   /**
    * Retrieves the bestHighScore field.
    */
-  public synchronized int getHighestScore() {
-    return highestScore;
+  public int getHighestScore() {
+    lock.lock();
+    try {
+      return highestScore;
+    } finally {
+      lock.unlock();
+    }
   }
 
   /**
    * Retrieves the winner field.
    */
-  public synchronized String getWinner() {
-    return winner;
+  public String getWinner() {
+    lock.lock();
+    try {
+      return winner;
+    } finally {
+      lock.unlock();
+    }
   }
 
   /**
    * Computes the final statistics of a boggle session.
    */
-  public synchronized void computeStatistics() {
-    for (Player p: players.values()) {
-      if (bestWordScore < p.getBestWordScore()) {
-        bestWordScore = p.getBestWordScore();
-        bestWord = p.getBestWord();
-      }
-      if (highestScore < p.getScore()) {
-        highestScore = p.getScore();
-        winner = p.getUsername();
+  public void computeStatistics() {
+    lock.lock();
+    try {
+      for (Player p: players.values()) {
+        if (bestWordScore < p.getBestWordScore()) {
+          bestWordScore = p.getBestWordScore();
+          bestWord = p.getBestWord();
+        }
+        if (highestScore < p.getScore()) {
+          highestScore = p.getScore();
+          winner = p.getUsername();
+        }
+        uniqueWordCounter += p.getNewWords();
+        repeatedWordCounter += p.getRepeatedWords();
       }
-      uniqueWordCounter += p.getNewWords();
-      repeatedWordCounter += p.getRepeatedWords();
+    } finally {
+      lock.unlock();
     }
   }
 
   /**
    * Retrieves the count of the new words that were submitted.
    */
-  public synchronized int getUniqueWordsCount() {
-    return uniqueWordCounter;
+  public int getUniqueWordsCount() {
+    lock.lock();
+    try {
+      return uniqueWordCounter;
+    } finally {
+      lock.unlock();
+    }
   }
 
   /**
    * Retrieves the count of the repeated words that were submitted.
    */
-  public synchronized int getRepeatedWordsCount() {
-    return repeatedWordCounter;
+  public int getRepeatedWordsCount() {
+    lock.lock();
+    try {
+      return repeatedWordCounter;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Returns the players that joined the session with their statistics.
+   */
+  public List<Player> getParticipants() {
+    return new ArrayList<>(players.values());
+  }
+
+  /**
+   * Replaces the session with a plain Session when it is sent to RMI
+   * clients, so the words of the solution are sent as strings and the
+   * server-side state is not serialized.
+   */
+  private Object writeReplace() {
+    return copy(0);
+  }
+
+  /**
+   * Returns a plain copy of the session with the given rejoin token.
+   */
+  private Session copy(long token) {
+    lock.lock();
+    try {
+      return new Session(getId(), getBoard(), getBoardDimension(),
+              new ArrayList<>(getSolution()), new HashMap<>(players), minPlayers, token);
+    } finally {
+      lock.unlock();
+    }
   }
 
   /**
@@ -182,11 +657,55 @@ public class LocalSession extends Session {
    */
   @Override
   public String toString() {
-    synchronized (this) {
-      String string = "1|" + String.valueOf(getId()) + "|" + getBoard() + "|";
-      for (String s : getSolution())
-        string += "," + s;
-      return string;
+    int length = 16 + getBoard().length();
+    for (int i = 0; i < words.size(); i++)
+      length += 1 + words.getLength(i);
+    StringBuilder string = new StringBuilder(length);
+    string.append("1|").append(getId()).append('|').append(getBoard()).append('|');
+    for (String s : words)
+      string.append(',').append(s);
+    return string.toString();
+  }
+
+  /**
+   * Seat class.
+   * The session as it is returned to the player that created, joined or
+   * rejoined it, with the rejoin token of the player. It is sent to the
+   * clients like the session it belongs to, followed by the token.
+   */
+  public static final class Seat extends Session {
+    private static final long serialVersionUID = 3306400766945154472L;
+
+    private final LocalSession session;
+
+    Seat(LocalSession session, long token) {
+      super(session.getId(), session.getBoard(), session.getBoardDimension(), session.words,
+              session.players, session.minPlayers, token);
+      this.session = session;
+    }
+
+    /**
+     * Returns the session this seat belongs to.
+     */
+    LocalSession getSession() {
+      return session;
+    }
+
+    /**
+     * Replaces the seat with a plain Session when it is sent to RMI
+     * clients.
+     */
+    private Object writeReplace() {
+      return session.copy(getRejoinToken());
+    }
+
+    /**
+     * Formats the session and the token for the clients of the socket
+     * implementation.
+     */
+    @Override
+    public String toString() {
+      return session.toString() + '|' + getRejoinToken();
     }
   }
 }
@@ -1,5 +1,9 @@
 package parallelBoggle;
 
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.IntFunction;
+
 /**
  * Player class.
  * This class stores specific information about the players
@@ -7,78 +11,104 @@ package parallelBoggle;
  * This objects are serializable because they are sent
  * to the clients using the RMI implementation.
  *
+ * This class is thread safe.
+ *
  * Created by ecarpio
  */
 public class Player implements java.io.Serializable {
+  private static final long serialVersionUID = -8445022777323523601L;
+
   private final String username;
-  private int score;
-  private String bestWord;
-  private int bestWordScore;
-  private int newWords;
-  private int repeatedWords;
+  private final AtomicInteger score;
+  private final AtomicReference<BestWord> bestWord;
+  private final AtomicInteger newWords;
+  private final AtomicInteger repeatedWords;
 
   /**
    * Creates a new player for the given username.
    */
   public Player(String username) {
     this.username = username;
-    this.score = 0;
-    this.bestWord = "";
-    this.bestWordScore = Integer.MIN_VALUE;
-    this.newWords = 0;
-    this.repeatedWords = 0;
+    this.score = new AtomicInteger(0);
+    this.bestWord = new AtomicReference<>(new BestWord("", Integer.MIN_VALUE));
+    this.newWords = new AtomicInteger(0);
+    this.repeatedWords = new AtomicInteger(0);
+  }
+
+  /**
+   * Creates a player with the given statistics, restored from a checkpoint
+   * of its session.
+   */
+  Player(String username, int score, String bestWord, int bestWordScore, int newWords,
+         int repeatedWords) {
+    this.username = username;
+    this.score = new AtomicInteger(score);
+    this.bestWord = new AtomicReference<>(new BestWord(bestWord, bestWordScore));
+    this.newWords = new AtomicInteger(newWords);
+    this.repeatedWords = new AtomicInteger(repeatedWords);
   }
 
   /**
    * Updates the current score of the player.
    * Updates the personal records if necessary.
+   * The counters are atomic, so this method does not lock the player.
    */
-  public synchronized int updateScore(int points, String word) {
+  public int updateScore(int points, String word) {
+    return updateScore(points, id -> word, WordTrie.NONE);
+  }
+
+  /**
+   * Updates the current score of the player with the word that has the
+   * given id. The word is only resolved if it becomes the best word.
+   */
+  int updateScore(int points, IntFunction<String> words, int wordId) {
     if (points < 0)
-      repeatedWords++;
+      repeatedWords.incrementAndGet();
     else
-      newWords++;
-    score += points;
-    if (points > bestWordScore) {
-      bestWordScore = points;
-      bestWord = word;
+      newWords.incrementAndGet();
+    int total = score.addAndGet(points);
+    BestWord best = bestWord.get();
+    while (points > best.score) {
+      if (bestWord.compareAndSet(best, new BestWord(words.apply(wordId), points)))
+        break;
+      best = bestWord.get();
     }
-    return score;
+    return total;
   }
 
   /**
    * Returns the score of the player.
    */
   public int getScore() {
-    return score;
+    return score.get();
   }
 
   /**
    * Return the score of the best word submitted by the player.
    */
   public int getBestWordScore() {
-    return bestWordScore;
+    return bestWord.get().score;
   }
 
   /**
    * Return the best word submitted by the player.
    */
   public String getBestWord() {
-    return  bestWord;
+    return bestWord.get().word;
   }
 
   /**
    * Returns the number of new words submitted by the player.
    */
   public int getNewWords() {
-    return  newWords;
+    return newWords.get();
   }
 
   /**
    * Returns the number of repeated words submitted by the player.
    */
   public int getRepeatedWords() {
-    return repeatedWords;
+    return repeatedWords.get();
   }
 
   /**
@@ -87,4 +117,20 @@ public class Player implements java.io.Serializable {
   public String getUsername() {
     return username;
   }
+
+  /**
+   * The best word of a player together with its score. Both values are
+   * replaced at the same time so they are always consistent.
+   */
+  private static class BestWord implements java.io.Serializable {
+    private static final long serialVersionUID = -5605815039627084019L;
+
+    final String word;
+    final int score;
+
+    BestWord(String word, int score) {
+      this.word = word;
+      this.score = score;
+    }
+  }
 }
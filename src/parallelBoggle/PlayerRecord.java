@@ -0,0 +1,102 @@
+package parallelBoggle;
+
+/**
+ * PlayerRecord class.
+ * The all-time statistics of a player together with its position in the
+ * leaderboard of the server. Objects of this class are sent to the clients
+ * that request the leaderboard.
+ *
+ * This class is immutable, so it is thread safe.
+ */
+public class PlayerRecord implements java.io.Serializable {
+  private static final long serialVersionUID = 2736181958532316317L;
+  private final int rank;
+  private final String username;
+  private final int totalScore;
+  private final int games;
+  private final String bestWord;
+  private final int bestWordScore;
+  private final int uniqueWords;
+  private final int repeatedWords;
+
+  /**
+   * Creates a new record with the given information.
+   */
+  public PlayerRecord(int rank, String username, int totalScore, int games, String bestWord,
+                      int bestWordScore, int uniqueWords, int repeatedWords) {
+    this.rank = rank;
+    this.username = username;
+    this.totalScore = totalScore;
+    this.games = games;
+    this.bestWord = bestWord;
+    this.bestWordScore = bestWordScore;
+    this.uniqueWords = uniqueWords;
+    this.repeatedWords = repeatedWords;
+  }
+
+  /**
+   * Returns the position of the player in the leaderboard, starting at 1.
+   */
+  public int getRank() {
+    return rank;
+  }
+
+  /**
+   * Returns the username of the player.
+   */
+  public String getUsername() {
+    return username;
+  }
+
+  /**
+   * Returns the sum of the scores of every game of the player.
+   */
+  public int getTotalScore() {
+    return totalScore;
+  }
+
+  /**
+   * Returns the number of games the player has completed.
+   */
+  public int getGames() {
+    return games;
+  }
+
+  /**
+   * Returns the best word the player has ever submitted.
+   */
+  public String getBestWord() {
+    return bestWord;
+  }
+
+  /**
+   * Returns the score of the best word of the player.
+   */
+  public int getBestWordScore() {
+    return bestWordScore;
+  }
+
+  /**
+   * Returns the number of new words submitted by the player.
+   */
+  public int getUniqueWords() {
+    return uniqueWords;
+  }
+
+  /**
+   * Returns the number of repeated words submitted by the player.
+   */
+  public int getRepeatedWords() {
+    return repeatedWords;
+  }
+
+  /**
+   * Formats the fields of the record into a string that is sent to the
+   * clients that connected using the socket implementation.
+   */
+  @Override
+  public String toString() {
+    return rank + "," + username + "," + totalScore + "," + games + "," + bestWord + ","
+            + bestWordScore + "," + uniqueWords + "," + repeatedWords;
+  }
+}
@@ -0,0 +1,238 @@
+package parallelBoggle;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * RankedSet class.
+ * Sorted set that also finds its elements by position, used to read the
+ * pages of the rankings. It is a treap, a binary search tree balanced by
+ * random priorities, where every node keeps the size of its subtree. Adding
+ * or removing an element and finding the element in a position take
+ * O(log N) expected time, and a page of C elements is read in
+ * O(log N + C) time, wherever it starts.
+ *
+ * The elements are ordered by their natural order and must not change it
+ * while they are in the set.
+ *
+ * This class is not thread safe, its users guard it with their locks.
+ */
+class RankedSet<E extends Comparable<? super E>> implements Iterable<E> {
+  private Node<E> root;
+  private int seed;
+
+  /**
+   * Creates an empty set.
+   */
+  RankedSet() {
+    this.seed = (int) System.nanoTime() | 1;
+  }
+
+  /**
+   * Returns the number of elements of the set.
+   */
+  int size() {
+    return size(root);
+  }
+
+  /**
+   * Adds an element. Returns false if an equal element is already in the
+   * set.
+   */
+  boolean add(E element) {
+    int before = size();
+    root = insert(root, new Node<>(element, nextPriority()));
+    return size() > before;
+  }
+
+  /**
+   * Removes an element. Returns false if it was not in the set.
+   */
+  boolean remove(E element) {
+    int before = size();
+    root = delete(root, element);
+    return size() < before;
+  }
+
+  /**
+   * Returns the elements from the given position (0 is the first one) on,
+   * at most the given number of them.
+   */
+  List<E> range(int from, int count) {
+    List<E> elements = new ArrayList<>(Math.max(0, Math.min(count, size() - from)));
+    collect(root, from, from + count, elements);
+    return elements;
+  }
+
+  /**
+   * Returns the elements in order.
+   */
+  @Override
+  public Iterator<E> iterator() {
+    Deque<Node<E>> path = new ArrayDeque<>();
+    for (Node<E> node = root; node != null; node = node.left)
+      path.push(node);
+    return new Iterator<E>() {
+      @Override
+      public boolean hasNext() {
+        return !path.isEmpty();
+      }
+
+      @Override
+      public E next() {
+        if (path.isEmpty())
+          throw new NoSuchElementException();
+        Node<E> node = path.pop();
+        for (Node<E> child = node.right; child != null; child = child.left)
+          path.push(child);
+        return node.element;
+      }
+    };
+  }
+
+  /**
+   * Adds the elements of a subtree whose positions are in [from, to) to
+   * the list, skipping the subtrees that are outside of the range.
+   */
+  private static <E> void collect(Node<E> node, int from, int to, List<E> elements) {
+    while (node != null && from < to) {
+      int left = size(node.left);
+      if (from < left)
+        collect(node.left, from, to, elements);
+      if (from <= left && left < to)
+        elements.add(node.element);
+      from -= left + 1;
+      to -= left + 1;
+      node = node.right;
+      if (from < 0)
+        from = 0;
+    }
+  }
+
+  /**
+   * Inserts a node in a subtree and returns the new root of the subtree.
+   */
+  private Node<E> insert(Node<E> node, Node<E> added) {
+    if (node == null)
+      return added;
+    int order = added.element.compareTo(node.element);
+    if (order == 0)
+      return node;
+    if (order < 0) {
+      node.left = insert(node.left, added);
+      if (node.left.priority > node.priority)
+        node = rotateRight(node);
+    }
+    else {
+      node.right = insert(node.right, added);
+      if (node.right.priority > node.priority)
+        node = rotateLeft(node);
+    }
+    node.update();
+    return node;
+  }
+
+  /**
+   * Removes an element from a subtree and returns the new root of the
+   * subtree.
+   */
+  private Node<E> delete(Node<E> node, E element) {
+    if (node == null)
+      return null;
+    int order = element.compareTo(node.element);
+    if (order < 0)
+      node.left = delete(node.left, element);
+    else if (order > 0)
+      node.right = delete(node.right, element);
+    else
+      return merge(node.left, node.right);
+    node.update();
+    return node;
+  }
+
+  /**
+   * Joins two subtrees whose elements are all smaller in the first one.
+   */
+  private Node<E> merge(Node<E> left, Node<E> right) {
+    if (left == null)
+      return right;
+    if (right == null)
+      return left;
+    if (left.priority > right.priority) {
+      left.right = merge(left.right, right);
+      left.update();
+      return left;
+    }
+    right.left = merge(left, right.left);
+    right.update();
+    return right;
+  }
+
+  /**
+   * Lifts the left child of a node above it.
+   */
+  private Node<E> rotateRight(Node<E> node) {
+    Node<E> left = node.left;
+    node.left = left.right;
+    left.right = node;
+    node.update();
+    return left;
+  }
+
+  /**
+   * Lifts the right child of a node above it.
+   */
+  private Node<E> rotateLeft(Node<E> node) {
+    Node<E> right = node.right;
+    node.right = right.left;
+    right.left = node;
+    node.update();
+    return right;
+  }
+
+  /**
+   * Returns the next random priority (xorshift).
+   */
+  private int nextPriority() {
+    seed ^= seed << 13;
+    seed ^= seed >>> 17;
+    seed ^= seed << 5;
+    return seed;
+  }
+
+  /**
+   * Returns the size of a subtree.
+   */
+  private static int size(Node<?> node) {
+    return node == null ? 0 : node.size;
+  }
+
+  /**
+   * Node class.
+   * An element with its priority and the size of its subtree.
+   */
+  private static final class Node<E> {
+    private final E element;
+    private final int priority;
+    private Node<E> left;
+    private Node<E> right;
+    private int size;
+
+    Node(E element, int priority) {
+      this.element = element;
+      this.priority = priority;
+      this.size = 1;
+    }
+
+    /**
+     * Computes the size of the subtree from the sizes of the children.
+     */
+    void update() {
+      size = 1 + RankedSet.size(left) + RankedSet.size(right);
+    }
+  }
+}
@@ -1,17 +1,38 @@
 package parallelBoggle;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * Records class.
- * Stores the server-wide records. It can be serialized in order to
- * store and load the records from and to disk.
+ * Stores the server-wide records. Every change of the records is appended
+ * to a RecordsLog, and a snapshot of the records compacts the log every
+ * boggle.records.snapshot changes, so the records survive a crash of the
+ * server without ever waiting for the disk. When the server starts the
+ * records are restored from the latest snapshot and the changes that were
+ * logged after it.
  *
- * This class is thread safe.
+ * The class is still serializable, so the records saved by older versions
+ * of the server can be imported.
+ *
+ * This class is thread safe. It is guarded by a ReentrantLock.
  *
  * Created by ecarpio
  */
 public class Records implements Serializable {
+  private static final long serialVersionUID = -6317228004829685748L;
+
+  public static final String PATH = System.getProperty("boggle.records.path", "server.records");
+  public static final boolean SYNC =
+          Boolean.parseBoolean(System.getProperty("boggle.records.sync", "true"));
+  public static final int SNAPSHOT_EVENTS = Integer.getInteger("boggle.records.snapshot", 1000);
+
+  private static final int SESSION_EVENT = 1;
+  private static final int CLEAR_EVENT = 2;
+
   private String bestWord;
   private int bestWordScore;
   private int highestScore;
@@ -19,12 +40,16 @@ public class Records implements Serializable {
   private int gamesCompleted;
   private int uniqueWords;
   private int repeatedWords;
+  private transient ReentrantLock lock;
+  private transient RecordsLog log;
+  private transient int eventsSinceSnapshot;
 
   /**
    * Creates a new set of records and initializes
-   * the records to the default values.
+   * the records to the default values. The records are only kept in memory.
    */
   public Records() {
+    lock = new ReentrantLock();
     bestWord = "";
     highestScoreUsername = "";
     bestWordScore = 0;
@@ -34,49 +59,199 @@ public class Records implements Serializable {
     repeatedWords = 0;
   }
 
+  /**
+   * Creates the records of the server, restored from the snapshot and the
+   * log stored next to the given path. If there is nothing to restore the
+   * records saved in the given path by older versions are imported.
+   */
+  public Records(String path) {
+    this();
+    RecordsLog restoring = new RecordsLog(path, SYNC);
+    try {
+      boolean restored = restoring.restore(this::restoreSnapshot, this::replay);
+      log = restoring;
+      if (!restored && new File(path).exists())
+        importRecords(path);
+    } catch (IOException | RuntimeException e) {
+      System.out.println("The records could not be restored, they will not be saved. "
+              + e.getMessage());
+    }
+  }
+
   /**
    * Updates the records if any has been broken by the
    * players during the given session.
    */
-  public synchronized void updateRecords(LocalSession session) {
-    session.computeStatistics();
-    if (session.getBestWordScore() > bestWordScore) {
-      bestWordScore = session.getBestWordScore();
-      bestWord = session.getBestWord();
+  public void updateRecords(LocalSession session) {
+    updateRecords(Collections.singletonList(session));
+  }
+
+  /**
+   * Updates the records with a batch of finalized sessions. The statistics
+   * of the sessions are computed before taking the lock, and the whole
+   * batch is applied with a single acquisition of it.
+   */
+  public void updateRecords(List<LocalSession> sessions) {
+    for (LocalSession session : sessions)
+      session.computeStatistics();
+    lock.lock();
+    try {
+      for (LocalSession session : sessions) {
+        String word = session.getBestWord();
+        int wordScore = session.getBestWordScore();
+        int score = session.getHighestScore();
+        String winner = session.getWinner();
+        int unique = session.getUniqueWordsCount();
+        int repeated = session.getRepeatedWordsCount();
+        applySession(word, wordScore, score, winner, unique, repeated);
+        if (log != null) {
+          ByteBuffer event = ByteBuffer.allocate(1 + 4 * BinaryProtocol.MAX_VARINT_SIZE
+                  + BinaryProtocol.stringSize(word) + BinaryProtocol.stringSize(winner));
+          event.put((byte) SESSION_EVENT);
+          BinaryProtocol.putString(event, word);
+          BinaryProtocol.putSigned(event, wordScore);
+          BinaryProtocol.putSigned(event, score);
+          BinaryProtocol.putString(event, winner);
+          BinaryProtocol.putVarint(event, unique);
+          BinaryProtocol.putVarint(event, repeated);
+          logEvent(event);
+        }
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Applies the statistics of a finalized session to the records.
+   */
+  private void applySession(String word, int wordScore, int score, String winner,
+                            int unique, int repeated) {
+    if (wordScore > bestWordScore) {
+      bestWordScore = wordScore;
+      bestWord = word;
     }
-    if (session.getHighestScore() > highestScore) {
-      highestScore = session.getHighestScore();
-      highestScoreUsername = session.getWinner();
+    if (score > highestScore) {
+      highestScore = score;
+      highestScoreUsername = winner;
     }
-    uniqueWords += session.getUniqueWordsCount();
-    repeatedWords += session.getRepeatedWordsCount();
+    uniqueWords += unique;
+    repeatedWords += repeated;
     gamesCompleted++;
   }
 
+  /**
+   * Appends an event to the log and queues a snapshot once enough events
+   * were logged since the last one. Called while holding the lock, so the
+   * events are logged in the order they were applied.
+   */
+  private void logEvent(ByteBuffer event) {
+    event.flip();
+    log.append(event);
+    if (++eventsSinceSnapshot >= SNAPSHOT_EVENTS || log.needsSnapshot())
+      snapshot();
+  }
+
+  /**
+   * Queues a snapshot of the current records. Returns false if the queue of
+   * the log is full. Called while holding the lock.
+   */
+  private boolean snapshot() {
+    ByteBuffer state = ByteBuffer.allocate(5 * BinaryProtocol.MAX_VARINT_SIZE
+            + BinaryProtocol.stringSize(bestWord) + BinaryProtocol.stringSize(highestScoreUsername));
+    BinaryProtocol.putString(state, bestWord);
+    BinaryProtocol.putSigned(state, bestWordScore);
+    BinaryProtocol.putSigned(state, highestScore);
+    BinaryProtocol.putString(state, highestScoreUsername);
+    BinaryProtocol.putVarint(state, gamesCompleted);
+    BinaryProtocol.putVarint(state, uniqueWords);
+    BinaryProtocol.putVarint(state, repeatedWords);
+    state.flip();
+    if (!log.snapshot(state))
+      return false;
+    eventsSinceSnapshot = 0;
+    return true;
+  }
+
+  /**
+   * Restores the records from a snapshot.
+   */
+  private void restoreSnapshot(ByteBuffer state) {
+    bestWord = BinaryProtocol.getString(state);
+    bestWordScore = BinaryProtocol.getSigned(state);
+    highestScore = BinaryProtocol.getSigned(state);
+    highestScoreUsername = BinaryProtocol.getString(state);
+    gamesCompleted = BinaryProtocol.getVarint(state);
+    uniqueWords = BinaryProtocol.getVarint(state);
+    repeatedWords = BinaryProtocol.getVarint(state);
+  }
+
+  /**
+   * Applies an event of the log to the records.
+   */
+  private void replay(ByteBuffer event) {
+    int type = event.get();
+    if (type == SESSION_EVENT) {
+      String word = BinaryProtocol.getString(event);
+      int wordScore = BinaryProtocol.getSigned(event);
+      int score = BinaryProtocol.getSigned(event);
+      String winner = BinaryProtocol.getString(event);
+      applySession(word, wordScore, score, winner, BinaryProtocol.getVarint(event),
+              BinaryProtocol.getVarint(event));
+    }
+    else if (type == CLEAR_EVENT)
+      reset();
+    eventsSinceSnapshot++;
+  }
+
   /**
    * Prints the current records to the standard output.
    */
-  public synchronized void getRecords() {
-    System.out.printf("Highest score:  %s (%d points)%n", highestScoreUsername, highestScore);
-    System.out.printf("Best word:      %s (%d points)%n", bestWord, bestWordScore);
-    System.out.printf("Games played:   %d%n", gamesCompleted);
-    System.out.printf("Valid words:    %d%n", uniqueWords);
-    System.out.printf("Repeated words: %d%n", repeatedWords);
+  public void getRecords() {
+    lock.lock();
+    try {
+      System.out.printf("Highest score:  %s (%d points)%n", highestScoreUsername, highestScore);
+      System.out.printf("Best word:      %s (%d points)%n", bestWord, bestWordScore);
+      System.out.printf("Games played:   %d%n", gamesCompleted);
+      System.out.printf("Valid words:    %d%n", uniqueWords);
+      System.out.printf("Repeated words: %d%n", repeatedWords);
+    } finally {
+      lock.unlock();
+    }
   }
 
   /**
-   * Serializes and stores the current records to disk.
+   * Prints the counters of the log of the records to the standard output.
    */
-  public synchronized void saveRecords() {
-    try (
-            OutputStream outFile = new FileOutputStream("server.records");
-            OutputStream buffer = new BufferedOutputStream(outFile);
-            ObjectOutput output = new ObjectOutputStream(buffer)
-    ){
-      output.writeObject(this);
-      System.out.println("The records have been saved.");
-    } catch (IOException e) {
-      System.out.println("The records could not be saved.");
+  public void printLogStatus() {
+    if (log == null) {
+      System.out.println("Records log: not available.");
+      return;
+    }
+    System.out.printf("Records log: %d events since the last snapshot, %d queued, "
+                    + "%d group commits, %d snapshots, %d dropped%s.%n", log.getEvents(),
+            log.getQueued(), log.getCommits(), log.getSnapshots(), log.getDropped(),
+            log.isFailed() ? ", failed" : "");
+  }
+
+  /**
+   * Saves a snapshot of the current records, which compacts the log. The
+   * snapshot is written by the thread of the log, so this method does not
+   * wait for the disk.
+   */
+  public void saveRecords() {
+    lock.lock();
+    try {
+      if (log == null) {
+        System.out.println("The records could not be saved.");
+        return;
+      }
+      if (snapshot())
+        System.out.println("The records will be saved.");
+      else
+        System.out.println("The records log is busy, try again later.");
+    } finally {
+      lock.unlock();
     }
   }
 
@@ -84,7 +259,25 @@ public class Records implements Serializable {
    * Deletes all the existing records and restores them
    * to their default initial values.
    */
-  public synchronized void clearRecords() {
+  public void clearRecords() {
+    lock.lock();
+    try {
+      reset();
+      if (log != null) {
+        ByteBuffer event = ByteBuffer.allocate(1);
+        event.put((byte) CLEAR_EVENT);
+        logEvent(event);
+      }
+      System.out.println("The records were cleared.");
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Restores the records to their default initial values.
+   */
+  private void reset() {
     highestScore = 0;
     highestScoreUsername = "";
     bestWord = "";
@@ -92,20 +285,35 @@ public class Records implements Serializable {
     gamesCompleted = 0;
     uniqueWords = 0;
     repeatedWords = 0;
-    System.out.println("The records were cleared.");
   }
 
   /**
-   * Loads the records from disk if a previous set of records
-   * is available.
+   * Loads the records saved by older versions of the server, which replace
+   * the current records.
+   */
+  public void loadRecords() {
+    importRecords(PATH);
+  }
+
+  /**
+   * Replaces the current records with the records serialized in the given
+   * file and saves a snapshot of them.
    */
-  public synchronized void loadRecords() {
+  private void importRecords(String path) {
     try (
-            InputStream inFile = new FileInputStream("server.records");
+            InputStream inFile = new FileInputStream(path);
             InputStream buffer = new BufferedInputStream(inFile);
             ObjectInput input = new ObjectInputStream(buffer)
     ){
-      saveRecords((Records) input.readObject());
+      Records records = (Records) input.readObject();
+      lock.lock();
+      try {
+        copyRecords(records);
+        if (log != null)
+          snapshot();
+      } finally {
+        lock.unlock();
+      }
       System.out.println("The were loaded successfully.");
     }
     catch (ClassNotFoundException|IOException e) {
@@ -113,15 +321,24 @@ public class Records implements Serializable {
     }
   }
 
+  /**
+   * Creates the lock of a set of records read from disk.
+   */
+  private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+    in.defaultReadObject();
+    lock = new ReentrantLock();
+  }
+
   /**
    * Copies the contents of a given set of records into the
    * current records of the server.
    */
-  private synchronized void saveRecords(Records records) {
+  private void copyRecords(Records records) {
     this.bestWord = records.bestWord;
     this.bestWordScore = records.bestWordScore;
     this.highestScore = records.highestScore;
     this.highestScoreUsername = records.highestScoreUsername;
+    this.gamesCompleted = records.gamesCompleted;
     this.uniqueWords = records.uniqueWords;
     this.repeatedWords = records.repeatedWords;
   }
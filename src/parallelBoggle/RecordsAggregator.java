@@ -0,0 +1,227 @@
+package parallelBoggle;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * RecordsAggregator class.
+ * Merges the finalized sessions into the server-wide records and the
+ * leaderboards away from the requests that finalize them. The sessions are
+ * queued in a bounded queue and a single thread merges every session that
+ * is waiting with one acquisition of the lock of the records, so many
+ * sessions that end at the same moment cost a single batch instead of
+ * contending on the records.
+ *
+ * A caller reserves a place in the queue before it removes its session
+ * from the server. The place is released once the session is merged, so
+ * the queue and the batch being merged never hold more than the capacity.
+ * If no place frees up within the given time the finalization is rejected
+ * and the session stays active, so the clients back off until the
+ * aggregator catches up. The rejections are counted.
+ *
+ * The records, the leaderboard and the windows are updated independently,
+ * so a failure in one of them does not keep the batch out of the others.
+ *
+ * This class is thread safe.
+ */
+public class RecordsAggregator {
+  private static final int MAX_BATCH = 256;
+
+  private final Records records;
+  private final Leaderboard leaderboard;
+  private final WindowLeaderboard windows;
+  private final BlockingQueue<Finalized> queue;
+  private final Semaphore places;
+  private final int capacity;
+  private final AtomicLong merged;
+  private final AtomicLong batches;
+  private final AtomicLong rejected;
+  private final AtomicLong failures;
+  private final AtomicLong maxLag;
+
+  /**
+   * Creates an aggregator for the given records and leaderboards with a
+   * queue of the given capacity and starts its thread.
+   */
+  public RecordsAggregator(Records records, Leaderboard leaderboard, WindowLeaderboard windows,
+                           int capacity) {
+    if (capacity < 1)
+      throw new IllegalArgumentException("Invalid finalization queue capacity: " + capacity);
+    this.records = records;
+    this.leaderboard = leaderboard;
+    this.windows = windows;
+    this.queue = new ArrayBlockingQueue<>(capacity);
+    this.places = new Semaphore(capacity);
+    this.capacity = capacity;
+    this.merged = new AtomicLong();
+    this.batches = new AtomicLong();
+    this.rejected = new AtomicLong();
+    this.failures = new AtomicLong();
+    this.maxLag = new AtomicLong();
+    Thread aggregator = new Thread(this::run, "records-aggregator");
+    aggregator.setDaemon(true);
+    aggregator.start();
+  }
+
+  /**
+   * Reserves a place in the queue for a session, waiting at most the given
+   * number of milliseconds for one. Returns false, and counts the rejection,
+   * if the queue stayed full.
+   */
+  public boolean reserve(long timeout) {
+    try {
+      if (places.tryAcquire(timeout, TimeUnit.MILLISECONDS))
+        return true;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    rejected.incrementAndGet();
+    return false;
+  }
+
+  /**
+   * Releases a place that was reserved for a session that is not submitted.
+   */
+  public void cancel() {
+    places.release();
+  }
+
+  /**
+   * Queues a finalized session to be merged into the records. The caller
+   * must have reserved a place for it.
+   */
+  public void submit(LocalSession session) {
+    if (!queue.offer(new Finalized(session, System.nanoTime())))
+      throw new IllegalStateException("No place was reserved for the session.");
+  }
+
+  /**
+   * Merges the queued sessions until the thread is interrupted.
+   */
+  private void run() {
+    List<Finalized> batch = new ArrayList<>();
+    while (true) {
+      try {
+        batch.add(queue.take());
+      } catch (InterruptedException e) {
+        return;
+      }
+      queue.drainTo(batch, MAX_BATCH - 1);
+      merge(batch);
+      places.release(batch.size());
+      batch.clear();
+    }
+  }
+
+  /**
+   * Merges a batch of sessions into the records and the leaderboards and
+   * updates the counters.
+   */
+  private void merge(List<Finalized> batch) {
+    List<LocalSession> sessions = new ArrayList<>(batch.size());
+    for (Finalized finalized : batch)
+      sessions.add(finalized.session);
+    apply(() -> records.updateRecords(sessions));
+    apply(() -> leaderboard.update(sessions));
+    apply(() -> windows.update(sessions));
+    long lag = System.nanoTime() - batch.get(0).queued;
+    maxLag.accumulateAndGet(lag, Math::max);
+    merged.addAndGet(batch.size());
+    batches.incrementAndGet();
+  }
+
+  /**
+   * Applies a batch to one of the records or leaderboards. A failure is
+   * reported and counted without stopping the others.
+   */
+  private void apply(Runnable update) {
+    try {
+      update.run();
+    } catch (RuntimeException e) {
+      failures.incrementAndGet();
+      e.printStackTrace();
+    }
+  }
+
+  /**
+   * Returns the number of sessions waiting to be merged.
+   */
+  public int getDepth() {
+    return queue.size();
+  }
+
+  /**
+   * Returns the capacity of the queue.
+   */
+  public int getCapacity() {
+    return capacity;
+  }
+
+  /**
+   * Returns the number of milliseconds the oldest waiting session has been
+   * queued, or 0 if no session is waiting.
+   */
+  public long getLag() {
+    Finalized oldest = queue.peek();
+    if (oldest == null)
+      return 0;
+    return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - oldest.queued);
+  }
+
+  /**
+   * Returns the longest number of milliseconds a session waited before it
+   * was merged.
+   */
+  public long getMaxLag() {
+    return TimeUnit.NANOSECONDS.toMillis(maxLag.get());
+  }
+
+  /**
+   * Returns the number of sessions that were merged into the records.
+   */
+  public long getMerged() {
+    return merged.get();
+  }
+
+  /**
+   * Returns the number of batches that were merged.
+   */
+  public long getBatches() {
+    return batches.get();
+  }
+
+  /**
+   * Returns the number of finalizations that were rejected because the
+   * queue was full.
+   */
+  public long getRejected() {
+    return rejected.get();
+  }
+
+  /**
+   * Returns the number of updates of the records or the leaderboards that
+   * failed.
+   */
+  public long getFailures() {
+    return failures.get();
+  }
+
+  /**
+   * Finalized class.
+   * A queued session with the time it was queued.
+   */
+  private static final class Finalized {
+    private final LocalSession session;
+    private final long queued;
+
+    Finalized(LocalSession session, long queued) {
+      this.session = session;
+      this.queued = queued;
+    }
+  }
+}
@@ -0,0 +1,489 @@
+package parallelBoggle;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * RecordsLog class.
+ * Write-ahead log of the server-wide records, of the leaderboard and of the
+ * checkpoints of the sessions. Every
+ * change of the records is appended to the log as an event, and the log is
+ * compacted from time to time by writing a snapshot of the records and
+ * starting a new log.
+ *
+ * The events are queued by the callers and written by a single thread, so
+ * the callers never wait for the disk. The thread writes every event that
+ * is queued with a single gathering write followed by a single force (group
+ * commit), so a burst of events costs one disk synchronization.
+ *
+ * A snapshot request is queued like an event, so the snapshot holds exactly
+ * the events that were queued before it. The snapshot is written to a
+ * temporary file that replaces the previous one, and then a new log is
+ * started. The snapshot and the log carry a generation number, so a log
+ * that is older than the snapshot is discarded when the records are
+ * restored.
+ *
+ * Events are stored as a varint with the length of the payload, the payload
+ * and the CRC32 of the payload. A torn or corrupt event at the end of the
+ * log, left by a crash, is dropped when the log is restored.
+ *
+ * When a write fails the log is truncated back to the end of the last
+ * committed event and the write is retried. If it keeps failing, or if more
+ * than boggle.log.queue events and snapshots are waiting to be written, the
+ * log fails closed: the events are dropped instead of being written after a
+ * gap, the pending flushes fail, and the owner of the log is asked for a
+ * snapshot, which replaces the dropped events once it is written. The
+ * events of one log must be appended by one thread at a time, which the
+ * owners do by appending while holding their lock.
+ *
+ * This class is thread safe.
+ */
+class RecordsLog {
+  private static final int LOG_MAGIC = 0x42474C47;
+  private static final int SNAPSHOT_MAGIC = 0x42475350;
+  private static final int HEADER_SIZE = 12;
+  private static final int MAX_BATCH = 256;
+  private static final int WRITE_ATTEMPTS = 3;
+  private static final long RETRY_DELAY = 100;
+
+  static final int QUEUE = Math.max(1, Integer.getInteger("boggle.log.queue", 65536));
+
+  private final Path logPath;
+  private final Path snapshotPath;
+  private final boolean sync;
+  private final BlockingQueue<Object> queue;
+  private final AtomicLong events;
+  private final AtomicLong commits;
+  private final AtomicLong snapshots;
+  private final AtomicLong dropped;
+  private final AtomicInteger pending;
+  private volatile boolean failed;
+  private volatile boolean snapshotQueued;
+  private volatile boolean overflowed;
+  private FileChannel channel;
+  private long committed;
+  private long generation;
+
+  /**
+   * Creates a log that is stored in the given files. The log is not opened
+   * until it is restored.
+   */
+  RecordsLog(String path, boolean sync) {
+    this.logPath = Paths.get(path + ".log");
+    this.snapshotPath = Paths.get(path + ".snapshot");
+    this.sync = sync;
+    this.queue = new LinkedBlockingQueue<>();
+    this.events = new AtomicLong();
+    this.commits = new AtomicLong();
+    this.snapshots = new AtomicLong();
+    this.dropped = new AtomicLong();
+    this.pending = new AtomicInteger();
+  }
+
+  /**
+   * Passes the payload of the latest snapshot and the payloads of the
+   * events that were logged after it to the given consumers, in order,
+   * then opens the log and starts the thread that writes it. Returns false
+   * if there was nothing to restore.
+   */
+  boolean restore(Consumer<ByteBuffer> snapshot, Consumer<ByteBuffer> event) throws IOException {
+    boolean restored = false;
+    if (Files.exists(snapshotPath)) {
+      ByteBuffer in = ByteBuffer.wrap(Files.readAllBytes(snapshotPath));
+      if (in.remaining() < HEADER_SIZE || in.getInt() != SNAPSHOT_MAGIC)
+        throw new IOException("Invalid snapshot " + snapshotPath + ".");
+      generation = in.getLong();
+      snapshot.accept(in);
+      restored = true;
+    }
+    if (Files.exists(logPath) && replay(event))
+      restored = true;
+    else
+      startLog();
+    Thread writer = new Thread(this::run, "log-" + logPath.getFileName());
+    writer.setDaemon(true);
+    writer.start();
+    return restored;
+  }
+
+  /**
+   * Replays the events of the log if it belongs to the generation of the
+   * snapshot, and leaves the log open at the end of its last valid event.
+   * Returns false if the log has to be started again.
+   */
+  private boolean replay(Consumer<ByteBuffer> event) throws IOException {
+    FileChannel log = FileChannel.open(logPath, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    ByteBuffer in = ByteBuffer.allocate((int) log.size());
+    while (in.hasRemaining() && log.read(in) >= 0) {
+    }
+    in.flip();
+    if (in.remaining() < HEADER_SIZE || in.getInt() != LOG_MAGIC || in.getLong() != generation) {
+      log.close();
+      return false;
+    }
+    int valid = in.position();
+    int count = 0;
+    CRC32 crc = new CRC32();
+    try {
+      while (in.hasRemaining()) {
+        int length = BinaryProtocol.getVarint(in);
+        if (length > in.remaining() - 4)
+          break;
+        ByteBuffer payload = in.slice();
+        payload.limit(length);
+        in.position(in.position() + length);
+        crc.reset();
+        crc.update(payload.duplicate());
+        if ((int) crc.getValue() != in.getInt())
+          break;
+        event.accept(payload);
+        valid = in.position();
+        count++;
+      }
+    } catch (RuntimeException e) {
+      /* torn event at the end of the log */
+    }
+    if (valid < log.size()) {
+      System.out.println("Dropped " + (log.size() - valid) + " bytes at the end of the records log.");
+      log.truncate(valid);
+    }
+    log.position(valid);
+    channel = log;
+    committed = valid;
+    events.set(count);
+    return true;
+  }
+
+  /**
+   * Starts an empty log for the current generation. The log is written to
+   * a temporary file that replaces the previous log.
+   */
+  private void startLog() throws IOException {
+    if (channel != null)
+      channel.close();
+    Path temporary = Paths.get(logPath + ".tmp");
+    try (FileChannel log = FileChannel.open(temporary, StandardOpenOption.CREATE,
+            StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+      ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+      header.putInt(LOG_MAGIC).putLong(generation).flip();
+      while (header.hasRemaining())
+        log.write(header);
+      log.force(true);
+    }
+    Files.move(temporary, logPath, StandardCopyOption.REPLACE_EXISTING,
+            StandardCopyOption.ATOMIC_MOVE);
+    channel = FileChannel.open(logPath, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    committed = channel.size();
+  }
+
+  /**
+   * Queues an event with the given payload. Returns without waiting for
+   * the event to be written. If the queue is full the event is dropped, and
+   * so are the next ones until a snapshot is queued.
+   */
+  void append(ByteBuffer payload) {
+    if (overflowed || !reserve()) {
+      if (!overflowed)
+        System.out.println("The queue of the log " + logPath + " is full, its changes will "
+                + "not be saved until the next snapshot.");
+      overflowed = true;
+      dropped.incrementAndGet();
+      return;
+    }
+    int length = payload.remaining();
+    CRC32 crc = new CRC32();
+    crc.update(payload.duplicate());
+    ByteBuffer frame = ByteBuffer.allocate(BinaryProtocol.MAX_VARINT_SIZE + length + 4);
+    BinaryProtocol.putVarint(frame, length);
+    frame.put(payload).putInt((int) crc.getValue()).flip();
+    queue.add(frame);
+  }
+
+  /**
+   * Queues a snapshot with the given payload. The snapshot replaces every
+   * event that was queued before it. Returns false if the queue is full, in
+   * which case the owner has to try again later.
+   */
+  boolean snapshot(ByteBuffer payload) {
+    if (!reserve())
+      return false;
+    snapshotQueued = true;
+    overflowed = false;
+    queue.add(new Snapshot(payload));
+    return true;
+  }
+
+  /**
+   * Verifies if the log dropped events and waits for a snapshot of its
+   * owner to replace them.
+   */
+  boolean needsSnapshot() {
+    return overflowed || failed && !snapshotQueued;
+  }
+
+  /**
+   * Takes a place in the queue for an event or a snapshot. Returns false if
+   * the queue is full.
+   */
+  private boolean reserve() {
+    if (pending.incrementAndGet() <= QUEUE)
+      return true;
+    pending.decrementAndGet();
+    return false;
+  }
+
+  /**
+   * Makes the log fail closed, so the events that follow the ones that were
+   * lost are not written until a snapshot replaces them.
+   */
+  private void fail(String reason) {
+    if (failed)
+      return;
+    failed = true;
+    System.out.println("The log " + logPath + " failed, its changes will not be saved until "
+            + "the next snapshot. " + reason);
+  }
+
+  /**
+   * Waits until the events and snapshots queued before the call have been
+   * written, at most the given number of milliseconds. Returns false if
+   * they were not written in time.
+   */
+  boolean flush(long timeout) throws InterruptedException {
+    CompletableFuture<Void> flushed = new CompletableFuture<>();
+    queue.add(flushed);
+    try {
+      flushed.get(timeout, TimeUnit.MILLISECONDS);
+      return true;
+    } catch (ExecutionException | TimeoutException e) {
+      return false;
+    }
+  }
+
+  /**
+   * Writes the queued events and snapshots until the thread is interrupted.
+   */
+  private void run() {
+    List<Object> batch = new ArrayList<>();
+    while (true) {
+      try {
+        batch.add(queue.take());
+      } catch (InterruptedException e) {
+        return;
+      }
+      queue.drainTo(batch, MAX_BATCH - 1);
+      write(batch);
+      batch.clear();
+    }
+  }
+
+  /**
+   * Writes a batch of events with one write and one force per group of
+   * consecutive events. The flushes are completed once the events queued
+   * before them are written, or failed if they were dropped.
+   */
+  @SuppressWarnings("unchecked")
+  private void write(List<Object> batch) {
+    List<ByteBuffer> group = new ArrayList<>();
+    for (Object item : batch) {
+      if (item instanceof ByteBuffer) {
+        pending.decrementAndGet();
+        group.add((ByteBuffer) item);
+        continue;
+      }
+      commit(group);
+      if (item instanceof Snapshot) {
+        pending.decrementAndGet();
+        compact((Snapshot) item);
+      }
+      else if (failed)
+        ((CompletableFuture<Void>) item).completeExceptionally(
+                new IOException("The log " + logPath + " failed."));
+      else
+        ((CompletableFuture<Void>) item).complete(null);
+    }
+    commit(group);
+  }
+
+  /**
+   * Appends a group of events to the log and forces them to disk. A failed
+   * write is truncated back to the last committed event and retried, and
+   * the log fails closed if every attempt fails.
+   */
+  private void commit(List<ByteBuffer> group) {
+    if (group.isEmpty())
+      return;
+    if (failed) {
+      dropped.addAndGet(group.size());
+      group.clear();
+      return;
+    }
+    ByteBuffer[] buffers = group.toArray(new ByteBuffer[0]);
+    ByteBuffer last = buffers[buffers.length - 1];
+    IOException error = null;
+    for (int attempt = 1; attempt <= WRITE_ATTEMPTS; attempt++) {
+      try {
+        for (ByteBuffer buffer : buffers)
+          buffer.rewind();
+        while (last.hasRemaining())
+          channel.write(buffers);
+        if (sync)
+          channel.force(false);
+        committed = channel.position();
+        events.addAndGet(group.size());
+        commits.incrementAndGet();
+        group.clear();
+        return;
+      } catch (IOException e) {
+        error = e;
+        System.out.println("The log " + logPath + " could not be written. " + e.getMessage());
+        if (!rollback() || !pause(attempt))
+          break;
+      }
+    }
+    dropped.addAndGet(group.size());
+    group.clear();
+    fail(error.getMessage());
+  }
+
+  /**
+   * Truncates the log back to the end of the last committed event, so a
+   * partial write is not followed by other events. Returns false if the
+   * log could not be truncated.
+   */
+  private boolean rollback() {
+    try {
+      channel.truncate(committed);
+      channel.position(committed);
+      return true;
+    } catch (IOException e) {
+      System.out.println("The log " + logPath + " could not be truncated. " + e.getMessage());
+      return false;
+    }
+  }
+
+  /**
+   * Waits before the next attempt of a write. Returns false if there are
+   * no attempts left or the thread was interrupted.
+   */
+  private static boolean pause(int attempt) {
+    if (attempt == WRITE_ATTEMPTS)
+      return false;
+    try {
+      Thread.sleep(RETRY_DELAY * attempt);
+      return true;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return false;
+    }
+  }
+
+  /**
+   * Writes a snapshot of the next generation and starts its log. A log that
+   * failed is written again once the snapshot has replaced it.
+   */
+  private void compact(Snapshot snapshot) {
+    snapshotQueued = false;
+    try {
+      writeSnapshot(snapshot);
+      failed = false;
+    } catch (IOException e) {
+      fail("The snapshot could not be written. " + e.getMessage());
+    }
+  }
+
+  /**
+   * Writes the file of a snapshot and starts the log of its generation.
+   */
+  private void writeSnapshot(Snapshot snapshot) throws IOException {
+    Path temporary = Paths.get(snapshotPath + ".tmp");
+    try (FileChannel out = FileChannel.open(temporary, StandardOpenOption.CREATE,
+            StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+      ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+      header.putInt(SNAPSHOT_MAGIC).putLong(generation + 1).flip();
+      ByteBuffer[] buffers = {header, snapshot.payload};
+      while (snapshot.payload.hasRemaining())
+        out.write(buffers);
+      out.force(true);
+    }
+    Files.move(temporary, snapshotPath, StandardCopyOption.REPLACE_EXISTING,
+            StandardCopyOption.ATOMIC_MOVE);
+    generation++;
+    startLog();
+    events.set(0);
+    snapshots.incrementAndGet();
+  }
+
+  /**
+   * Returns the number of events in the current log.
+   */
+  long getEvents() {
+    return events.get();
+  }
+
+  /**
+   * Returns the number of group commits.
+   */
+  long getCommits() {
+    return commits.get();
+  }
+
+  /**
+   * Returns the number of snapshots that were written.
+   */
+  long getSnapshots() {
+    return snapshots.get();
+  }
+
+  /**
+   * Returns the number of events and snapshots waiting to be written.
+   */
+  int getQueued() {
+    return pending.get();
+  }
+
+  /**
+   * Returns the number of events that were dropped because the log failed
+   * or its queue was full.
+   */
+  long getDropped() {
+    return dropped.get();
+  }
+
+  /**
+   * Verifies if the log failed and is waiting for a snapshot.
+   */
+  boolean isFailed() {
+    return failed || overflowed;
+  }
+
+  /**
+   * Snapshot class.
+   * Payload of a queued snapshot.
+   */
+  private static final class Snapshot {
+    private final ByteBuffer payload;
+
+    Snapshot(ByteBuffer payload) {
+      this.payload = payload;
+    }
+  }
+}
@@ -0,0 +1,171 @@
+package parallelBoggle;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * RoundCoordinator class.
+ * Synchronizes the players of a session at the start of the rounds without
+ * parking their threads. Every player that arrives at a
+ * synchronization point receives a future that is completed, with the
+ * number of the phase, once every player of the session has arrived.
+ *
+ * A phase that is still waiting for players when its timeout expires is
+ * completed with the players that arrived, and the players that did not
+ * arrive are considered absent, so the next phases do not wait for them.
+ * When an absent player arrives at a phase that has already ended it is
+ * released right away, and it is waited for again once it catches up with
+ * the rest of the players.
+ *
+ * Players are identified by their username. Arrivals without a username
+ * are only counted, so they cannot be told apart once a phase times out.
+ *
+ * This class is thread safe.
+ */
+public class RoundCoordinator {
+  private final int parties;
+  private final long timeout;
+  private final TimingWheel timers;
+  private final Map<String, Integer> nextPhase;
+  private final Set<String> absent;
+  private final ReentrantLock lock;
+  private CompletableFuture<Integer> phase;
+  private TimingWheel.Timeout expiration;
+  private int phaseNumber;
+  private int arrived;
+  private int missing;
+
+  /**
+   * Creates a coordinator for the given number of players. The phases
+   * expire after the given number of milliseconds.
+   */
+  public RoundCoordinator(int parties, long timeout, TimingWheel timers) {
+    this(parties, timeout, timers, 0);
+  }
+
+  /**
+   * Creates a coordinator whose first phase has the given number, for a
+   * session restored from a checkpoint that already played some rounds.
+   */
+  public RoundCoordinator(int parties, long timeout, TimingWheel timers, int firstPhase) {
+    this.parties = parties;
+    this.timeout = timeout;
+    this.timers = timers;
+    this.nextPhase = new HashMap<>();
+    this.absent = new HashSet<>();
+    this.lock = new ReentrantLock();
+    this.phaseNumber = firstPhase;
+  }
+
+  /**
+   * Registers a player that joined the session, so the coordinator knows
+   * that it is expected from the current phase on.
+   */
+  public void register(String playerName) {
+    lock.lock();
+    try {
+      nextPhase.putIfAbsent(playerName, phaseNumber);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Registers the arrival of a player at its next synchronization point and
+   * returns immediately. The future is completed when the phase ends.
+   */
+  public CompletableFuture<Integer> arrive(String playerName) {
+    CompletableFuture<Integer> result;
+    int number;
+    lock.lock();
+    try {
+      if (playerName != null) {
+        Integer known = nextPhase.get(playerName);
+        int next = known == null ? phaseNumber : known;
+        nextPhase.put(playerName, next + 1);
+        if (next < phaseNumber)
+          return CompletableFuture.completedFuture(next);
+        if (absent.remove(playerName) || (known == null && missing > absent.size()))
+          missing--;
+      }
+      number = phaseNumber;
+      if (arrived == 0) {
+        phase = new CompletableFuture<>();
+        expiration = timers.schedule(() -> expire(number), timeout, TimeUnit.MILLISECONDS);
+      }
+      arrived++;
+      result = phase;
+      if (arrived < parties - missing)
+        return result;
+      advance();
+    } finally {
+      lock.unlock();
+    }
+    result.complete(number);
+    return result;
+  }
+
+  /**
+   * Completes a phase that is still waiting for players when it expires.
+   * The players that did not arrive are marked as absent.
+   */
+  private void expire(int number) {
+    CompletableFuture<Integer> completed;
+    lock.lock();
+    try {
+      if (number != phaseNumber || arrived == 0)
+        return;
+      missing = parties - arrived;
+      for (Map.Entry<String, Integer> player : nextPhase.entrySet())
+        if (player.getValue() <= number)
+          absent.add(player.getKey());
+      completed = phase;
+      advance();
+    } finally {
+      lock.unlock();
+    }
+    completed.complete(number);
+  }
+
+  /**
+   * Moves to the next phase. The future of the phase that ended is
+   * completed by the caller once the lock has been released, so the
+   * actions that depend on it do not run while holding it.
+   */
+  private void advance() {
+    expiration.cancel();
+    phase = null;
+    expiration = null;
+    arrived = 0;
+    phaseNumber++;
+  }
+
+  /**
+   * Returns the number of players that are waiting in the current phase.
+   */
+  public int getWaiting() {
+    lock.lock();
+    try {
+      return arrived;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Returns the number of players that are considered absent.
+   */
+  public int getAbsent() {
+    lock.lock();
+    try {
+      return missing;
+    } finally {
+      lock.unlock();
+    }
+  }
+}
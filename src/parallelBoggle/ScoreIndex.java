@@ -0,0 +1,179 @@
+package parallelBoggle;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * ScoreIndex class.
+ * Keeps the scores of the players of a session ordered, so the ranking of
+ * a player and the high score of the session are computed in O(log S) time
+ * without allocating anything, where S is the range of possible scores.
+ *
+ * Every possible score has a bucket with the number of players that have
+ * that score. A Fenwick tree counts the buckets that are not empty, because
+ * the ranking of a player is one plus the number of different scores that
+ * are higher than its own score.
+ *
+ * The counters are atomic and the structure is shared through the read
+ * side of a StampedLock, so scores are moved and rankings are read in
+ * parallel. The write side is only taken when a score falls outside the
+ * range of the buckets and the index has to grow. Readers may not see the
+ * moves that are being applied at the same time.
+ *
+ * This class is thread safe.
+ */
+public class ScoreIndex {
+  private static final int INITIAL_NEGATIVE_RANGE = 64;
+
+  private final StampedLock lock;
+  private int minScore;
+  private int maxScore;
+  private AtomicIntegerArray counts;
+  private AtomicIntegerArray tree;
+
+  /**
+   * Creates an index for scores that are expected to be at most
+   * the given maximum score.
+   */
+  public ScoreIndex(int maxScore) {
+    this.lock = new StampedLock();
+    this.minScore = -INITIAL_NEGATIVE_RANGE;
+    this.maxScore = Math.max(maxScore, 0);
+    int size = this.maxScore - this.minScore + 1;
+    this.counts = new AtomicIntegerArray(size);
+    this.tree = new AtomicIntegerArray(size + 1);
+  }
+
+  /**
+   * Adds a player with the given score.
+   */
+  public void add(int score) {
+    move(score, score, false);
+  }
+
+  /**
+   * Moves a player from one score to another.
+   */
+  public void move(int oldScore, int newScore) {
+    if (oldScore != newScore)
+      move(oldScore, newScore, true);
+  }
+
+  /**
+   * Increments the bucket of the new score and, if requested, decrements the
+   * bucket of the old score. Grows the index if a score is out of range.
+   */
+  private void move(int oldScore, int newScore, boolean remove) {
+    while (true) {
+      long stamp = lock.readLock();
+      try {
+        if (inRange(newScore) && inRange(oldScore)) {
+          if (counts.incrementAndGet(newScore - minScore) == 1)
+            update(newScore - minScore + 1, 1);
+          if (remove && counts.decrementAndGet(oldScore - minScore) == 0)
+            update(oldScore - minScore + 1, -1);
+          return;
+        }
+      } finally {
+        lock.unlockRead(stamp);
+      }
+      grow(Math.min(oldScore, newScore), Math.max(oldScore, newScore));
+    }
+  }
+
+  /**
+   * Returns the ranking of a score among the scores of the session.
+   */
+  public int rank(int score) {
+    long stamp = lock.readLock();
+    try {
+      int index = Math.min(Math.max(score, minScore - 1), maxScore) - minScore + 1;
+      return 1 + prefix(counts.length()) - prefix(index);
+    } finally {
+      lock.unlockRead(stamp);
+    }
+  }
+
+  /**
+   * Returns the highest score of the session.
+   */
+  public int highScore() {
+    long stamp = lock.readLock();
+    try {
+      int total = prefix(counts.length());
+      if (total == 0)
+        return 0;
+      int position = 0;
+      int remaining = total;
+      for (int step = Integer.highestOneBit(counts.length()); step > 0; step >>= 1) {
+        int next = position + step;
+        if (next <= counts.length() && tree.get(next) < remaining) {
+          position = next;
+          remaining -= tree.get(next);
+        }
+      }
+      return position + minScore;
+    } finally {
+      lock.unlockRead(stamp);
+    }
+  }
+
+  /**
+   * Verifies if a score has a bucket in the index.
+   */
+  private boolean inRange(int score) {
+    return score >= minScore && score <= maxScore;
+  }
+
+  /**
+   * Adds a value to a position of the Fenwick tree (1-based).
+   */
+  private void update(int position, int delta) {
+    for (; position < tree.length(); position += position & -position)
+      tree.addAndGet(position, delta);
+  }
+
+  /**
+   * Returns the number of non empty buckets up to a position (1-based).
+   */
+  private int prefix(int position) {
+    int sum = 0;
+    for (; position > 0; position -= position & -position)
+      sum += tree.get(position);
+    return sum;
+  }
+
+  /**
+   * Extends the range of the buckets so it contains the given scores.
+   * The negative side is doubled to keep the number of resizes low.
+   */
+  private void grow(int low, int high) {
+    long stamp = lock.writeLock();
+    try {
+      if (low >= minScore && high <= maxScore)
+        return;
+      int newMin = minScore;
+      while (newMin > low)
+        newMin = Math.max(Integer.MIN_VALUE / 4, newMin * 2);
+      int newMax = Math.max(maxScore, high);
+      AtomicIntegerArray newCounts = new AtomicIntegerArray(newMax - newMin + 1);
+      AtomicIntegerArray newTree = new AtomicIntegerArray(newCounts.length() + 1);
+      int shift = minScore - newMin;
+      for (int i = 0; i < counts.length(); i++)
+        newCounts.set(i + shift, counts.get(i));
+      for (int i = 0; i < newCounts.length(); i++) {
+        if (newCounts.get(i) > 0) {
+          for (int position = i + 1; position < newTree.length();
+               position += position & -position)
+            newTree.addAndGet(position, 1);
+        }
+      }
+      counts = newCounts;
+      tree = newTree;
+      minScore = newMin;
+      maxScore = newMax;
+    } finally {
+      lock.unlockWrite(stamp);
+    }
+  }
+}
@@ -0,0 +1,789 @@
+package parallelBoggle;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.rmi.RemoteException;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * ServerSocketHandler.
+ * Handles socket connections established to the game server.
+ *
+ * The connections are non-blocking and are served by a small fixed set of
+ * event loops, each one with its own selector. The event loops read the
+ * requests into pooled buffers, split them into lines and pass every line
+ * to a bounded pool of workers that executes the game logic. The responses
+ * are handed back to the event loop of the connection to be written. When
+ * the workers and their queue are full, the request is answered with an
+ * error instead of creating more threads.
+ *
+ * Connections are persistent and pipelined, see the Connection class for
+ * the way responses are matched to their requests.
+ */
+class ServerSocketHandler {
+  static final int EVENT_LOOPS = Integer.getInteger("boggle.socket.loops",
+          Math.max(1, Runtime.getRuntime().availableProcessors() / 2));
+  static final int WORKERS = Integer.getInteger("boggle.socket.workers", 64);
+  static final int WORK_QUEUE = Integer.getInteger("boggle.socket.queue", 1024);
+  static final int MAX_PIPELINED = Integer.getInteger("boggle.socket.pipeline", 64);
+  static final boolean VIRTUAL_THREADS = Boolean.getBoolean("boggle.threads.virtual");
+  static final int BUFFER_SIZE = 4096;
+
+  private final BoggleServer boggle;
+  private final ServerSocketChannel serverChannel;
+  private final EventLoop[] loops;
+  private final ExecutorService workers;
+  private final BufferPool buffers;
+  private final AtomicInteger nextLoop;
+  private final AtomicInteger connections;
+
+  /**
+   * Creates a new server socket handler that listens in the given port,
+   * starts the event loops and the workers, and stores a reference to the
+   * boggle server it will use to process requests.
+   */
+  public ServerSocketHandler(int port, BoggleServer boggle) throws IOException {
+    this.boggle = boggle;
+    this.buffers = new BufferPool(BUFFER_SIZE);
+    this.nextLoop = new AtomicInteger();
+    this.connections = new AtomicInteger();
+    this.workers = createWorkers();
+    this.serverChannel = ServerSocketChannel.open();
+    serverChannel.configureBlocking(false);
+    serverChannel.bind(new InetSocketAddress(port));
+    this.loops = new EventLoop[EVENT_LOOPS];
+    for (int i = 0; i < loops.length; i++)
+      loops[i] = new EventLoop(i);
+    loops[0].execute(() -> loops[0].register(serverChannel, SelectionKey.OP_ACCEPT, null));
+    for (EventLoop loop : loops)
+      loop.start();
+    System.out.println("Server listening on port " + port);
+  }
+
+  /**
+   * Creates a thread factory for daemon threads with the given name prefix.
+   */
+  static ThreadFactory daemonThreads(String prefix) {
+    AtomicInteger counter = new AtomicInteger();
+    return r -> {
+      Thread t = new Thread(r, prefix + counter.getAndIncrement());
+      t.setDaemon(true);
+      return t;
+    };
+  }
+
+  /**
+   * Creates a thread factory for virtual threads with the given name prefix,
+   * or returns null if the JVM does not support them. The factory is looked
+   * up by reflection, so the server still runs on JVMs without them.
+   */
+  static ThreadFactory virtualThreads(String prefix) {
+    try {
+      Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+      Class<?> type = Class.forName("java.lang.Thread$Builder");
+      builder = type.getMethod("name", String.class, long.class).invoke(builder, prefix, 0L);
+      return (ThreadFactory) type.getMethod("factory").invoke(builder);
+    } catch (ReflectiveOperationException | RuntimeException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Creates the executor of the workers. With boggle.threads.virtual every
+   * request runs in its own virtual thread, so a request that blocks does
+   * not hold a platform thread, and the number of requests in progress is
+   * only limited by the pipelining limit of each connection. Otherwise the
+   * requests run in a bounded pool of platform threads.
+   */
+  private static ExecutorService createWorkers() {
+    if (VIRTUAL_THREADS) {
+      ThreadFactory factory = virtualThreads("socket-worker-");
+      if (factory != null) {
+        try {
+          return (ExecutorService) Executors.class
+                  .getMethod("newThreadPerTaskExecutor", ThreadFactory.class)
+                  .invoke(null, factory);
+        } catch (ReflectiveOperationException e) {
+          System.out.println("Virtual threads could not be used. " + e.getMessage());
+        }
+      }
+      else
+        System.out.println("Virtual threads are not available in this JVM, "
+                + "the socket workers use platform threads.");
+    }
+    return new ThreadPoolExecutor(WORKERS, WORKERS, 60, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<>(WORK_QUEUE), daemonThreads("socket-worker-"));
+  }
+
+  /**
+   * Returns the number of open socket connections.
+   */
+  public int getConnections() {
+    return connections.get();
+  }
+
+  /**
+   * Accepts all pending connections and assigns them to the event loops.
+   */
+  private void accept() {
+    while (true) {
+      SocketChannel channel;
+      try {
+        channel = serverChannel.accept();
+        if (channel == null)
+          return;
+        channel.configureBlocking(false);
+        channel.socket().setKeepAlive(true);
+        channel.socket().setTcpNoDelay(true);
+      } catch (IOException e) {
+        System.out.println("IO error when accepting a connection. " + e.getMessage());
+        return;
+      }
+      EventLoop loop = loops[Math.floorMod(nextLoop.getAndIncrement(), loops.length)];
+      loop.execute(() -> new Connection(channel, loop));
+    }
+  }
+
+  /**
+   * EventLoop class.
+   * Waits for events in the connections that were assigned to it and runs
+   * the tasks that other threads submit to it, like writing a response.
+   */
+  class EventLoop implements Runnable {
+    private final Selector selector;
+    private final Queue<Runnable> tasks;
+    private final Thread thread;
+
+    /**
+     * Creates an event loop with its own selector.
+     */
+    EventLoop(int index) throws IOException {
+      this.selector = Selector.open();
+      this.tasks = new ConcurrentLinkedQueue<>();
+      this.thread = new Thread(this, "socket-loop-" + index);
+      thread.setDaemon(true);
+    }
+
+    /**
+     * Starts the thread of the event loop.
+     */
+    void start() {
+      thread.start();
+    }
+
+    /**
+     * Schedules a task to be executed by the event loop.
+     */
+    void execute(Runnable task) {
+      tasks.add(task);
+      if (Thread.currentThread() != thread)
+        selector.wakeup();
+    }
+
+    /**
+     * Registers a channel in the selector of the event loop.
+     * Must be called by the event loop.
+     */
+    SelectionKey register(SelectableChannel channel, int ops,
+                          Object attachment) {
+      try {
+        return channel.register(selector, ops, attachment);
+      } catch (ClosedChannelException e) {
+        return null;
+      }
+    }
+
+    /**
+     * Waits for events and dispatches them to the connections.
+     */
+    public void run() {
+      while (true) {
+        try {
+          Runnable task;
+          while ((task = tasks.poll()) != null)
+            task.run();
+          selector.select();
+          Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+          while (keys.hasNext()) {
+            SelectionKey key = keys.next();
+            keys.remove();
+            if (!key.isValid())
+              continue;
+            if (key.isAcceptable()) {
+              accept();
+              continue;
+            }
+            Connection connection = (Connection) key.attachment();
+            if (key.isReadable())
+              connection.read();
+            if (key.isValid() && key.isWritable())
+              connection.write();
+          }
+        } catch (IOException e) {
+          e.printStackTrace();
+          return;
+        } catch (RuntimeException e) {
+          e.printStackTrace();
+        }
+      }
+    }
+  }
+
+  /**
+   * Connection class.
+   * Holds the state of a socket connection. All the methods are executed by
+   * the event loop of the connection, except the processing of the requests
+   * which is done by the workers.
+   *
+   * A connection carries any number of requests, one per line, and the
+   * client does not have to wait for a response before sending the next
+   * request. A request that starts with a tag ("#17|4|3|user") is answered
+   * with the same tag ("#17|1|3|2|5") as soon as it is processed. The
+   * responses to untagged requests are written in the order of the requests.
+   *
+   * When the first byte of the connection is BinaryProtocol.MAGIC the
+   * connection uses the binary protocol instead, where every request is a
+   * tagged frame and the responses are written as soon as they are ready.
+   *
+   * The statistics that are pushed to the players subscribed through the
+   * connection are lines that start with "!" followed by the tag of the
+   * subscription request in the text protocol ("!#17|1|0|5|7|1"), and
+   * PUSH frames with the tag of the subscription request in the binary
+   * protocol.
+   */
+  class Connection {
+    private final SocketChannel channel;
+    private final EventLoop loop;
+    private final SelectionKey key;
+    private final Queue<ByteBuffer> output;
+    private final Map<Long, String> completed;
+    private ByteBuffer input;
+    private long nextSequence;
+    private long nextResponse;
+    private int inFlight;
+    private boolean protocolSelected;
+    private boolean binary;
+    private boolean inputClosed;
+    private volatile boolean closed;
+
+    /**
+     * Registers the connection in its event loop.
+     */
+    Connection(SocketChannel channel, EventLoop loop) {
+      this.channel = channel;
+      this.loop = loop;
+      this.output = new ArrayDeque<>();
+      this.completed = new HashMap<>();
+      this.input = buffers.acquire();
+      this.key = loop.register(channel, SelectionKey.OP_READ, this);
+      connections.incrementAndGet();
+      if (key == null)
+        close();
+    }
+
+    /**
+     * Reads the available bytes and dispatches every complete request.
+     * Reading is paused while the connection has too many requests in flight.
+     */
+    void read() {
+      int count;
+      try {
+        count = channel.read(input);
+      } catch (IOException e) {
+        close();
+        return;
+      }
+      if (count < 0) {
+        inputClosed = true;
+        key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+        closeIfDone();
+        return;
+      }
+      if (!protocolSelected && input.position() > 0) {
+        protocolSelected = true;
+        binary = (input.get(0) & 0xFF) == BinaryProtocol.MAGIC;
+        if (binary)
+          input.flip().position(1).compact();
+      }
+      if (binary)
+        readFrames();
+      else
+        readLines();
+    }
+
+    /**
+     * Dispatches the complete lines of the text protocol. A dispatch may
+     * close the connection, which releases the input buffer, so the loop
+     * stops as soon as the connection is closed.
+     */
+    private void readLines() {
+      int start = 0;
+      for (int i = 0; i < input.position(); i++) {
+        if (input.get(i) == '\n') {
+          int end = (i > start && input.get(i - 1) == '\r') ? i - 1 : i;
+          byte[] line = new byte[end - start];
+          input.get(start, line);
+          start = i + 1;
+          if (line.length > 0) {
+            dispatch(new String(line, StandardCharsets.UTF_8));
+            if (closed)
+              return;
+          }
+        }
+      }
+      input.limit(input.position()).position(start);
+      input.compact();
+      if (!input.hasRemaining()) {
+        input.clear();
+        inputClosed = true;
+        key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+        send(nextSequence++, null, "0|The request is too long.");
+        return;
+      }
+      updateInterest();
+    }
+
+    /**
+     * Dispatches the complete frames of the binary protocol.
+     */
+    private void readFrames() {
+      input.flip();
+      try {
+        ByteBuffer frame;
+        while ((frame = BinaryProtocol.nextFrame(input)) != null) {
+          dispatch(frame);
+          if (closed)
+            return;
+        }
+      } catch (BoggleException e) {
+        input.clear();
+        inputClosed = true;
+        key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+        send(BinaryProtocol.error(0, e.getMessage()));
+        return;
+      }
+      input.compact();
+      updateInterest();
+    }
+
+    /**
+     * Passes a request to the workers. The response is written by the event
+     * loop once it is ready. The requests that wait for the rest of the
+     * players of a session do not hold a worker while they wait.
+     */
+    private void dispatch(String line) {
+      String tag = null;
+      if (line.charAt(0) == '#') {
+        int separator = line.indexOf('|');
+        tag = separator < 0 ? line : line.substring(0, separator);
+        line = separator < 0 ? "" : line.substring(separator + 1);
+      }
+      long sequence = tag == null ? nextSequence++ : -1;
+      String request = line;
+      String requestTag = tag;
+      inFlight++;
+      try {
+        workers.execute(() -> processMessage(request, this, requestTag).thenAccept(response ->
+                loop.execute(() -> complete(() -> send(sequence, requestTag, response)))));
+      } catch (RejectedExecutionException e) {
+        inFlight--;
+        send(sequence, tag, "0|The server is busy, try again later.");
+      }
+    }
+
+    /**
+     * Passes a binary request to the workers.
+     */
+    private void dispatch(ByteBuffer frame) {
+      inFlight++;
+      try {
+        workers.execute(() -> processFrame(frame, this).thenAccept(response ->
+                loop.execute(() -> complete(() -> send(response)))));
+      } catch (RejectedExecutionException e) {
+        inFlight--;
+        send(BinaryProtocol.error(BinaryProtocol.getVarint(frame),
+                "The server is busy, try again later."));
+      }
+    }
+
+    /**
+     * Creates a listener that pushes statistics as text lines that carry
+     * the tag of the subscription request, if it had one.
+     */
+    StatisticsListener listener(String tag) {
+      String prefix = tag == null ? "!" : "!" + tag + "|";
+      return listener(response -> ByteBuffer.wrap((prefix + response + "\n")
+              .getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Creates a listener that pushes statistics as binary frames that carry
+     * the tag of the subscription request.
+     */
+    StatisticsListener listener(int tag) {
+      return listener(response -> BinaryProtocol.push(tag, response));
+    }
+
+    /**
+     * Creates a listener that pushes the encoded statistics through the
+     * connection. The listener fails once the connection is closed, so the
+     * session drops the subscription.
+     */
+    private StatisticsListener listener(Function<BoggleResponse, ByteBuffer> encoder) {
+      return response -> {
+        if (closed)
+          throw new RemoteException("The connection is closed.");
+        ByteBuffer push = encoder.apply(response);
+        loop.execute(() -> send(push));
+      };
+    }
+
+    /**
+     * Sends the response of a request that has been processed by a worker.
+     */
+    private void complete(Runnable send) {
+      inFlight--;
+      send.run();
+      updateInterest();
+      closeIfDone();
+    }
+
+    /**
+     * Queues a response. Tagged responses are queued right away and untagged
+     * ones wait until the responses to the previous requests are queued.
+     */
+    private void send(long sequence, String tag, String response) {
+      if (closed)
+        return;
+      if (tag != null)
+        queue(tag + "|" + response);
+      else {
+        completed.put(sequence, response);
+        String next;
+        while ((next = completed.remove(nextResponse)) != null) {
+          queue(next);
+          nextResponse++;
+        }
+      }
+      write();
+    }
+
+    /**
+     * Queues a binary frame.
+     */
+    private void send(ByteBuffer frame) {
+      if (closed)
+        return;
+      output.add(frame);
+      write();
+    }
+
+    /**
+     * Adds a line to the output of the connection.
+     */
+    private void queue(String line) {
+      output.add(ByteBuffer.wrap((line + "\n").getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Writes as much of the queued output as the socket accepts.
+     */
+    void write() {
+      if (closed)
+        return;
+      try {
+        while (!output.isEmpty()) {
+          ByteBuffer buffer = output.peek();
+          channel.write(buffer);
+          if (buffer.hasRemaining()) {
+            key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+            return;
+          }
+          output.poll();
+        }
+      } catch (IOException e) {
+        close();
+        return;
+      }
+      key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+      closeIfDone();
+    }
+
+    /**
+     * Stops reading while the connection has too many requests in flight
+     * and resumes once they have been answered.
+     */
+    private void updateInterest() {
+      if (closed || inputClosed)
+        return;
+      if (inFlight >= MAX_PIPELINED)
+        key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+      else
+        key.interestOps(key.interestOps() | SelectionKey.OP_READ);
+    }
+
+    /**
+     * Closes the connection once the client has stopped sending requests
+     * and every response has been written.
+     */
+    private void closeIfDone() {
+      if (inputClosed && inFlight == 0 && output.isEmpty())
+        close();
+    }
+
+    /**
+     * Closes the connection and returns its buffer to the pool.
+     */
+    void close() {
+      if (closed)
+        return;
+      closed = true;
+      connections.decrementAndGet();
+      if (key != null)
+        key.cancel();
+      try {
+        channel.close();
+      } catch (IOException e) {
+        System.out.println("IO error when closing socket. " + e.getMessage());
+      }
+      buffers.release(input);
+      input = null;
+      output.clear();
+      completed.clear();
+    }
+  }
+
+  /**
+   * Processes the received messages and passes them to the boggle server after
+   * they have been processed and turned into boggle instructions. The future
+   * is completed with the response once it is ready.
+   */
+  private CompletableFuture<String> processMessage(String input, Connection connection,
+                                                   String tag) {
+    String[] values = input.split("[|]");
+    try {
+      int commandId = Integer.parseInt(values[0]);
+      switch (commandId) {
+        case BoggleServer.REQUEST_SESSION:
+          if (values.length > 3)
+            return done(boggle.createSession(Integer.parseInt(values[1]), values[2],
+                    Integer.parseInt(values[3])).toString());
+          return done(boggle.createSession(Integer.parseInt(values[1]), values[2]).toString());
+        case BoggleServer.REQUEST_START:
+          return boggle.requestStartAsync(Integer.parseInt(values[1]),
+                  values.length > 2 ? values[2] : null)
+                  .handle((v, e) -> e == null ? "2|Command processed" : "0|" + errorMessage(e));
+        case BoggleServer.SUBMIT_WORD:
+          return boggle.submitWordAsync(Integer.parseInt(values[1]), values[2], values[3])
+                  .handle((r, e) -> e == null ? r.toString() : "0|" + errorMessage(e));
+        case BoggleServer.REQUEST_STATISTICS:
+          return boggle.getStatisticsAsync(Integer.parseInt(values[1]), values[2])
+                  .handle((r, e) -> e == null ? r.toString() : "0|" + errorMessage(e));
+        case BoggleServer.FINALIZE_SESSION:
+          boggle.finalizeSession(Integer.parseInt(values[1]));
+          return done("2|Command processed");
+        case BoggleServer.JOIN_SESSION:
+          return done(boggle.joinSession(Integer.parseInt(values[1]), values[2]).toString());
+        case BoggleServer.REJOIN_SESSION:
+          return done(boggle.rejoinSession(Integer.parseInt(values[1]), values[2],
+                  Long.parseLong(values[3])).toString());
+        case BoggleServer.REQUEST_SESSION_STATISTICS:
+          return boggle.getSessionStatisticsAsync(Integer.parseInt(values[1]), values[2])
+                  .handle((r, e) -> e == null ? r.toString() : "0|" + errorMessage(e));
+        case BoggleServer.SUBSCRIBE_STATISTICS:
+          boggle.subscribeStatistics(Integer.parseInt(values[1]), values[2],
+                  connection.listener(tag));
+          return done("2|Command processed");
+        case BoggleServer.UNSUBSCRIBE_STATISTICS:
+          boggle.unsubscribeStatistics(Integer.parseInt(values[1]), values[2]);
+          return done("2|Command processed");
+        case BoggleServer.REQUEST_LEADERBOARD: {
+          StringBuilder response = new StringBuilder("1");
+          for (PlayerRecord player : boggle.getLeaderboard(Integer.parseInt(values[1]),
+                  Integer.parseInt(values[2])))
+            response.append('|').append(player);
+          return done(response.toString());
+        }
+        case BoggleServer.REQUEST_WINDOW_LEADERBOARD: {
+          StringBuilder response = new StringBuilder("1");
+          for (PlayerRecord player : boggle.getWindowLeaderboard(Integer.parseInt(values[1]),
+                  Integer.parseInt(values[2]), Integer.parseInt(values[3])))
+            response.append('|').append(player);
+          return done(response.toString());
+        }
+        default:
+          return done("0|Command not recognized");
+      }
+    }
+    catch (Exception e) {
+      return done("0|" + e.getMessage());
+    }
+  }
+
+  /**
+   * Returns a future that is already completed with the given response.
+   */
+  private static <T> CompletableFuture<T> done(T response) {
+    return CompletableFuture.completedFuture(response);
+  }
+
+  /**
+   * Returns the message of the exception that failed a future.
+   */
+  private static String errorMessage(Throwable e) {
+    return e instanceof CompletionException && e.getCause() != null
+            ? e.getCause().getMessage() : e.getMessage();
+  }
+
+  /**
+   * Decodes a binary request, passes it to the boggle server and encodes
+   * its response.
+   */
+  private CompletableFuture<ByteBuffer> processFrame(ByteBuffer frame, Connection connection) {
+    int tag = 0;
+    try {
+      tag = BinaryProtocol.getVarint(frame);
+      int commandId = BinaryProtocol.getVarint(frame);
+      switch (commandId) {
+        case BoggleServer.REQUEST_SESSION: {
+          int players = BinaryProtocol.getVarint(frame);
+          String name = BinaryProtocol.getString(frame);
+          int dimension = BinaryProtocol.getVarint(frame);
+          return done(BinaryProtocol.session(tag, boggle.createSession(players, name, dimension)));
+        }
+        case BoggleServer.REQUEST_START: {
+          int id = BinaryProtocol.getVarint(frame);
+          String name = BinaryProtocol.getString(frame);
+          int requestTag = tag;
+          return boggle.requestStartAsync(id, name.isEmpty() ? null : name)
+                  .handle((v, e) -> e == null ? BinaryProtocol.ack(requestTag)
+                          : BinaryProtocol.error(requestTag, errorMessage(e)));
+        }
+        case BoggleServer.SUBMIT_WORD: {
+          int id = BinaryProtocol.getVarint(frame);
+          String name = BinaryProtocol.getString(frame);
+          int word = BinaryProtocol.getVarint(frame);
+          int requestTag = tag;
+          return boggle.submitWordAsync(id, name, word)
+                  .handle((r, e) -> e == null ? BinaryProtocol.response(requestTag, r)
+                          : BinaryProtocol.error(requestTag, errorMessage(e)));
+        }
+        case BoggleServer.REQUEST_STATISTICS: {
+          int id = BinaryProtocol.getVarint(frame);
+          int requestTag = tag;
+          return boggle.getStatisticsAsync(id, BinaryProtocol.getString(frame))
+                  .handle((r, e) -> e == null ? BinaryProtocol.response(requestTag, r)
+                          : BinaryProtocol.error(requestTag, errorMessage(e)));
+        }
+        case BoggleServer.FINALIZE_SESSION:
+          boggle.finalizeSession(BinaryProtocol.getVarint(frame));
+          return done(BinaryProtocol.ack(tag));
+        case BoggleServer.JOIN_SESSION: {
+          int id = BinaryProtocol.getVarint(frame);
+          return done(BinaryProtocol.session(tag,
+                  boggle.joinSession(id, BinaryProtocol.getString(frame))));
+        }
+        case BoggleServer.REJOIN_SESSION: {
+          int id = BinaryProtocol.getVarint(frame);
+          String name = BinaryProtocol.getString(frame);
+          return done(BinaryProtocol.session(tag, boggle.rejoinSession(id, name, frame.getLong())));
+        }
+        case BoggleServer.REQUEST_SESSION_STATISTICS: {
+          int id = BinaryProtocol.getVarint(frame);
+          int requestTag = tag;
+          return boggle.getSessionStatisticsAsync(id, BinaryProtocol.getString(frame))
+                  .handle((r, e) -> e == null ? BinaryProtocol.response(requestTag, r)
+                          : BinaryProtocol.error(requestTag, errorMessage(e)));
+        }
+        case BoggleServer.SUBSCRIBE_STATISTICS: {
+          int id = BinaryProtocol.getVarint(frame);
+          boggle.subscribeStatistics(id, BinaryProtocol.getString(frame),
+                  connection.listener(tag));
+          return done(BinaryProtocol.ack(tag));
+        }
+        case BoggleServer.UNSUBSCRIBE_STATISTICS: {
+          int id = BinaryProtocol.getVarint(frame);
+          boggle.unsubscribeStatistics(id, BinaryProtocol.getString(frame));
+          return done(BinaryProtocol.ack(tag));
+        }
+        case BoggleServer.REQUEST_LEADERBOARD: {
+          int offset = BinaryProtocol.getVarint(frame);
+          int count = BinaryProtocol.getVarint(frame);
+          return done(BinaryProtocol.leaderboard(tag, boggle.getLeaderboard(offset, count)));
+        }
+        case BoggleServer.REQUEST_WINDOW_LEADERBOARD: {
+          int window = BinaryProtocol.getVarint(frame);
+          int offset = BinaryProtocol.getVarint(frame);
+          int count = BinaryProtocol.getVarint(frame);
+          return done(BinaryProtocol.leaderboard(tag,
+                  boggle.getWindowLeaderboard(window, offset, count)));
+        }
+        default:
+          return done(BinaryProtocol.error(tag, "Command not recognized"));
+      }
+    }
+    catch (Exception e) {
+      return done(BinaryProtocol.error(tag, e.getMessage()));
+    }
+  }
+
+  /**
+   * BufferPool class.
+   * Keeps the direct buffers of closed connections so they can be reused
+   * by new connections.
+   */
+  static class BufferPool {
+    private final Queue<ByteBuffer> free;
+    private final int size;
+
+    /**
+     * Creates a pool of buffers of the given size.
+     */
+    BufferPool(int size) {
+      this.free = new ConcurrentLinkedQueue<>();
+      this.size = size;
+    }
+
+    /**
+     * Takes a buffer from the pool or allocates a new one.
+     */
+    ByteBuffer acquire() {
+      ByteBuffer buffer = free.poll();
+      return buffer != null ? buffer : ByteBuffer.allocateDirect(size);
+    }
+
+    /**
+     * Returns a buffer to the pool.
+     */
+    void release(ByteBuffer buffer) {
+      if (buffer != null) {
+        buffer.clear();
+        free.add(buffer);
+      }
+    }
+  }
+}
@@ -7,6 +7,9 @@ import java.util.*;
  * This class stores the information of a boggle session.
  * This objects are serializable because they are sent to the clients
  * in order to allow some aspects of the game to be more efficient.
+ * Only the list of words of the solution is serialized, the hash index
+ * used to validate words is rebuilt by the client the first time it is
+ * needed.
  *
  * This class is thread safe.
  *
@@ -17,24 +20,47 @@ public class Session implements java.io.Serializable {
 
   private final int Id;
   private final String board;
+  private final int boardDimension;
   private final List<String> solution;
+  private transient volatile Set<String> index;
   final Map<String, Player> players;
   final int minPlayers;
+  private final long rejoinToken;
   private int roundCounter;
 
   /**
    * Creates a nuew session with the given board, solution and players.
    */
-  public Session(int Id, String board, List<String> solution,
+  public Session(int Id, String board, int boardDimension, List<String> solution,
                  Map<String, Player> players, int numPlayers) {
+    this(Id, board, boardDimension, solution, players, numPlayers, 0);
+  }
+
+  /**
+   * Creates a session as it is received by the player that created, joined
+   * or rejoined it, with the token that lets the player rejoin it.
+   */
+  public Session(int Id, String board, int boardDimension, List<String> solution,
+                 Map<String, Player> players, int numPlayers, long rejoinToken) {
     this.Id = Id;
     this.board = board;
-    this.solution = Collections.unmodifiableList(solution);
+    this.boardDimension = boardDimension;
+    this.solution = Collections.unmodifiableList(
+            solution instanceof RandomAccess ? solution : new ArrayList<>(solution));
     this.minPlayers = numPlayers;
     this.players = players;
+    this.rejoinToken = rejoinToken;
     this.roundCounter = 0;
   }
 
+  /**
+   * Returns the token that lets the player that received the session
+   * rejoin it after a restart of the server, or 0 if there is none.
+   */
+  public long getRejoinToken() {
+    return rejoinToken;
+  }
+
   /**
    * Returns the game board.
    */
@@ -42,11 +68,23 @@ public class Session implements java.io.Serializable {
     return board;
   }
 
+  /**
+   * Returns the number of cells in each side of the game board.
+   */
+  public int getBoardDimension() {
+    return boardDimension;
+  }
+
   /**
    * Verifies if a word is contained in the game solution.
    */
   public boolean isValidWord(String word) {
-    return solution.contains(word);
+    Set<String> words = index;
+    if (words == null) {
+      words = new HashSet<>(solution);
+      index = words;
+    }
+    return words.contains(word);
   }
 
   /**
@@ -0,0 +1,102 @@
+package parallelBoggle;
+
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+/**
+ * SessionActor class.
+ * Mailbox that runs the operations of a session one at a time and in the
+ * order they were received, so the submissions, statistics reads, joins and
+ * rounds of a session never run at the same time.
+ *
+ * The actor does not make the session single threaded. The subscriptions,
+ * the publication of the statistics, the finalization, the idle expiry, the
+ * checkpoints and the aggregation of the finalized sessions still use the
+ * session from their own threads, so the session keeps its locks and those
+ * paths can contend with the actor for them.
+ *
+ * The actor does not own a thread. When a message arrives at an idle actor
+ * a drain task is submitted to the runner, which is the actor executor of
+ * the shard of the session, so the sessions are spread over the shards. A
+ * drain handles at most BATCH messages before it submits itself again, so
+ * a busy session does not starve the rest of the sessions of its shard.
+ *
+ * The operations must not block, they run in the thread of the runner.
+ *
+ * This class is thread safe.
+ */
+public class SessionActor implements Executor {
+  private static final int BATCH = 64;
+
+  private final Executor runner;
+  private final Queue<Runnable> mailbox;
+  private final AtomicBoolean scheduled;
+
+  /**
+   * Creates an actor whose messages are handled by the given runner.
+   */
+  public SessionActor(Executor runner) {
+    this.runner = runner;
+    this.mailbox = new ConcurrentLinkedQueue<>();
+    this.scheduled = new AtomicBoolean();
+  }
+
+  /**
+   * Queues a message in the mailbox.
+   */
+  @Override
+  public void execute(Runnable message) {
+    mailbox.add(message);
+    schedule();
+  }
+
+  /**
+   * Queues an operation and returns a future that is completed with its
+   * result, or with its exception, once the actor has handled it.
+   */
+  public <T> CompletableFuture<T> call(Supplier<T> operation) {
+    CompletableFuture<T> result = new CompletableFuture<>();
+    execute(() -> {
+      try {
+        result.complete(operation.get());
+      } catch (Throwable e) {
+        result.completeExceptionally(e);
+      }
+    });
+    return result;
+  }
+
+  /**
+   * Submits a drain to the runner unless one is already pending.
+   */
+  private void schedule() {
+    if (!mailbox.isEmpty() && scheduled.compareAndSet(false, true))
+      runner.execute(this::drain);
+  }
+
+  /**
+   * Handles the messages of the mailbox. The drain is released even if a
+   * message throws an error, so the actor never stops handling messages.
+   */
+  private void drain() {
+    try {
+      for (int i = 0; i < BATCH; i++) {
+        Runnable message = mailbox.poll();
+        if (message == null)
+          break;
+        try {
+          message.run();
+        } catch (RuntimeException e) {
+          e.printStackTrace();
+        }
+      }
+    } finally {
+      scheduled.set(false);
+      schedule();
+    }
+  }
+}
@@ -0,0 +1,403 @@
+package parallelBoggle;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * SessionCheckpointer class.
+ * Saves the active sessions to disk every boggle.checkpoint.interval
+ * seconds, so the games in progress survive a restart of the server and
+ * their players can rejoin them by id with their rejoin tokens.
+ *
+ * The checkpoints are incremental: a session is only copied when its
+ * version changed since it was last copied, and its copy is appended to a
+ * RecordsLog, like the changes of the records. The sessions that were
+ * removed from the server are appended as removals. From time to time the
+ * latest copy of every session is written as a snapshot that compacts the
+ * log.
+ *
+ * The sessions are copied without taking their locks, so the submissions
+ * are never stopped. If the version of a session changes while it is being
+ * copied the copy is taken again, and a submission that was still in
+ * progress when the copy was taken is saved by the next checkpoint.
+ *
+ * A session is stored in a compact binary form: its id, its board, its
+ * age, the checksum of the dictionary, the dictionary ids of its solution
+ * as deltas, the submission count of every word of the solution and the
+ * statistics and rejoin tokens of its players, with the numbers encoded as varints like the
+ * binary protocol. The sessions saved with a different dictionary are not
+ * restored, and the restored sessions keep their age, so they are evicted
+ * by boggle.session.ttl as if the server had not been restarted.
+ *
+ * This class is thread safe.
+ */
+public class SessionCheckpointer {
+  public static final String PATH = System.getProperty("boggle.checkpoint.path", "server.sessions");
+  public static final long INTERVAL = Long.getLong("boggle.checkpoint.interval", 5) * 1000;
+
+  private static final int SESSION_EVENT = 1;
+  private static final int REMOVE_EVENT = 2;
+  private static final int COPY_ATTEMPTS = 3;
+
+  private final WordDictionary dictionary;
+  private final int dictionaryChecksum;
+  private final Map<Integer, Copy> copies;
+  private final ReentrantLock lock;
+  private final AtomicLong checkpoints;
+  private final AtomicLong copied;
+  private final AtomicLong lastDuration;
+  private RecordsLog log;
+  private int eventsSinceSnapshot;
+
+  /**
+   * Creates a checkpointer for the sessions of the given dictionary.
+   */
+  public SessionCheckpointer(WordDictionary dictionary) {
+    this.dictionary = dictionary;
+    this.dictionaryChecksum = dictionary.checksum();
+    this.copies = new HashMap<>();
+    this.lock = new ReentrantLock();
+    this.checkpoints = new AtomicLong();
+    this.copied = new AtomicLong();
+    this.lastDuration = new AtomicLong();
+  }
+
+  /**
+   * Reads the sessions saved in the log stored next to the given path and
+   * opens the log for the next checkpoints. The sessions that cannot be
+   * restored, for example because the dictionary changed, are skipped.
+   */
+  public List<LocalSession> restore(String path) {
+    Map<Integer, ByteBuffer> saved = new HashMap<>();
+    RecordsLog restoring = new RecordsLog(path, Records.SYNC);
+    try {
+      restoring.restore(state -> {
+        int count = BinaryProtocol.getVarint(state);
+        for (int i = 0; i < count; i++) {
+          int length = BinaryProtocol.getVarint(state);
+          ByteBuffer copy = ByteBuffer.allocate(length);
+          state.get(copy.array());
+          saved.put(BinaryProtocol.getVarint(copy.duplicate()), copy);
+        }
+      }, event -> {
+        int type = event.get();
+        if (type == SESSION_EVENT) {
+          ByteBuffer copy = ByteBuffer.allocate(event.remaining());
+          event.get(copy.array());
+          saved.put(BinaryProtocol.getVarint(copy.duplicate()), copy);
+        }
+        else if (type == REMOVE_EVENT)
+          saved.remove(BinaryProtocol.getVarint(event));
+        eventsSinceSnapshot++;
+      });
+    } catch (IOException | RuntimeException e) {
+      System.out.println("The sessions could not be restored, they will not be saved. "
+              + e.getMessage());
+      return new ArrayList<>();
+    }
+    List<LocalSession> sessions = new ArrayList<>();
+    lock.lock();
+    try {
+      log = restoring;
+      for (ByteBuffer copy : saved.values()) {
+        try {
+          LocalSession session = read(copy.duplicate());
+          sessions.add(session);
+          copies.put(session.getId(), new Copy(session.getVersion(), copy));
+        } catch (RuntimeException e) {
+          System.out.println("A saved session could not be restored. " + e.getMessage());
+        }
+      }
+      if (copies.size() < saved.size())
+        snapshot();
+    } finally {
+      lock.unlock();
+    }
+    return sessions;
+  }
+
+  /**
+   * Starts the thread that saves the sessions of the registry periodically.
+   */
+  public void start(SessionRegistry sessions) {
+    Thread checkpointer = new Thread(() -> {
+      while (true) {
+        try {
+          Thread.sleep(INTERVAL);
+        } catch (InterruptedException e) {
+          return;
+        }
+        try {
+          checkpoint(sessions);
+        } catch (RuntimeException e) {
+          e.printStackTrace();
+        }
+      }
+    }, "session-checkpoint");
+    checkpointer.setDaemon(true);
+    checkpointer.start();
+  }
+
+  /**
+   * Copies the sessions that changed since the last checkpoint and records
+   * the sessions that were removed.
+   */
+  public void checkpoint(SessionRegistry sessions) {
+    lock.lock();
+    try {
+      if (log == null)
+        return;
+      long start = System.nanoTime();
+      Set<Integer> active = new HashSet<>();
+      for (SessionRegistry.Entry entry : sessions.getEntries()) {
+        LocalSession session = entry.getSession();
+        active.add(session.getId());
+        Copy previous = copies.get(session.getId());
+        if (previous != null && previous.version == session.getVersion())
+          continue;
+        Copy copy = copy(session);
+        copies.put(session.getId(), copy);
+        ByteBuffer event = ByteBuffer.allocate(1 + copy.data.remaining());
+        event.put((byte) SESSION_EVENT).put(copy.data.duplicate()).flip();
+        append(event);
+        copied.incrementAndGet();
+      }
+      Iterator<Integer> ids = copies.keySet().iterator();
+      while (ids.hasNext()) {
+        int id = ids.next();
+        if (active.contains(id))
+          continue;
+        ids.remove();
+        ByteBuffer event = ByteBuffer.allocate(1 + BinaryProtocol.MAX_VARINT_SIZE);
+        event.put((byte) REMOVE_EVENT);
+        BinaryProtocol.putVarint(event, id);
+        event.flip();
+        append(event);
+      }
+      checkpoints.incrementAndGet();
+      lastDuration.set(System.nanoTime() - start);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Takes a last checkpoint and waits, at most the given number of
+   * milliseconds, until it has been written. Used when the server stops.
+   */
+  public void close(SessionRegistry sessions, long timeout) {
+    checkpoint(sessions);
+    RecordsLog current;
+    lock.lock();
+    try {
+      current = log;
+    } finally {
+      lock.unlock();
+    }
+    try {
+      if (current != null && !current.flush(timeout))
+        System.out.println("The last checkpoint of the sessions was not written.");
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Appends an event to the log and queues a snapshot once the log holds
+   * more events than there are sessions to copy. Called while holding the
+   * lock.
+   */
+  private void append(ByteBuffer event) {
+    log.append(event);
+    if (++eventsSinceSnapshot >= Math.max(Records.SNAPSHOT_EVENTS, 2 * copies.size())
+            || log.needsSnapshot())
+      snapshot();
+  }
+
+  /**
+   * Queues a snapshot with the latest copy of every session. Called while
+   * holding the lock.
+   */
+  private void snapshot() {
+    int size = BinaryProtocol.MAX_VARINT_SIZE;
+    for (Copy copy : copies.values())
+      size += BinaryProtocol.MAX_VARINT_SIZE + copy.data.remaining();
+    ByteBuffer state = ByteBuffer.allocate(size);
+    BinaryProtocol.putVarint(state, copies.size());
+    for (Copy copy : copies.values()) {
+      BinaryProtocol.putVarint(state, copy.data.remaining());
+      state.put(copy.data.duplicate());
+    }
+    state.flip();
+    if (log.snapshot(state))
+      eventsSinceSnapshot = 0;
+  }
+
+  /**
+   * Copies a session. The copy is taken again if the session changed while
+   * it was being copied, at most COPY_ATTEMPTS times.
+   */
+  private Copy copy(LocalSession session) {
+    long version = session.getVersion();
+    ByteBuffer data = write(session);
+    for (int i = 1; i < COPY_ATTEMPTS && session.getVersion() != version; i++) {
+      version = session.getVersion();
+      data = write(session);
+    }
+    return new Copy(version, data);
+  }
+
+  /**
+   * Encodes a session.
+   */
+  private ByteBuffer write(LocalSession session) {
+    WordList words = session.getWords();
+    List<Player> players = session.getParticipants();
+    int dimension = session.getBoardDimension();
+    int size = 8 * BinaryProtocol.MAX_VARINT_SIZE + Long.BYTES + dimension * dimension
+            + 2 * BinaryProtocol.MAX_VARINT_SIZE * words.size();
+    for (Player player : players)
+      size += 4 * BinaryProtocol.MAX_VARINT_SIZE + Long.BYTES
+              + BinaryProtocol.stringSize(player.getUsername())
+              + BinaryProtocol.stringSize(player.getBestWord());
+    ByteBuffer out = ByteBuffer.allocate(size);
+    BinaryProtocol.putVarint(out, session.getId());
+    BinaryProtocol.putVarint(out, dimension);
+    String board = session.getBoard();
+    for (int i = 0; i < board.length(); i++) {
+      char c = board.charAt(i);
+      if (c != ' ' && c != ',')
+        out.put((byte) c);
+    }
+    BinaryProtocol.putVarint(out, session.getMinPlayers());
+    BinaryProtocol.putVarint(out, session.getRoundsStarted());
+    out.putLong(System.nanoTime() - session.getCreated());
+    BinaryProtocol.putVarint(out, dictionaryChecksum);
+    BinaryProtocol.putVarint(out, words.size());
+    int previous = 0;
+    for (int i = 0; i < words.size(); i++) {
+      BinaryProtocol.putSigned(out, words.getId(i) - previous);
+      previous = words.getId(i);
+    }
+    for (int i = 0; i < words.size(); i++)
+      BinaryProtocol.putVarint(out, session.getSubmissions(i));
+    BinaryProtocol.putVarint(out, players.size());
+    for (Player player : players) {
+      BinaryProtocol.putString(out, player.getUsername());
+      BinaryProtocol.putSigned(out, player.getScore());
+      BinaryProtocol.putString(out, player.getBestWord());
+      BinaryProtocol.putSigned(out, player.getBestWordScore());
+      BinaryProtocol.putVarint(out, player.getNewWords());
+      BinaryProtocol.putVarint(out, player.getRepeatedWords());
+      out.putLong(session.getToken(player.getUsername()));
+    }
+    return ByteBuffer.wrap(Arrays.copyOf(out.array(), out.position()));
+  }
+
+  /**
+   * Decodes a session.
+   */
+  private LocalSession read(ByteBuffer in) {
+    int id = BinaryProtocol.getVarint(in);
+    int dimension = BinaryProtocol.getVarint(in);
+    if (dimension < BoggleServer.MIN_BOARD_DIMENSION || dimension > BoggleServer.MAX_BOARD_DIMENSION)
+      throw new BoggleException("Invalid board dimension " + dimension + ".");
+    StringBuilder board = new StringBuilder(dimension * dimension * 2);
+    for (int row = 0; row < dimension; row++) {
+      for (int column = 0; column < dimension; column++) {
+        board.append((char) in.get());
+        board.append(column == dimension - 1 ? ',' : ' ');
+      }
+    }
+    int numPlayers = BinaryProtocol.getVarint(in);
+    int rounds = BinaryProtocol.getVarint(in);
+    long age = in.getLong();
+    if (BinaryProtocol.getVarint(in) != dictionaryChecksum)
+      throw new BoggleException("The dictionary of the session " + id + " changed.");
+    int[] solution = new int[BinaryProtocol.getVarint(in)];
+    int previous = 0;
+    for (int i = 0; i < solution.length; i++) {
+      solution[i] = previous + BinaryProtocol.getSigned(in);
+      previous = solution[i];
+    }
+    int[] submissions = new int[solution.length];
+    for (int i = 0; i < submissions.length; i++)
+      submissions[i] = BinaryProtocol.getVarint(in);
+    Map<String, Player> players = new ConcurrentHashMap<>();
+    Map<String, Long> tokens = new HashMap<>();
+    int count = BinaryProtocol.getVarint(in);
+    for (int i = 0; i < count; i++) {
+      String username = BinaryProtocol.getString(in);
+      int score = BinaryProtocol.getSigned(in);
+      String bestWord = BinaryProtocol.getString(in);
+      int bestWordScore = BinaryProtocol.getSigned(in);
+      int newWords = BinaryProtocol.getVarint(in);
+      players.put(username, new Player(username, score, bestWord, bestWordScore, newWords,
+              BinaryProtocol.getVarint(in)));
+      tokens.put(username, in.getLong());
+    }
+    LocalSession session = new LocalSession(id, board.toString(), dimension, solution,
+            dictionary, players, numPlayers);
+    session.restore(submissions, rounds, age, tokens);
+    return session;
+  }
+
+  /**
+   * Returns the number of sessions that have a saved copy.
+   */
+  public int getSaved() {
+    lock.lock();
+    try {
+      return copies.size();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Returns the number of checkpoints that were taken.
+   */
+  public long getCheckpoints() {
+    return checkpoints.get();
+  }
+
+  /**
+   * Returns the number of session copies that were written.
+   */
+  public long getCopied() {
+    return copied.get();
+  }
+
+  /**
+   * Returns the number of milliseconds the last checkpoint took.
+   */
+  public long getLastDuration() {
+    return TimeUnit.NANOSECONDS.toMillis(lastDuration.get());
+  }
+
+  /**
+   * Copy class.
+   * The encoded copy of a session and the version it was copied at.
+   */
+  private static final class Copy {
+    private final long version;
+    private final ByteBuffer data;
+
+    Copy(long version, ByteBuffer data) {
+      this.version = version;
+      this.data = data;
+    }
+  }
+}
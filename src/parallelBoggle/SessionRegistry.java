@@ -0,0 +1,231 @@
+package parallelBoggle;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntFunction;
+
+/**
+ * SessionRegistry class.
+ * Keeps the active sessions of the server split in shards, so creating and
+ * looking up sessions from many threads does not contend on a single map
+ * or a single id counter.
+ *
+ * Every shard owns the ids whose lowest bits are the index of the shard, so
+ * a shard allocates ids with its own counter and the shard of a session is
+ * found from its id without any lookup. A new session is placed in a shard
+ * chosen at random, so the sessions are spread evenly over the shards
+ * whatever threads create them. A shard that has used all of its ids is
+ * skipped, and creating a session fails once every shard has. The session and its round
+ * coordinator are kept together in one entry, and every shard has a single
+ * thread executor that only runs the actors of its sessions. Nothing that
+ * can block, like the publication of the statistics, runs in it.
+ *
+ * This class is thread safe.
+ */
+public class SessionRegistry {
+  private final Shard[] shards;
+  private final int bits;
+  private final int mask;
+  private final int maxSequence;
+
+  /**
+   * Creates a registry with the given number of shards, rounded up to a
+   * power of two.
+   */
+  public SessionRegistry(int shardCount) {
+    int count = shardCount <= 1 ? 1 : Integer.highestOneBit(shardCount - 1) << 1;
+    this.bits = Integer.numberOfTrailingZeros(count);
+    this.mask = count - 1;
+    this.maxSequence = Integer.MAX_VALUE >>> bits;
+    this.shards = new Shard[count];
+    for (int i = 0; i < count; i++)
+      shards[i] = new Shard(i);
+  }
+
+  /**
+   * Creates the entry of a new session in a random shard. The factory
+   * receives the id allocated for the session.
+   */
+  public Entry add(IntFunction<LocalSession> factory, RoundCoordinator coordinator) {
+    int first = ThreadLocalRandom.current().nextInt(shards.length);
+    for (int i = 0; i < shards.length; i++) {
+      Shard shard = shards[(first + i) & mask];
+      int sequence = shard.counter.updateAndGet(n -> n > maxSequence ? n : n + 1);
+      if (sequence > maxSequence)
+        continue;
+      int id = (sequence << bits) | shard.index;
+      Entry entry = new Entry(factory.apply(id), coordinator, shard);
+      shard.sessions.put(id, entry);
+      shard.created.incrementAndGet();
+      return entry;
+    }
+    throw new BoggleException("No more sessions can be created, every session id is in use.");
+  }
+
+  /**
+   * Adds the entry of a session restored from a checkpoint, which keeps its
+   * id. The counter of the shard of the id is moved past it, so the new
+   * sessions of the shard do not reuse it.
+   */
+  public Entry restore(LocalSession session, RoundCoordinator coordinator) {
+    int id = session.getId();
+    Shard shard = shards[id & mask];
+    shard.counter.accumulateAndGet(id >>> bits, Math::max);
+    Entry entry = new Entry(session, coordinator, shard);
+    if (shard.sessions.putIfAbsent(id, entry) != null)
+      throw new BoggleException("The session " + id + " is already active.");
+    shard.created.incrementAndGet();
+    return entry;
+  }
+
+  /**
+   * Returns the entry of the session with the given id, or null if the
+   * session is not active.
+   */
+  public Entry get(int id) {
+    if (id <= 0)
+      return null;
+    return shards[id & mask].sessions.get(id);
+  }
+
+  /**
+   * Removes an entry. Returns false if it was already removed.
+   */
+  public boolean remove(Entry entry) {
+    Shard shard = entry.shard;
+    if (!shard.sessions.remove(entry.session.getId(), entry))
+      return false;
+    shard.removed.incrementAndGet();
+    return true;
+  }
+
+  /**
+   * Returns the entries of every active session.
+   */
+  public List<Entry> getEntries() {
+    List<Entry> entries = new ArrayList<>();
+    for (Shard shard : shards)
+      entries.addAll(shard.sessions.values());
+    return entries;
+  }
+
+  /**
+   * Returns the shards of the registry.
+   */
+  public List<Shard> getShards() {
+    return Collections.unmodifiableList(Arrays.asList(shards));
+  }
+
+  /**
+   * Entry class.
+   * An active session together with its round coordinator, its actor and
+   * the shard that holds it.
+   */
+  public static final class Entry {
+    private final LocalSession session;
+    private final RoundCoordinator coordinator;
+    private final SessionActor actor;
+    private final Shard shard;
+
+    private Entry(LocalSession session, RoundCoordinator coordinator, Shard shard) {
+      this.session = session;
+      this.coordinator = coordinator;
+      this.actor = new SessionActor(shard.actors);
+      this.shard = shard;
+    }
+
+    /**
+     * Returns the session.
+     */
+    public LocalSession getSession() {
+      return session;
+    }
+
+    /**
+     * Returns the round coordinator of the session.
+     */
+    public RoundCoordinator getCoordinator() {
+      return coordinator;
+    }
+
+    /**
+     * Returns the actor that runs the operations of the session when the
+     * server uses actors.
+     */
+    public SessionActor getActor() {
+      return actor;
+    }
+
+  }
+
+  /**
+   * Shard class.
+   * The sessions of one range of ids, with their counters and the executor
+   * of their actors.
+   */
+  public static final class Shard {
+    private final int index;
+    private final Map<Integer, Entry> sessions;
+    private final AtomicInteger counter;
+    private final AtomicLong created;
+    private final AtomicLong removed;
+    private final ThreadPoolExecutor actors;
+
+    private Shard(int index) {
+      this.index = index;
+      this.sessions = new ConcurrentHashMap<>();
+      this.counter = new AtomicInteger();
+      this.created = new AtomicLong();
+      this.removed = new AtomicLong();
+      this.actors = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+              new LinkedBlockingQueue<>(),
+              ServerSocketHandler.daemonThreads("session-actors-" + index + "-"));
+    }
+
+    /**
+     * Returns the index of the shard, which is the lowest bits of its ids.
+     */
+    public int getIndex() {
+      return index;
+    }
+
+    /**
+     * Returns the number of active sessions of the shard.
+     */
+    public int size() {
+      return sessions.size();
+    }
+
+    /**
+     * Returns the number of sessions created in the shard.
+     */
+    public long getCreated() {
+      return created.get();
+    }
+
+    /**
+     * Returns the number of sessions removed from the shard.
+     */
+    public long getRemoved() {
+      return removed.get();
+    }
+
+    /**
+     * Returns the number of actor drains waiting for the executor of the
+     * shard.
+     */
+    public int getQueued() {
+      return actors.getQueue().size();
+    }
+  }
+}
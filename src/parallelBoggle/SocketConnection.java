@@ -0,0 +1,206 @@
+package parallelBoggle;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * SocketConnection class.
+ * Persistent connection used by socket clients to send text commands to the
+ * game server. Every command is tagged, so several commands can be sent
+ * without waiting for their responses and a reader thread completes the
+ * future of each command when the response with its tag arrives.
+ *
+ * Lines pushed by the server start with "!" and the tag of the command that
+ * subscribed to them, and are passed to the consumer of that subscription.
+ *
+ * The connection is opened again when it is lost, and the commands that were
+ * waiting for a response are completed exceptionally. Subscriptions do not
+ * survive a lost connection. The commands and subscriptions are kept per
+ * socket, so the reader of a lost socket only fails the commands that were
+ * sent through it and never those of the socket that replaced it.
+ *
+ * This class is thread safe.
+ */
+public class SocketConnection {
+  private final String host;
+  private final int port;
+  private final AtomicInteger nextTag;
+  private Link link;
+
+  /**
+   * Opens a connection to the server in the given host and port.
+   */
+  public SocketConnection(String host, int port) throws IOException {
+    this.host = host;
+    this.port = port;
+    this.nextTag = new AtomicInteger();
+    connect();
+  }
+
+  /**
+   * Opens the socket and starts the thread that reads the responses.
+   */
+  private synchronized void connect() throws IOException {
+    Socket s = new Socket(host, port);
+    s.setTcpNoDelay(true);
+    s.setKeepAlive(true);
+    Link l = new Link(s);
+    link = l;
+    Thread reader = new Thread(() -> readResponses(l), "socket-connection-reader");
+    reader.setDaemon(true);
+    reader.start();
+  }
+
+  /**
+   * Sends a command and returns a future that is completed with the
+   * response of the server.
+   */
+  public CompletableFuture<String> send(String command) {
+    return send("#" + nextTag.incrementAndGet(), command, null);
+  }
+
+  /**
+   * Sends a subscription command. The lines that the server pushes for the
+   * subscription are passed to the given consumer by the reader thread.
+   */
+  public CompletableFuture<String> subscribe(String command, Consumer<String> consumer) {
+    return send("#" + nextTag.incrementAndGet(), command, consumer);
+  }
+
+  /**
+   * Sends a command with the given tag. The future, and the consumer of a
+   * subscription, are registered in the socket the command is written to,
+   * once it has been opened again if it was lost.
+   */
+  private CompletableFuture<String> send(String tag, String command,
+                                         Consumer<String> consumer) {
+    CompletableFuture<String> response = new CompletableFuture<>();
+    Link l = null;
+    try {
+      synchronized (this) {
+        if (link.socket.isClosed())
+          connect();
+        l = link;
+        l.pending.put(tag, response);
+        if (consumer != null)
+          l.subscriptions.put(tag, consumer);
+        l.out.write(tag);
+        l.out.write("|");
+        l.out.write(command);
+        l.out.write("\n");
+        l.out.flush();
+      }
+    } catch (IOException e) {
+      if (l != null) {
+        l.pending.remove(tag);
+        l.subscriptions.remove(tag);
+      }
+      response.completeExceptionally(e);
+      return response;
+    }
+    if (consumer != null) {
+      Link subscribed = l;
+      response.whenComplete((line, error) -> {
+        if (error != null || line.startsWith("0|"))
+          subscribed.subscriptions.remove(tag);
+      });
+    }
+    return response;
+  }
+
+  /**
+   * Sends a command and waits for the response of the server.
+   */
+  public String request(String command) throws IOException {
+    try {
+      return send(command).join();
+    } catch (CompletionException e) {
+      if (e.getCause() instanceof IOException)
+        throw (IOException) e.getCause();
+      throw e;
+    }
+  }
+
+  /**
+   * Reads the responses of a socket until it is closed and completes the
+   * futures of the commands that were sent through it.
+   */
+  private void readResponses(Link l) {
+    try (BufferedReader in = new BufferedReader(
+            new InputStreamReader(l.socket.getInputStream(), StandardCharsets.UTF_8))) {
+      String line;
+      while ((line = in.readLine()) != null) {
+        int separator = line.indexOf('|');
+        if (separator < 0)
+          continue;
+        if (line.charAt(0) == '!') {
+          Consumer<String> consumer = l.subscriptions.get(line.substring(1, separator));
+          if (consumer != null)
+            consumer.accept(line.substring(separator + 1));
+          continue;
+        }
+        CompletableFuture<String> response = l.pending.remove(line.substring(0, separator));
+        if (response != null)
+          response.complete(line.substring(separator + 1));
+      }
+    } catch (IOException e) {
+      System.out.println("Connection lost. " + e.getMessage());
+    }
+    synchronized (this) {
+      try {
+        l.socket.close();
+      } catch (IOException e) {
+        System.out.println("IO error when closing socket. " + e.getMessage());
+      }
+    }
+    IOException lost = new IOException("The connection to the server was lost.");
+    for (CompletableFuture<String> response : l.pending.values())
+      response.completeExceptionally(lost);
+    l.pending.clear();
+    l.subscriptions.clear();
+  }
+
+  /**
+   * Verifies if the socket was closed. It is opened again by the next
+   * command.
+   */
+  public synchronized boolean isClosed() {
+    return link.socket.isClosed();
+  }
+
+  /**
+   * Closes the connection.
+   */
+  public synchronized void close() throws IOException {
+    link.socket.close();
+  }
+
+  /**
+   * Socket of the connection, with the commands waiting for a response and
+   * the subscriptions that were sent through it.
+   */
+  private static final class Link {
+    private final Socket socket;
+    private final Writer out;
+    private final Map<String, CompletableFuture<String>> pending;
+    private final Map<String, Consumer<String>> subscriptions;
+
+    private Link(Socket socket) throws IOException {
+      this.socket = socket;
+      this.out = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8);
+      this.pending = new ConcurrentHashMap<>();
+      this.subscriptions = new ConcurrentHashMap<>();
+    }
+  }
+}
@@ -0,0 +1,21 @@
+package parallelBoggle;
+
+import java.rmi.Remote;
+import java.rmi.RemoteException;
+
+/**
+ * StatisticsListener interface.
+ * Receives the statistics of a player every time they change, after the
+ * player subscribes to them with BoggleServerInterface.subscribeStatistics.
+ * RMI clients export an implementation of this interface so the server
+ * can call it back.
+ *
+ * Created by ecarpio
+ */
+public interface StatisticsListener extends Remote {
+  /**
+   * Receives the new statistics of the player. The latest points of the
+   * response are always zero because it is not the result of a submission.
+   */
+  void statisticsChanged(BoggleResponse response) throws RemoteException;
+}
@@ -0,0 +1,201 @@
+package parallelBoggle;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * TimingWheel class.
+ * Runs tasks after a delay with a hashed timing wheel, so the deadlines of
+ * every session of the server are kept by a single thread and scheduling
+ * or cancelling a task takes constant time no matter how many tasks are
+ * pending.
+ *
+ * The wheel is an array of buckets that a thread visits one per tick. A
+ * task is placed in the bucket of the tick of its deadline together with
+ * the number of turns of the wheel that are left before it expires. New
+ * and cancelled tasks are passed to the thread through queues, so the
+ * buckets are only touched by the thread of the wheel. The tasks are run by
+ * that thread and must be short, they are late by at most one tick.
+ *
+ * This class is thread safe.
+ */
+public class TimingWheel {
+  private static final int PENDING = 0;
+  private static final int CANCELLED = 1;
+  private static final int EXPIRED = 2;
+
+  private final long tickNanos;
+  private final Bucket[] buckets;
+  private final int mask;
+  private final Queue<Timeout> additions;
+  private final Queue<Timeout> cancellations;
+  private final AtomicInteger pending;
+  private final long startTime;
+  private long tick;
+
+  /**
+   * Creates a wheel with the given tick duration and number of buckets
+   * (rounded up to a power of two) and starts its thread.
+   */
+  public TimingWheel(long tickDuration, TimeUnit unit, int size, String name) {
+    this.tickNanos = Math.max(1, unit.toNanos(tickDuration));
+    int capacity = Integer.highestOneBit(Math.max(1, size - 1)) << 1;
+    this.buckets = new Bucket[capacity];
+    for (int i = 0; i < capacity; i++)
+      buckets[i] = new Bucket();
+    this.mask = capacity - 1;
+    this.additions = new ConcurrentLinkedQueue<>();
+    this.cancellations = new ConcurrentLinkedQueue<>();
+    this.pending = new AtomicInteger();
+    this.startTime = System.nanoTime();
+    Thread thread = new Thread(this::run, name);
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  /**
+   * Schedules a task to be run after the given delay.
+   */
+  public Timeout schedule(Runnable task, long delay, TimeUnit unit) {
+    Timeout timeout = new Timeout(task, System.nanoTime() - startTime + unit.toNanos(delay));
+    pending.incrementAndGet();
+    additions.add(timeout);
+    return timeout;
+  }
+
+  /**
+   * Returns the number of tasks that are waiting to be run.
+   */
+  public int getPending() {
+    return pending.get();
+  }
+
+  /**
+   * Visits a bucket every tick and runs the tasks that expired.
+   */
+  private void run() {
+    while (true) {
+      long deadline = (tick + 1) * tickNanos;
+      long sleep;
+      while ((sleep = deadline - (System.nanoTime() - startTime)) > 0) {
+        try {
+          TimeUnit.NANOSECONDS.sleep(sleep);
+        } catch (InterruptedException e) {
+          return;
+        }
+      }
+      Timeout timeout;
+      while ((timeout = cancellations.poll()) != null)
+        if (timeout.bucket != null)
+          timeout.bucket.remove(timeout);
+      while ((timeout = additions.poll()) != null) {
+        if (timeout.state.get() != PENDING)
+          continue;
+        long ticks = Math.max(timeout.deadline / tickNanos, tick);
+        timeout.rounds = (ticks - tick) / buckets.length;
+        buckets[(int) (ticks & mask)].add(timeout);
+      }
+      buckets[(int) (tick & mask)].expire();
+      tick++;
+    }
+  }
+
+  /**
+   * Timeout class.
+   * Handle of a scheduled task that can be used to cancel it.
+   */
+  public final class Timeout {
+    private final Runnable task;
+    private final long deadline;
+    private final AtomicInteger state;
+    private long rounds;
+    private Bucket bucket;
+    private Timeout previous;
+    private Timeout next;
+
+    private Timeout(Runnable task, long deadline) {
+      this.task = task;
+      this.deadline = deadline;
+      this.state = new AtomicInteger(PENDING);
+    }
+
+    /**
+     * Cancels the task. Returns false if it already ran or was cancelled.
+     */
+    public boolean cancel() {
+      if (!state.compareAndSet(PENDING, CANCELLED))
+        return false;
+      pending.decrementAndGet();
+      cancellations.add(this);
+      return true;
+    }
+
+    /**
+     * Runs the task unless it was cancelled.
+     */
+    private void expire() {
+      if (!state.compareAndSet(PENDING, EXPIRED))
+        return;
+      pending.decrementAndGet();
+      try {
+        task.run();
+      } catch (RuntimeException e) {
+        e.printStackTrace();
+      }
+    }
+  }
+
+  /**
+   * Bucket class.
+   * Doubly linked list of the tasks of a slot of the wheel.
+   */
+  private static final class Bucket {
+    private Timeout head;
+    private Timeout tail;
+
+    void add(Timeout timeout) {
+      timeout.bucket = this;
+      timeout.previous = tail;
+      timeout.next = null;
+      if (tail == null)
+        head = timeout;
+      else
+        tail.next = timeout;
+      tail = timeout;
+    }
+
+    void remove(Timeout timeout) {
+      if (timeout.previous == null)
+        head = timeout.next;
+      else
+        timeout.previous.next = timeout.next;
+      if (timeout.next == null)
+        tail = timeout.previous;
+      else
+        timeout.next.previous = timeout.previous;
+      timeout.bucket = null;
+      timeout.previous = null;
+      timeout.next = null;
+    }
+
+    /**
+     * Runs the tasks that are due in this turn of the wheel and counts
+     * down the turns of the rest.
+     */
+    void expire() {
+      Timeout timeout = head;
+      while (timeout != null) {
+        Timeout next = timeout.next;
+        if (timeout.rounds <= 0) {
+          remove(timeout);
+          timeout.expire();
+        }
+        else
+          timeout.rounds--;
+        timeout = next;
+      }
+    }
+  }
+}
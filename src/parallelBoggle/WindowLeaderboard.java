@@ -0,0 +1,342 @@
+package parallelBoggle;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * WindowLeaderboard class.
+ * Ranks the players by the points they scored in the sessions finalized
+ * during the last hour, day and week.
+ *
+ * Every window is a ring of buckets that cover a fixed slice of time each
+ * (a minute for the hour, a quarter of an hour for the day and an hour for
+ * the week). A bucket keeps the totals of the players that finished a game
+ * during its slice, and the window keeps the sum of its buckets in a map
+ * and in a RankedSet sorted by score, so the rankings are read without
+ * visiting the buckets. When time moves past a slice its bucket is reused:
+ * the totals it holds are detached in constant time and an empty bucket
+ * takes its place. The detached totals are subtracted from the sums of the
+ * window by the expiry thread in small batches, each one with its own
+ * acquisition of the lock, so neither the readers nor the updates wait for
+ * a whole bucket to expire. Every result is added and subtracted once and
+ * the windows never scan their history. Until the thread catches up, the
+ * rankings can include the results of a slice that just expired.
+ *
+ * The memory is bounded by the number of buckets and by the number of
+ * players that a bucket can hold (boggle.window.players). The results of
+ * the players that do not fit in a full bucket are dropped and counted.
+ * The windows are only kept in memory, so they start empty every time the
+ * server starts.
+ *
+ * This class is thread safe. Every window has its own lock.
+ */
+public class WindowLeaderboard {
+  public static final int HOUR = 0;
+  public static final int DAY = 1;
+  public static final int WEEK = 2;
+  public static final int BUCKET_PLAYERS =
+          Math.max(1, Integer.getInteger("boggle.window.players", 10000));
+
+  private static final String[] NAMES = {"hour", "day", "week"};
+  private static final int EXPIRY_BATCH = 256;
+  private static final long EXPIRY_PERIOD = 1000;
+
+  private final Window[] windows;
+  private final long origin;
+
+  /**
+   * Creates the hourly, daily and weekly windows and starts the thread that
+   * expires their buckets.
+   */
+  public WindowLeaderboard() {
+    this.origin = System.nanoTime();
+    this.windows = new Window[] {
+            new Window(TimeUnit.MINUTES.toNanos(1), 60),
+            new Window(TimeUnit.MINUTES.toNanos(15), 96),
+            new Window(TimeUnit.HOURS.toNanos(1), 168)};
+    Thread expiry = new Thread(this::run, "window-expiry");
+    expiry.setDaemon(true);
+    expiry.start();
+  }
+
+  /**
+   * Expires the buckets of every window each EXPIRY_PERIOD milliseconds
+   * until the thread is interrupted.
+   */
+  private void run() {
+    while (true) {
+      try {
+        Thread.sleep(EXPIRY_PERIOD);
+      } catch (InterruptedException e) {
+        return;
+      }
+      expire();
+    }
+  }
+
+  /**
+   * Subtracts the totals of the buckets whose slices ended from the sums of
+   * every window.
+   */
+  void expire() {
+    for (Window window : windows)
+      window.expire(System.nanoTime() - origin);
+  }
+
+  /**
+   * Returns the window with the given name, or -1 if there is none.
+   */
+  public static int getWindow(String name) {
+    for (int i = 0; i < NAMES.length; i++)
+      if (NAMES[i].equals(name))
+        return i;
+    return -1;
+  }
+
+  /**
+   * Returns the name of a window.
+   */
+  public static String getName(int window) {
+    return NAMES[window];
+  }
+
+  /**
+   * Adds the results of the players of a batch of finalized sessions to
+   * every window.
+   */
+  public void update(List<LocalSession> sessions) {
+    List<Player> results = new ArrayList<>();
+    for (LocalSession session : sessions)
+      results.addAll(session.getParticipants());
+    long now = System.nanoTime() - origin;
+    for (Window window : windows)
+      window.add(results, now);
+  }
+
+  /**
+   * Returns a page of the ranking of a window that starts at the given
+   * position (0 is the first place) and has at most the given number of
+   * players, up to Leaderboard.MAX_PAGE players. The records only carry the
+   * score, games and word counts of the players in the window.
+   */
+  public List<PlayerRecord> getPage(int window, int offset, int count) {
+    count = Math.min(count, Leaderboard.MAX_PAGE);
+    if (offset < 0 || count <= 0)
+      return Collections.emptyList();
+    return windows[window].getPage(offset, count);
+  }
+
+  /**
+   * Returns the number of players ranked in a window.
+   */
+  public int size(int window) {
+    return windows[window].size();
+  }
+
+  /**
+   * Returns the number of results that were dropped because their bucket
+   * was full.
+   */
+  public long getDropped() {
+    long dropped = 0;
+    for (Window window : windows)
+      dropped += window.dropped.get();
+    return dropped;
+  }
+
+  /**
+   * Window class.
+   * A ring of buckets, the sums of the totals they hold and the totals of
+   * the expired buckets that have not been subtracted yet.
+   */
+  private static final class Window {
+    private final long bucketNanos;
+    private final Bucket[] buckets;
+    private final Map<String, Tally> sums;
+    private final RankedSet<Tally> ranking;
+    private final Deque<Iterator<Tally>> expiring;
+    private final ReentrantLock lock;
+    private final AtomicLong dropped;
+    private long slice;
+
+    Window(long bucketNanos, int count) {
+      this.bucketNanos = bucketNanos;
+      this.buckets = new Bucket[count];
+      for (int i = 0; i < count; i++)
+        buckets[i] = new Bucket();
+      this.sums = new HashMap<>();
+      this.ranking = new RankedSet<>();
+      this.expiring = new ArrayDeque<>();
+      this.lock = new ReentrantLock();
+      this.dropped = new AtomicLong();
+    }
+
+    /**
+     * Adds the results of a batch of players to the current bucket.
+     */
+    void add(List<Player> results, long now) {
+      lock.lock();
+      try {
+        rotate(now);
+        Bucket bucket = buckets[(int) (slice % buckets.length)];
+        for (Player player : results) {
+          Tally tally = bucket.players.get(player.getUsername());
+          if (tally == null) {
+            if (bucket.players.size() >= BUCKET_PLAYERS) {
+              dropped.incrementAndGet();
+              continue;
+            }
+            tally = new Tally(player.getUsername());
+            bucket.players.put(tally.username, tally);
+          }
+          tally.add(player.getScore(), 1, player.getNewWords(), player.getRepeatedWords());
+          move(tally.username, player.getScore(), 1, player.getNewWords(),
+                  player.getRepeatedWords());
+        }
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    /**
+     * Adds the given amounts to the sum of a player and moves it in the
+     * ranking. The player is removed once it has no games in the window.
+     */
+    private void move(String username, int score, int games, int unique, int repeated) {
+      Tally sum = sums.get(username);
+      if (sum == null) {
+        sum = new Tally(username);
+        sums.put(username, sum);
+      }
+      else
+        ranking.remove(sum);
+      sum.add(score, games, unique, repeated);
+      if (sum.games > 0)
+        ranking.add(sum);
+      else
+        sums.remove(username);
+    }
+
+    /**
+     * Detaches the totals of the buckets of the slices that ended since the
+     * last call, so their buckets can be reused, and queues them to be
+     * subtracted. Every bucket is detached in constant time, and at most
+     * every bucket once however long the window was idle. Called while
+     * holding the lock.
+     */
+    private void rotate(long now) {
+      long current = now / bucketNanos;
+      long first = Math.max(slice + 1, current - buckets.length + 1);
+      for (long s = first; s <= current; s++) {
+        Bucket bucket = buckets[(int) (s % buckets.length)];
+        if (!bucket.players.isEmpty()) {
+          expiring.add(bucket.players.values().iterator());
+          bucket.players = new HashMap<>();
+        }
+      }
+      slice = Math.max(slice, current);
+    }
+
+    /**
+     * Subtracts the totals of the expired buckets from the sums, at most
+     * EXPIRY_BATCH of them every time the lock is taken.
+     */
+    void expire(long now) {
+      boolean done = false;
+      while (!done) {
+        lock.lock();
+        try {
+          rotate(now);
+          for (int i = 0; i < EXPIRY_BATCH && !expiring.isEmpty(); i++) {
+            Iterator<Tally> tallies = expiring.peek();
+            Tally tally = tallies.next();
+            move(tally.username, -tally.score, -tally.games, -tally.uniqueWords,
+                    -tally.repeatedWords);
+            if (!tallies.hasNext())
+              expiring.poll();
+          }
+          done = expiring.isEmpty();
+        } finally {
+          lock.unlock();
+        }
+      }
+    }
+
+    /**
+     * Returns a page of the ranking of the window.
+     */
+    List<PlayerRecord> getPage(int offset, int count) {
+      lock.lock();
+      try {
+        List<PlayerRecord> page = new ArrayList<>(Math.min(count, ranking.size()));
+        int position = offset;
+        for (Tally sum : ranking.range(offset, count))
+          page.add(new PlayerRecord(++position, sum.username, sum.score, sum.games, "", 0,
+                  sum.uniqueWords, sum.repeatedWords));
+        return page;
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    /**
+     * Returns the number of players ranked in the window.
+     */
+    int size() {
+      lock.lock();
+      try {
+        return sums.size();
+      } finally {
+        lock.unlock();
+      }
+    }
+  }
+
+  /**
+   * Bucket class.
+   * The totals of the players that finished a game during one slice.
+   */
+  private static final class Bucket {
+    private Map<String, Tally> players = new HashMap<>();
+  }
+
+  /**
+   * Tally class.
+   * The totals of a player. Tallies are ordered by score, highest first, and
+   * then by username.
+   */
+  private static final class Tally implements Comparable<Tally> {
+    private final String username;
+    private int score;
+    private int games;
+    private int uniqueWords;
+    private int repeatedWords;
+
+    Tally(String username) {
+      this.username = username;
+    }
+
+    void add(int score, int games, int unique, int repeated) {
+      this.score += score;
+      this.games += games;
+      this.uniqueWords += unique;
+      this.repeatedWords += repeated;
+    }
+
+    @Override
+    public int compareTo(Tally other) {
+      if (score != other.score)
+        return score > other.score ? -1 : 1;
+      return username.compareTo(other.username);
+    }
+  }
+}
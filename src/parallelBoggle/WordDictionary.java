@@ -0,0 +1,334 @@
+package parallelBoggle;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * WordDictionary class.
+ * Stores the words that are accepted by the server together with their
+ * points and the trie that is used to solve the game boards. Every word has
+ * an id that is its position in the alphabetically sorted word list.
+ *
+ * The dictionary can be built from the plain text word list or loaded from a
+ * binary image that is compiled offline by running this class:
+ *
+ *   java parallelBoggle.WordDictionary resources/dictionary.txt resources/dictionary.bin
+ *
+ * The image is memory-mapped, so loading it does not create any objects per
+ * word and several servers in the same host share the same pages. Its layout
+ * (big endian) is the following:
+ *
+ *   int magic, int version, int nodeCount, int wordCount, int letterCount
+ *   int[nodeCount] child masks, int[nodeCount] first children,
+ *   int[nodeCount] node word ids, int[wordCount + 1] word offsets,
+ *   byte[wordCount] word points, byte[letterCount] word letters
+ *
+ * This class is immutable, so it is thread safe.
+ */
+public class WordDictionary {
+  public static final String TEXT_FILE = "resources/dictionary.txt";
+  public static final String IMAGE_FILE = "resources/dictionary.bin";
+
+  private static final int MAGIC = 0x42474C44;
+  private static final int VERSION = 1;
+  private static final int HEADER_SIZE = 5 * Integer.BYTES;
+
+  private final WordTrie trie;
+  private final IntBuffer offsets;
+  private final ByteBuffer points;
+  private final ByteBuffer letters;
+
+  /**
+   * Creates a dictionary from its trie and word table.
+   */
+  private WordDictionary(WordTrie trie, IntBuffer offsets, ByteBuffer points,
+                         ByteBuffer letters) {
+    this.trie = trie;
+    this.offsets = offsets;
+    this.points = points;
+    this.letters = letters;
+  }
+
+  /**
+   * Loads the dictionary image if it exists, otherwise the dictionary is
+   * built from the text word list.
+   */
+  public static WordDictionary load() throws IOException {
+    Path image = Paths.get(IMAGE_FILE);
+    if (Files.isReadable(image)) {
+      try {
+        return fromImage(image);
+      } catch (IOException e) {
+        System.out.println("The dictionary image could not be loaded: " + e.getMessage());
+      }
+    }
+    return fromText(Paths.get(TEXT_FILE));
+  }
+
+  /**
+   * Builds the dictionary from a text file with one word per line.
+   * Words with characters other than 'a' to 'z' are ignored because
+   * they can never be formed in a game board.
+   */
+  public static WordDictionary fromText(Path file) throws IOException {
+    List<String> words;
+    try (Stream<String> lines = Files.lines(file)) {
+      words = lines.filter(WordDictionary::isValidWord)
+              .sorted()
+              .distinct()
+              .collect(Collectors.toList());
+    }
+    int[] offsets = new int[words.size() + 1];
+    byte[] points = new byte[words.size()];
+    int length = 0;
+    for (int i = 0; i < words.size(); i++) {
+      offsets[i] = length;
+      points[i] = (byte) calculatePoints(words.get(i).length());
+      length += words.get(i).length();
+    }
+    offsets[words.size()] = length;
+    byte[] letters = new byte[length];
+    for (int i = 0; i < words.size(); i++) {
+      byte[] word = words.get(i).getBytes(StandardCharsets.US_ASCII);
+      System.arraycopy(word, 0, letters, offsets[i], word.length);
+    }
+    return new WordDictionary(WordTrie.build(words), IntBuffer.wrap(offsets),
+            ByteBuffer.wrap(points), ByteBuffer.wrap(letters));
+  }
+
+  /**
+   * Maps a dictionary image into memory.
+   */
+  public static WordDictionary fromImage(Path file) throws IOException {
+    MappedByteBuffer image;
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      image = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    }
+    image.order(ByteOrder.BIG_ENDIAN);
+    if (image.limit() < HEADER_SIZE || image.getInt(0) != MAGIC)
+      throw new IOException("Not a dictionary image.");
+    if (image.getInt(4) != VERSION)
+      throw new IOException("Unsupported dictionary image version " + image.getInt(4) + ".");
+    int nodeCount = image.getInt(8);
+    int wordCount = image.getInt(12);
+    int letterCount = image.getInt(16);
+    long expected = HEADER_SIZE + (3L * nodeCount + wordCount + 1) * Integer.BYTES
+            + wordCount + letterCount;
+    if (image.limit() != expected)
+      throw new IOException("The dictionary image is truncated.");
+    int position = HEADER_SIZE;
+    IntBuffer childMask = intSection(image, position, nodeCount);
+    position += nodeCount * Integer.BYTES;
+    IntBuffer firstChild = intSection(image, position, nodeCount);
+    position += nodeCount * Integer.BYTES;
+    IntBuffer nodeWord = intSection(image, position, nodeCount);
+    position += nodeCount * Integer.BYTES;
+    IntBuffer offsets = intSection(image, position, wordCount + 1);
+    position += (wordCount + 1) * Integer.BYTES;
+    ByteBuffer points = byteSection(image, position, wordCount);
+    position += wordCount;
+    ByteBuffer letters = byteSection(image, position, letterCount);
+    return new WordDictionary(new WordTrie(childMask, firstChild, nodeWord),
+            offsets, points, letters);
+  }
+
+  /**
+   * Returns a view of a section of ints of the image.
+   */
+  private static IntBuffer intSection(ByteBuffer image, int position, int count) {
+    return byteSection(image, position, count * Integer.BYTES).asIntBuffer();
+  }
+
+  /**
+   * Returns a view of a section of bytes of the image.
+   */
+  private static ByteBuffer byteSection(ByteBuffer image, int position, int count) {
+    ByteBuffer section = image.duplicate();
+    section.position(position);
+    section.limit(position + count);
+    return section.slice().order(ByteOrder.BIG_ENDIAN);
+  }
+
+  /**
+   * Writes the dictionary as a binary image that can be mapped by fromImage.
+   */
+  public void writeImage(Path file) throws IOException {
+    int nodeCount = trie.nodeCount();
+    int wordCount = size();
+    int letterCount = letters.limit();
+    ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+    header.putInt(MAGIC).putInt(VERSION).putInt(nodeCount)
+            .putInt(wordCount).putInt(letterCount).flip();
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+            StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+      writeFully(channel, header);
+      writeFully(channel, toBytes(trie.childMasks()));
+      writeFully(channel, toBytes(trie.firstChildren()));
+      writeFully(channel, toBytes(trie.nodeWords()));
+      writeFully(channel, toBytes(offsets.asReadOnlyBuffer()));
+      writeFully(channel, points.asReadOnlyBuffer());
+      writeFully(channel, letters.asReadOnlyBuffer());
+    }
+  }
+
+  /**
+   * Copies a buffer of ints into a big endian buffer of bytes.
+   */
+  private static ByteBuffer toBytes(IntBuffer ints) {
+    ByteBuffer bytes = ByteBuffer.allocate(ints.remaining() * Integer.BYTES);
+    bytes.asIntBuffer().put(ints);
+    return bytes;
+  }
+
+  /**
+   * Writes the remaining bytes of a buffer to a channel.
+   */
+  private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+    while (buffer.hasRemaining())
+      channel.write(buffer);
+  }
+
+  /**
+   * Verifies that a word only contains letters that can appear in a board.
+   */
+  private static boolean isValidWord(String word) {
+    if (word.isEmpty())
+      return false;
+    for (int i = 0; i < word.length(); i++) {
+      char c = word.charAt(i);
+      if (c < 'a' || c > 'z')
+        return false;
+    }
+    return true;
+  }
+
+  /**
+   * Function that calculates the value of the words in the dictionary.
+   */
+  public static int calculatePoints(int length) {
+    switch (length) {
+      case 3:
+      case 4:
+        return 1;
+      case 5:
+        return 2;
+      case 6:
+        return 3;
+      case 7:
+        return 5;
+      default:
+        return 11;
+    }
+  }
+
+  /**
+   * Returns the trie that contains every word of the dictionary.
+   */
+  public WordTrie getTrie() {
+    return trie;
+  }
+
+  /**
+   * Returns the number of words in the dictionary.
+   */
+  public int size() {
+    return points.limit();
+  }
+
+  /**
+   * Returns the id of a word, or WordTrie.NONE if it is not in the dictionary.
+   */
+  public int lookup(String word) {
+    return trie.lookup(word);
+  }
+
+  /**
+   * Verifies if a word is in the dictionary.
+   */
+  public boolean contains(String word) {
+    return lookup(word) != WordTrie.NONE;
+  }
+
+  /**
+   * Returns the points awarded for the word with the given id.
+   */
+  public int getPoints(int id) {
+    return points.get(id);
+  }
+
+  /**
+   * Returns the points awarded for a word.
+   */
+  public int getPoints(String word) {
+    int id = lookup(word);
+    if (id == WordTrie.NONE)
+      throw new BoggleException("The word is not in the dictionary.");
+    return getPoints(id);
+  }
+
+  /**
+   * Returns a CRC32 checksum of the words of the dictionary and their ids,
+   * which is the same whether the dictionary was built from the text word
+   * list or mapped from its image.
+   */
+  public int checksum() {
+    CRC32 crc = new CRC32();
+    crc.update(toBytes(offsets.duplicate().rewind()));
+    crc.update(letters.duplicate().rewind());
+    return (int) crc.getValue();
+  }
+
+  /**
+   * Returns the word with the given id.
+   */
+  public String getWord(int id) {
+    int start = offsets.get(id);
+    int end = offsets.get(id + 1);
+    char[] word = new char[end - start];
+    for (int i = 0; i < word.length; i++)
+      word[i] = (char) letters.get(start + i);
+    return new String(word);
+  }
+
+  /**
+   * Returns the number of letters of the word with the given id.
+   */
+  public int getWordLength(int id) {
+    return offsets.get(id + 1) - offsets.get(id);
+  }
+
+  /**
+   * Copies the letters of the word with the given id into a buffer.
+   */
+  public void copyWord(int id, ByteBuffer out) {
+    int end = offsets.get(id + 1);
+    for (int i = offsets.get(id); i < end; i++)
+      out.put(letters.get(i));
+  }
+
+  /**
+   * Compiles a text word list into a dictionary image.
+   * Usage: WordDictionary [text file] [image file]
+   */
+  public static void main(String[] args) throws IOException {
+    Path text = Paths.get(args.length > 0 ? args[0] : TEXT_FILE);
+    Path image = Paths.get(args.length > 1 ? args[1] : IMAGE_FILE);
+    WordDictionary dictionary = fromText(text);
+    dictionary.writeImage(image);
+    System.out.printf("Compiled %d words (%d trie nodes) into %s (%d bytes).%n",
+            dictionary.size(), dictionary.trie.nodeCount(), image, Files.size(image));
+  }
+}
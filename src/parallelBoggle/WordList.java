@@ -0,0 +1,63 @@
+package parallelBoggle;
+
+import java.nio.ByteBuffer;
+import java.util.AbstractList;
+import java.util.RandomAccess;
+
+/**
+ * WordList class.
+ * Read-only list of words that is backed by an array of dictionary word ids.
+ * The words are only turned into strings when they are read, so a solution
+ * costs four bytes per word while it is stored in the server.
+ *
+ * This class is immutable, so it is thread safe.
+ */
+public class WordList extends AbstractList<String> implements RandomAccess {
+  private final WordDictionary dictionary;
+  private final int[] ids;
+
+  /**
+   * Creates a list with the words of the given ids.
+   */
+  public WordList(WordDictionary dictionary, int[] ids) {
+    this.dictionary = dictionary;
+    this.ids = ids;
+  }
+
+  /**
+   * Returns the word in the given position.
+   */
+  @Override
+  public String get(int index) {
+    return dictionary.getWord(ids[index]);
+  }
+
+  /**
+   * Returns the id of the word in the given position.
+   */
+  public int getId(int index) {
+    return ids[index];
+  }
+
+  /**
+   * Returns the number of letters of the word in the given position.
+   */
+  public int getLength(int index) {
+    return dictionary.getWordLength(ids[index]);
+  }
+
+  /**
+   * Copies the letters of the word in the given position into a buffer.
+   */
+  public void copyWord(int index, ByteBuffer out) {
+    dictionary.copyWord(ids[index], out);
+  }
+
+  /**
+   * Returns the number of words in the list.
+   */
+  @Override
+  public int size() {
+    return ids.length;
+  }
+}
@@ -0,0 +1,167 @@
+package parallelBoggle;
+
+import java.nio.IntBuffer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * WordTrie class.
+ * Prefix tree that contains every word of the dictionary. It is used by the
+ * board solver to stop exploring a path as soon as no dictionary word starts
+ * with the letters that have been collected so far.
+ *
+ * The nodes are stored in flat arrays in breadth-first order. Each node keeps
+ * a bit mask with the letters of its children, the index of its first child
+ * and the id of the word that ends in the node (or NONE). The children of a
+ * node are stored next to each other sorted by letter. The arrays can live in
+ * the heap or in a memory-mapped dictionary image.
+ *
+ * Only the letters 'a' to 'z' are supported.
+ *
+ * This class is immutable once it has been built, so it is thread safe.
+ */
+public class WordTrie {
+  public static final int ROOT = 0;
+  public static final int NONE = -1;
+
+  private final IntBuffer childMask;
+  private final IntBuffer firstChild;
+  private final IntBuffer nodeWord;
+
+  /**
+   * Creates a trie that uses the given node arrays.
+   */
+  WordTrie(IntBuffer childMask, IntBuffer firstChild, IntBuffer nodeWord) {
+    this.childMask = childMask;
+    this.firstChild = firstChild;
+    this.nodeWord = nodeWord;
+  }
+
+  /**
+   * Builds a trie that contains the given words. The id of each word
+   * is its position in the list.
+   */
+  public static WordTrie build(List<String> words) {
+    BuildNode root = new BuildNode();
+    int nodes = 1;
+    for (int id = 0; id < words.size(); id++) {
+      String word = words.get(id);
+      BuildNode current = root;
+      for (int i = 0; i < word.length(); i++) {
+        int letter = word.charAt(i) - 'a';
+        if (current.children[letter] == null) {
+          current.children[letter] = new BuildNode();
+          nodes++;
+        }
+        current = current.children[letter];
+      }
+      current.word = id;
+    }
+    int[] childMask = new int[nodes];
+    int[] firstChild = new int[nodes];
+    int[] nodeWord = new int[nodes];
+    Deque<BuildNode> queue = new ArrayDeque<>();
+    queue.add(root);
+    int index = 0;
+    int next = 1;
+    while (!queue.isEmpty()) {
+      BuildNode node = queue.poll();
+      nodeWord[index] = node.word;
+      firstChild[index] = next;
+      for (int letter = 0; letter < 26; letter++) {
+        if (node.children[letter] != null) {
+          childMask[index] |= 1 << letter;
+          queue.add(node.children[letter]);
+          next++;
+        }
+      }
+      index++;
+    }
+    return new WordTrie(IntBuffer.wrap(childMask), IntBuffer.wrap(firstChild),
+            IntBuffer.wrap(nodeWord));
+  }
+
+  /**
+   * Returns the child of a node for the given lower case letter,
+   * or NONE if no word continues with that letter.
+   */
+  public int child(int node, char letter) {
+    int bit = 1 << (letter - 'a');
+    int mask = childMask.get(node);
+    if ((mask & bit) == 0)
+      return NONE;
+    return firstChild.get(node) + Integer.bitCount(mask & (bit - 1));
+  }
+
+  /**
+   * Verifies if the path that leads to the given node is a word.
+   */
+  public boolean isWord(int node) {
+    return nodeWord.get(node) != NONE;
+  }
+
+  /**
+   * Returns the id of the word that ends in the given node, or NONE.
+   */
+  public int wordId(int node) {
+    return nodeWord.get(node);
+  }
+
+  /**
+   * Verifies if any word continues after the given node.
+   */
+  public boolean hasChildren(int node) {
+    return childMask.get(node) != 0;
+  }
+
+  /**
+   * Returns the id of a word, or NONE if the trie does not contain it.
+   */
+  public int lookup(String word) {
+    int node = ROOT;
+    for (int i = 0; i < word.length() && node != NONE; i++) {
+      char c = word.charAt(i);
+      if (c < 'a' || c > 'z')
+        return NONE;
+      node = child(node, c);
+    }
+    return node == NONE ? NONE : wordId(node);
+  }
+
+  /**
+   * Returns the number of nodes used by the trie.
+   */
+  public int nodeCount() {
+    return nodeWord.limit();
+  }
+
+  /**
+   * Returns a read-only view of the child masks. Used to write the image.
+   */
+  IntBuffer childMasks() {
+    return childMask.asReadOnlyBuffer();
+  }
+
+  /**
+   * Returns a read-only view of the first child indexes. Used to write the image.
+   */
+  IntBuffer firstChildren() {
+    return firstChild.asReadOnlyBuffer();
+  }
+
+  /**
+   * Returns a read-only view of the word ids. Used to write the image.
+   */
+  IntBuffer nodeWords() {
+    return nodeWord.asReadOnlyBuffer();
+  }
+
+  /**
+   * Node used while the trie is being built.
+   */
+  private static class BuildNode {
+    final BuildNode[] children = new BuildNode[26];
+    int word = NONE;
+  }
+}
@@ -0,0 +1,25 @@
+package parallelBoggle;
+
+/**
+ * AllTests class.
+ * Runs the tests of every class. Usage, from the root of the project:
+ *
+ *   javac -d out src/parallelBoggle/*.java test/parallelBoggle/*.java
+ *   java -cp out parallelBoggle.AllTests
+ */
+public class AllTests {
+  public static void main(String[] args) throws Exception {
+    BinaryProtocolTest.main(args);
+    BoardSolverTest.main(args);
+    IntIntMapTest.main(args);
+    LeaderboardTest.main(args);
+    RankedSetTest.main(args);
+    RecordsLogTest.main(args);
+    RoundCoordinatorTest.main(args);
+    ScoreIndexTest.main(args);
+    SessionCheckpointerTest.main(args);
+    TimingWheelTest.main(args);
+    WindowLeaderboardTest.main(args);
+    System.out.println("All tests passed.");
+  }
+}
@@ -0,0 +1,130 @@
+package parallelBoggle;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import static parallelBoggle.TestSupport.*;
+
+/**
+ * BinaryProtocolTest class.
+ * Tests the round-trips of the varints, zigzag values, strings and frames
+ * of the binary protocol, at the boundaries of their encodings.
+ */
+public class BinaryProtocolTest {
+  private static final int[] BOUNDARIES = {0, 1, 127, 128, 16383, 16384, (1 << 21) - 1, 1 << 21,
+          (1 << 28) - 1, 1 << 28, Integer.MAX_VALUE, -1, Integer.MIN_VALUE};
+
+  public static void main(String[] args) throws Exception {
+    System.out.println("BinaryProtocol");
+    run("varints round-trip", BinaryProtocolTest::varintsRoundTrip);
+    run("zigzag values round-trip", BinaryProtocolTest::zigzagValuesRoundTrip);
+    run("random values round-trip", BinaryProtocolTest::randomValuesRoundTrip);
+    run("malformed varints are rejected", BinaryProtocolTest::malformedVarintsAreRejected);
+    run("strings round-trip", BinaryProtocolTest::stringsRoundTrip);
+    run("frames round-trip", BinaryProtocolTest::framesRoundTrip);
+    run("partial frames are left in the input", BinaryProtocolTest::partialFramesAreLeft);
+    run("long requests are rejected", BinaryProtocolTest::longRequestsAreRejected);
+  }
+
+  static void varintsRoundTrip() {
+    for (int value : BOUNDARIES) {
+      ByteBuffer buffer = ByteBuffer.allocate(BinaryProtocol.MAX_VARINT_SIZE);
+      BinaryProtocol.putVarint(buffer, value);
+      checkEquals(BinaryProtocol.varintSize(value), buffer.position(), "size of " + value);
+      buffer.flip();
+      checkEquals(value, BinaryProtocol.getVarint(buffer), "value");
+      check(!buffer.hasRemaining(), "the varint of " + value + " is read whole");
+    }
+    checkEquals(1, BinaryProtocol.varintSize(127), "one byte up to 127");
+    checkEquals(2, BinaryProtocol.varintSize(128), "two bytes from 128");
+    checkEquals(BinaryProtocol.MAX_VARINT_SIZE, BinaryProtocol.varintSize(-1), "negative values");
+  }
+
+  static void zigzagValuesRoundTrip() {
+    for (int value : BOUNDARIES) {
+      for (int sign : new int[] {1, -1}) {
+        ByteBuffer buffer = ByteBuffer.allocate(BinaryProtocol.MAX_VARINT_SIZE);
+        BinaryProtocol.putSigned(buffer, sign * value);
+        buffer.flip();
+        checkEquals(sign * value, BinaryProtocol.getSigned(buffer), "signed value");
+      }
+    }
+    ByteBuffer buffer = ByteBuffer.allocate(BinaryProtocol.MAX_VARINT_SIZE);
+    BinaryProtocol.putSigned(buffer, -64);
+    checkEquals(1, buffer.position(), "small negative values take one byte");
+  }
+
+  static void randomValuesRoundTrip() {
+    Random random = new Random(13);
+    ByteBuffer buffer = ByteBuffer.allocate(1000 * 2 * BinaryProtocol.MAX_VARINT_SIZE);
+    int[] values = new int[1000];
+    for (int i = 0; i < values.length; i++) {
+      values[i] = random.nextInt() >> random.nextInt(32);
+      BinaryProtocol.putVarint(buffer, values[i]);
+      BinaryProtocol.putSigned(buffer, values[i]);
+    }
+    buffer.flip();
+    for (int value : values) {
+      checkEquals(value, BinaryProtocol.getVarint(buffer), "unsigned value");
+      checkEquals(value, BinaryProtocol.getSigned(buffer), "signed value");
+    }
+  }
+
+  static void malformedVarintsAreRejected() throws Exception {
+    ByteBuffer buffer = ByteBuffer.wrap(new byte[] {-1, -1, -1, -1, -1, -1});
+    checkThrows(BoggleException.class, () -> BinaryProtocol.getVarint(buffer), "six bytes");
+  }
+
+  static void stringsRoundTrip() {
+    for (String value : new String[] {"", "burgher", "\u00f1and\u00fa", "\u65e5\u672c\u8a9e",
+            "mixed ascii \u00fc"}) {
+      ByteBuffer buffer = ByteBuffer.allocate(BinaryProtocol.stringSize(value));
+      BinaryProtocol.putString(buffer, value);
+      buffer.flip();
+      checkEquals(value, BinaryProtocol.getString(buffer), "string");
+      check(!buffer.hasRemaining(), "the string " + value + " is read whole");
+    }
+  }
+
+  static void framesRoundTrip() {
+    for (int length : new int[] {0, 1, 127, 128, BinaryProtocol.MAX_REQUEST}) {
+      ByteBuffer frame = BinaryProtocol.allocateFrame(length);
+      for (int i = 0; i < length; i++)
+        frame.put((byte) i);
+      ByteBuffer input = copy(BinaryProtocol.finishFrame(frame));
+      ByteBuffer payload = BinaryProtocol.nextFrame(input);
+      check(payload != null, "the frame of " + length + " bytes is complete");
+      checkEquals(length, payload.remaining(), "payload length");
+      for (int i = 0; i < length; i++)
+        checkEquals((byte) i, payload.get(), "byte " + i);
+      check(!input.hasRemaining(), "the frame is consumed");
+    }
+  }
+
+  static void partialFramesAreLeft() {
+    ByteBuffer frame = BinaryProtocol.allocateFrame(200);
+    frame.put(new byte[200]);
+    ByteBuffer whole = copy(BinaryProtocol.finishFrame(frame));
+    for (int cut : new int[] {0, 1, 2, 100}) {
+      ByteBuffer input = ByteBuffer.wrap(whole.array(), 0, cut);
+      checkEquals(null, BinaryProtocol.nextFrame(input), "frame cut at " + cut);
+      checkEquals(0, input.position(), "position after a frame cut at " + cut);
+    }
+  }
+
+  static void longRequestsAreRejected() throws Exception {
+    ByteBuffer input = ByteBuffer.allocate(BinaryProtocol.MAX_VARINT_SIZE);
+    BinaryProtocol.putVarint(input, BinaryProtocol.MAX_REQUEST + 1);
+    input.flip();
+    checkThrows(BoggleException.class, () -> BinaryProtocol.nextFrame(input), "long request");
+  }
+
+  /**
+   * Copies the remaining bytes of a buffer into a new heap buffer.
+   */
+  private static ByteBuffer copy(ByteBuffer buffer) {
+    byte[] bytes = new byte[buffer.remaining()];
+    buffer.get(bytes);
+    return ByteBuffer.wrap(bytes);
+  }
+}
@@ -0,0 +1,141 @@
+package parallelBoggle;
+
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+import static parallelBoggle.TestSupport.*;
+
+/**
+ * BoardSolverTest class.
+ * Tests that the trie and bit mask search of the BoardSolver finds exactly
+ * the words that a plain reference search finds: for every word of the
+ * dictionary, a depth first search of the board for its letters.
+ */
+public class BoardSolverTest {
+  public static void main(String[] args) throws Exception {
+    System.out.println("BoardSolver");
+    WordDictionary dictionary = WordDictionary.fromText(Paths.get(WordDictionary.TEXT_FILE));
+    run("fixed 4x4 board", () -> checkBoard(dictionary, "S S T P,R E H G,D Y R W,U U B P"));
+    run("board with a q cell", () -> checkBoard(dictionary,
+            "Q U I T E,A Q U A S,T I N G S,R E Q U E,S T O N E"));
+    run("6x6 board solved in parallel", () -> checkBoard(dictionary,
+            "S T R A N G,E L I N E S,R A T E D O,P O S T E R,A N D I N G,T H E R E S"));
+    run("random boards", () -> randomBoards(dictionary));
+    run("minimum word length", BoardSolverTest::minimumWordLength);
+    run("words repeated through different paths", BoardSolverTest::repeatedPaths);
+    run("q is a single letter", BoardSolverTest::qIsASingleLetter);
+  }
+
+  static void randomBoards(WordDictionary dictionary) {
+    Random random = new Random(5);
+    for (int dimension = BoggleServer.MIN_BOARD_DIMENSION;
+         dimension <= BoggleServer.MAX_BOARD_DIMENSION; dimension++) {
+      for (int i = 0; i < 3; i++) {
+        StringBuilder board = new StringBuilder();
+        for (int cell = 0; cell < dimension * dimension; cell++) {
+          board.append("EEAAIOTNRSLUDGHMBCPQ".charAt(random.nextInt(20)));
+          board.append(cell % dimension == dimension - 1 ? ',' : ' ');
+        }
+        checkBoard(dictionary, board.toString());
+      }
+    }
+  }
+
+  static void minimumWordLength() {
+    List<String> words = Arrays.asList("a", "ab", "abc", "abcd");
+    int[] solution = new BoardSolver(WordTrie.build(words), 2).solve("A B,C D");
+    checkEquals(reference(words, "A B,C D", 2), ids(solution), "solution");
+    check(!ids(solution).contains(1), "words shorter than the minimum length are not found");
+  }
+
+  static void repeatedPaths() {
+    List<String> words = Arrays.asList("aaa", "aaaa", "aab", "aba");
+    int[] solution = new BoardSolver(WordTrie.build(words), 3).solve("A A A,A B A,A A A");
+    checkEquals(Arrays.asList(0, 1, 2, 3), ids(solution), "each word is found once");
+    checkEquals(solution.length, new TreeSet<>(ids(solution)).size(), "no repeated ids");
+  }
+
+  static void qIsASingleLetter() {
+    List<String> words = Arrays.asList("qat", "quat", "suq");
+    String board = "Q A T,U S X,X X X";
+    checkEquals(reference(words, board, 3), ids(new BoardSolver(WordTrie.build(words), 3)
+            .solve(board)), "solution");
+  }
+
+  /**
+   * Compares the solution of the solver with the reference search.
+   */
+  private static void checkBoard(WordDictionary dictionary, String board) {
+    int dimension = board.split(",").length;
+    int[] solution = new BoardSolver(dictionary.getTrie(), dimension).solve(board);
+    List<String> words = new ArrayList<>(dictionary.size());
+    for (int id = 0; id < dictionary.size(); id++)
+      words.add(dictionary.getWord(id));
+    List<Integer> expected = reference(words, board, dimension);
+    checkEquals(expected, ids(solution), "solution of " + board);
+    check(!expected.isEmpty() || dimension < 5, "the board has words");
+  }
+
+  /**
+   * Returns the sorted ids of the words, at least MIN_WORD_LENGTH letters
+   * long, that can be formed in the board without reusing a cell.
+   */
+  private static List<Integer> reference(List<String> words, String board, int dimension) {
+    char[][] cells = new char[dimension][];
+    String[] rows = board.split(",");
+    for (int row = 0; row < dimension; row++)
+      cells[row] = rows[row].replace(" ", "").toLowerCase().toCharArray();
+    List<Integer> found = new ArrayList<>();
+    for (int id = 0; id < words.size(); id++) {
+      String word = words.get(id);
+      if (word.length() < BoardSolver.MIN_WORD_LENGTH)
+        continue;
+      boolean[][] used = new boolean[dimension][dimension];
+      search:
+      for (int row = 0; row < dimension; row++)
+        for (int column = 0; column < dimension; column++)
+          if (matches(word, 0, row, column, cells, used)) {
+            found.add(id);
+            break search;
+          }
+    }
+    return found;
+  }
+
+  /**
+   * Verifies if the letters of the word from the given position can be
+   * formed starting in the given cell.
+   */
+  private static boolean matches(String word, int position, int row, int column,
+                                 char[][] cells, boolean[][] used) {
+    if (row < 0 || column < 0 || row >= cells.length || column >= cells.length
+            || used[row][column] || cells[row][column] != word.charAt(position))
+      return false;
+    if (position == word.length() - 1)
+      return true;
+    used[row][column] = true;
+    for (int dr = -1; dr <= 1; dr++)
+      for (int dc = -1; dc <= 1; dc++)
+        if ((dr != 0 || dc != 0) && matches(word, position + 1, row + dr, column + dc, cells,
+                used)) {
+          used[row][column] = false;
+          return true;
+        }
+    used[row][column] = false;
+    return false;
+  }
+
+  /**
+   * Returns the ids of a solution as a list.
+   */
+  private static List<Integer> ids(int[] solution) {
+    List<Integer> ids = new ArrayList<>();
+    for (int id : solution)
+      ids.add(id);
+    return ids;
+  }
+}
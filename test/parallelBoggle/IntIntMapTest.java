@@ -0,0 +1,58 @@
+package parallelBoggle;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static parallelBoggle.TestSupport.*;
+
+/**
+ * IntIntMapTest class.
+ * Tests the IntIntMap against a HashMap, across the growths of its table.
+ */
+public class IntIntMapTest {
+  public static void main(String[] args) throws Exception {
+    System.out.println("IntIntMap");
+    run("missing keys", IntIntMapTest::missingKeys);
+    run("put replaces the value", IntIntMapTest::putReplacesTheValue);
+    run("rejects negative keys", IntIntMapTest::rejectsNegativeKeys);
+    run("matches a HashMap while growing", IntIntMapTest::matchesAHashMapWhileGrowing);
+  }
+
+  static void missingKeys() {
+    IntIntMap map = new IntIntMap(4);
+    checkEquals(-7, map.get(3, -7), "default value");
+    check(!map.containsKey(3), "missing key is not contained");
+    check(!map.containsKey(WordTrie.NONE), "the id of missing words is not contained");
+    checkEquals(0, map.size(), "size");
+  }
+
+  static void putReplacesTheValue() {
+    IntIntMap map = new IntIntMap(4);
+    map.put(0, 10);
+    map.put(0, 20);
+    checkEquals(20, map.get(0, -1), "value");
+    checkEquals(1, map.size(), "size");
+  }
+
+  static void rejectsNegativeKeys() throws Exception {
+    IntIntMap map = new IntIntMap(4);
+    checkThrows(IllegalArgumentException.class, () -> map.put(-1, 0), "put");
+  }
+
+  static void matchesAHashMapWhileGrowing() {
+    Random random = new Random(7);
+    IntIntMap map = new IntIntMap(1);
+    Map<Integer, Integer> expected = new HashMap<>();
+    for (int i = 0; i < 5000; i++) {
+      int key = random.nextInt(3000);
+      map.put(key, i);
+      expected.put(key, i);
+    }
+    checkEquals(expected.size(), map.size(), "size");
+    for (int key = 0; key < 3000; key++) {
+      checkEquals(expected.containsKey(key), map.containsKey(key), "contains " + key);
+      checkEquals(expected.getOrDefault(key, -1), map.get(key, -1), "value of " + key);
+    }
+  }
+}
@@ -0,0 +1,214 @@
+package parallelBoggle;
+
+import java.lang.reflect.Field;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static parallelBoggle.TestSupport.*;
+
+/**
+ * LeaderboardTest class.
+ * Tests the pages of the Leaderboard against a sorted list of the totals of
+ * the players, around the cached top positions, and its restoration from
+ * the snapshot and the log.
+ */
+public class LeaderboardTest {
+  private static final long FLUSH = 5000;
+  private static final String BOARD = "A B C D,E F G H,I J K L,M N O P";
+
+  private static WordDictionary dictionary;
+
+  public static void main(String[] args) throws Exception {
+    System.out.println("Leaderboard");
+    dictionary = WordDictionary.fromText(Paths.get(WordDictionary.TEXT_FILE));
+    run("pages across the cached top", LeaderboardTest::pagesAcrossTheCachedTop);
+    run("a player moves into the top", LeaderboardTest::playerMovesIntoTheTop);
+    run("a player moves out of the top", LeaderboardTest::playerMovesOutOfTheTop);
+    run("changes below the top keep the cache", LeaderboardTest::changesBelowTheTopKeepTheCache);
+    run("random updates", LeaderboardTest::randomUpdates);
+    run("restored from the snapshot and the log", LeaderboardTest::restoredFromSnapshotAndLog);
+  }
+
+  static void pagesAcrossTheCachedTop() {
+    Leaderboard leaderboard = new Leaderboard();
+    Map<String, Integer> totals = new HashMap<>();
+    for (int i = 0; i < Leaderboard.TOP + 50; i++)
+      add(leaderboard, totals, "p" + i, 7 * i % 301);
+    checkPage(leaderboard, totals, 0, Leaderboard.TOP);
+    checkPage(leaderboard, totals, Leaderboard.TOP - 10, 20);
+    checkPage(leaderboard, totals, Leaderboard.TOP - 1, 2);
+    checkPage(leaderboard, totals, Leaderboard.TOP, 10);
+    checkPage(leaderboard, totals, Leaderboard.TOP + 40, 20);
+    check(leaderboard.getPage(Leaderboard.TOP + 50, 10).isEmpty(), "page after the end");
+  }
+
+  static void playerMovesIntoTheTop() throws Exception {
+    Leaderboard leaderboard = new Leaderboard();
+    Map<String, Integer> totals = new HashMap<>();
+    for (int i = 0; i < Leaderboard.TOP + 50; i++)
+      add(leaderboard, totals, "p" + i, 1000 - i);
+    checkPage(leaderboard, totals, 0, Leaderboard.TOP);
+    check(top(leaderboard) != null, "the top is cached");
+    add(leaderboard, totals, "p" + (Leaderboard.TOP + 40), 500);
+    check(top(leaderboard) == null, "the top is dropped");
+    checkPage(leaderboard, totals, 0, Leaderboard.TOP);
+    checkEquals("p" + (Leaderboard.TOP + 40), leaderboard.getPage(0, 1).get(0).getUsername(),
+            "first player");
+    checkPage(leaderboard, totals, Leaderboard.TOP - 5, 10);
+  }
+
+  static void playerMovesOutOfTheTop() throws Exception {
+    Leaderboard leaderboard = new Leaderboard();
+    Map<String, Integer> totals = new HashMap<>();
+    for (int i = 0; i < Leaderboard.TOP + 50; i++)
+      add(leaderboard, totals, "p" + i, 1000 - i);
+    checkPage(leaderboard, totals, 0, Leaderboard.TOP);
+    add(leaderboard, totals, "p0", -2000);
+    check(top(leaderboard) == null, "the top is dropped");
+    checkPage(leaderboard, totals, 0, Leaderboard.TOP);
+    checkPage(leaderboard, totals, Leaderboard.TOP - 5, 10);
+    checkEquals("p0", leaderboard.getPage(Leaderboard.TOP + 49, 1).get(0).getUsername(),
+            "last player");
+  }
+
+  static void changesBelowTheTopKeepTheCache() throws Exception {
+    Leaderboard leaderboard = new Leaderboard();
+    Map<String, Integer> totals = new HashMap<>();
+    for (int i = 0; i < Leaderboard.TOP + 50; i++)
+      add(leaderboard, totals, "p" + i, 1000 - i);
+    checkPage(leaderboard, totals, 0, Leaderboard.TOP);
+    Object cached = top(leaderboard);
+    add(leaderboard, totals, "p" + (Leaderboard.TOP + 10), 5);
+    add(leaderboard, totals, "new", 0);
+    check(top(leaderboard) == cached, "the top is kept");
+    checkPage(leaderboard, totals, 0, Leaderboard.TOP);
+    checkPage(leaderboard, totals, Leaderboard.TOP - 5, 60);
+  }
+
+  static void randomUpdates() {
+    Random random = new Random(3);
+    Leaderboard leaderboard = new Leaderboard();
+    Map<String, Integer> totals = new HashMap<>();
+    for (int round = 0; round < 20; round++) {
+      List<LocalSession> sessions = new ArrayList<>();
+      for (int i = 0; i < 50; i++) {
+        String name = "p" + random.nextInt(400);
+        int score = random.nextInt(200) - 20;
+        totals.merge(name, score, Integer::sum);
+        sessions.add(session(name, score));
+      }
+      leaderboard.update(sessions);
+      for (int i = 0; i < 10; i++)
+        checkPage(leaderboard, totals, random.nextInt(totals.size() + 10),
+                1 + random.nextInt(Leaderboard.MAX_PAGE));
+    }
+  }
+
+  /**
+   * The snapshot is taken after Records.SNAPSHOT_EVENTS games, so the games
+   * after it are only restored if the log is replayed on top of it.
+   */
+  static void restoredFromSnapshotAndLog() throws Exception {
+    String path = Files.createTempDirectory("leaderboard-test").resolve("players").toString();
+    Leaderboard leaderboard = new Leaderboard(path);
+    Map<String, Integer> totals = new HashMap<>();
+    Random random = new Random(5);
+    List<LocalSession> sessions = new ArrayList<>();
+    for (int i = 0; i < Records.SNAPSHOT_EVENTS + 100; i++) {
+      String name = "p" + random.nextInt(300);
+      int score = random.nextInt(100);
+      totals.merge(name, score, Integer::sum);
+      sessions.add(session(name, score));
+    }
+    leaderboard.update(sessions);
+    RecordsLog log = log(leaderboard);
+    check(log.flush(FLUSH), "the log was flushed");
+    checkEquals(1L, log.getSnapshots(), "snapshots");
+    check(Files.exists(Paths.get(path + ".snapshot")), "the snapshot was written");
+    Leaderboard restored = new Leaderboard(path);
+    checkEquals(leaderboard.size(), restored.size(), "players");
+    for (int offset = 0; offset < totals.size(); offset += Leaderboard.MAX_PAGE) {
+      checkEquals(records(leaderboard.getPage(offset, Leaderboard.MAX_PAGE)),
+              records(restored.getPage(offset, Leaderboard.MAX_PAGE)), "page at " + offset);
+      checkPage(restored, totals, offset, Leaderboard.MAX_PAGE);
+    }
+  }
+
+  /**
+   * Adds the result of a game of a player to the leaderboard and to the
+   * expected totals.
+   */
+  private static void add(Leaderboard leaderboard, Map<String, Integer> totals, String name,
+                          int score) {
+    totals.merge(name, score, Integer::sum);
+    leaderboard.update(List.of(session(name, score)));
+  }
+
+  /**
+   * Creates a finalized session with a single player.
+   */
+  private static LocalSession session(String name, int score) {
+    Map<String, Player> players = new ConcurrentHashMap<>();
+    players.put(name, new Player(name, score, "", 0, 1, 0));
+    return new LocalSession(1, BOARD, 4, new int[0], dictionary, players, 1);
+  }
+
+  /**
+   * Verifies that a page has the players and ranks of the expected totals,
+   * which are ordered by score and then by username.
+   */
+  private static void checkPage(Leaderboard leaderboard, Map<String, Integer> totals,
+                                int offset, int count) {
+    List<Map.Entry<String, Integer>> expected = new ArrayList<>(totals.entrySet());
+    expected.sort((a, b) -> a.getValue().equals(b.getValue())
+            ? a.getKey().compareTo(b.getKey()) : Integer.compare(b.getValue(), a.getValue()));
+    List<PlayerRecord> page = leaderboard.getPage(offset, count);
+    checkEquals(Math.max(0, Math.min(count, expected.size() - offset)), page.size(),
+            "size of the page at " + offset);
+    for (int i = 0; i < page.size(); i++) {
+      PlayerRecord record = page.get(i);
+      checkEquals(offset + i + 1, record.getRank(), "rank");
+      checkEquals(expected.get(offset + i).getKey(), record.getUsername(),
+              "player at " + (offset + i));
+      checkEquals(expected.get(offset + i).getValue(), record.getTotalScore(),
+              "score at " + (offset + i));
+    }
+  }
+
+  /**
+   * Returns the records of a page as strings that can be compared.
+   */
+  private static List<String> records(List<PlayerRecord> page) {
+    List<String> records = new ArrayList<>();
+    for (PlayerRecord record : page)
+      records.add(record.getRank() + "|" + record.getUsername() + "|" + record.getTotalScore()
+              + "|" + record.getGames() + "|" + record.getBestWord() + "|"
+              + record.getBestWordScore() + "|" + record.getUniqueWords() + "|"
+              + record.getRepeatedWords());
+    return records;
+  }
+
+  /**
+   * Returns the cached top positions of a leaderboard.
+   */
+  private static Object top(Leaderboard leaderboard) throws ReflectiveOperationException {
+    Field field = Leaderboard.class.getDeclaredField("top");
+    field.setAccessible(true);
+    return field.get(leaderboard);
+  }
+
+  /**
+   * Returns the log of a leaderboard.
+   */
+  private static RecordsLog log(Leaderboard leaderboard) throws ReflectiveOperationException {
+    Field field = Leaderboard.class.getDeclaredField("log");
+    field.setAccessible(true);
+    return (RecordsLog) field.get(leaderboard);
+  }
+}
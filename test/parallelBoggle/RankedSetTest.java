@@ -0,0 +1,100 @@
+package parallelBoggle;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+import static parallelBoggle.TestSupport.*;
+
+/**
+ * RankedSetTest class.
+ * Tests the RankedSet against a TreeSet while the treap is rebalanced by
+ * its insertions and removals.
+ */
+public class RankedSetTest {
+  public static void main(String[] args) throws Exception {
+    System.out.println("RankedSet");
+    run("empty set", RankedSetTest::emptySet);
+    run("duplicates are not added", RankedSetTest::duplicatesAreNotAdded);
+    run("sorted insertions", RankedSetTest::sortedInsertions);
+    run("ranges at the edges", RankedSetTest::rangesAtTheEdges);
+    run("matches a TreeSet while rebalancing", RankedSetTest::matchesATreeSet);
+  }
+
+  static void emptySet() {
+    RankedSet<Integer> set = new RankedSet<>();
+    checkEquals(0, set.size(), "size");
+    check(set.range(0, 10).isEmpty(), "range");
+    check(!set.iterator().hasNext(), "iterator");
+    check(!set.remove(1), "missing element is not removed");
+  }
+
+  static void duplicatesAreNotAdded() {
+    RankedSet<Integer> set = new RankedSet<>();
+    check(set.add(5), "first add");
+    check(!set.add(5), "second add");
+    checkEquals(1, set.size(), "size");
+    check(set.remove(5), "remove");
+    check(!set.remove(5), "second remove");
+    checkEquals(0, set.size(), "size after removing");
+  }
+
+  static void sortedInsertions() {
+    RankedSet<Integer> set = new RankedSet<>();
+    List<Integer> expected = new ArrayList<>();
+    for (int i = 0; i < 10000; i++) {
+      set.add(i);
+      expected.add(i);
+    }
+    checkEquals(expected, elements(set), "ascending insertions");
+    for (int i = 0; i < 10000; i += 2)
+      set.remove(i);
+    expected.removeIf(i -> i % 2 == 0);
+    checkEquals(expected, elements(set), "after removing the even elements");
+    checkEquals(expected.subList(2500, 2600), set.range(2500, 100), "range in the middle");
+  }
+
+  static void rangesAtTheEdges() {
+    RankedSet<Integer> set = new RankedSet<>();
+    for (int i = 0; i < 50; i++)
+      set.add(i * 3);
+    checkEquals(List.of(0, 3, 6), set.range(0, 3), "first elements");
+    checkEquals(List.of(144, 147), set.range(48, 10), "range past the end");
+    checkEquals(Collections.emptyList(), set.range(50, 10), "range after the end");
+    checkEquals(Collections.emptyList(), set.range(10, 0), "empty range");
+  }
+
+  static void matchesATreeSet() {
+    Random random = new Random(11);
+    RankedSet<Integer> set = new RankedSet<>();
+    TreeSet<Integer> expected = new TreeSet<>();
+    for (int i = 0; i < 50000; i++) {
+      int value = random.nextInt(2000);
+      if (random.nextBoolean())
+        checkEquals(expected.add(value), set.add(value), "add " + value);
+      else
+        checkEquals(expected.remove(value), set.remove(value), "remove " + value);
+      checkEquals(expected.size(), set.size(), "size");
+      if (i % 500 == 0) {
+        List<Integer> all = new ArrayList<>(expected);
+        checkEquals(all, elements(set), "elements");
+        int from = random.nextInt(all.size() + 5);
+        int count = random.nextInt(120);
+        checkEquals(all.subList(Math.min(from, all.size()), Math.min(from + count, all.size())),
+                set.range(from, count), "range from " + from);
+      }
+    }
+  }
+
+  /**
+   * Returns the elements of the set in the order of its iterator.
+   */
+  private static List<Integer> elements(RankedSet<Integer> set) {
+    List<Integer> elements = new ArrayList<>();
+    for (int element : set)
+      elements.add(element);
+    return elements;
+  }
+}
@@ -0,0 +1,312 @@
+package parallelBoggle;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static parallelBoggle.TestSupport.*;
+
+/**
+ * RecordsLogTest class.
+ * Tests that a RecordsLog replays its events after a restart, drops an
+ * event torn by a crash, replaces its events with a snapshot, and rolls
+ * back the writes that fail.
+ */
+public class RecordsLogTest {
+  private static final long FLUSH = 5000;
+
+  public static void main(String[] args) throws Exception {
+    System.out.println("RecordsLog");
+    run("events are replayed in order", RecordsLogTest::eventsAreReplayed);
+    run("a torn event is dropped", RecordsLogTest::tornEventIsDropped);
+    run("a corrupt event is dropped", RecordsLogTest::corruptEventIsDropped);
+    run("a snapshot replaces the events before it", RecordsLogTest::snapshotReplacesEvents);
+    run("a failed write is rolled back and retried", RecordsLogTest::failedWriteIsRetried);
+    run("a log that keeps failing fails closed", RecordsLogTest::logFailsClosed);
+  }
+
+  static void eventsAreReplayed() throws Exception {
+    String path = newPath();
+    RecordsLog log = open(path, new ArrayList<>());
+    for (int i = 0; i < 100; i++)
+      log.append(event(i));
+    check(log.flush(FLUSH), "the events were flushed");
+    checkEquals(range(0, 100), replay(path), "replayed events");
+  }
+
+  static void tornEventIsDropped() throws Exception {
+    String path = newPath();
+    RecordsLog log = open(path, new ArrayList<>());
+    for (int i = 0; i < 10; i++)
+      log.append(event(i));
+    check(log.flush(FLUSH), "the events were flushed");
+    long size = Files.size(logFile(path));
+    appendBytes(path, new byte[] {20, 0, 0, 0, 7});
+    checkEquals(range(0, 10), replay(path), "events before the torn one");
+    checkEquals(size, Files.size(logFile(path)), "size of the log after the torn event");
+    RecordsLog restored = open(path, new ArrayList<>());
+    restored.append(event(10));
+    check(restored.flush(FLUSH), "the new event was flushed");
+    checkEquals(range(0, 11), replay(path), "events after a restart");
+  }
+
+  static void corruptEventIsDropped() throws Exception {
+    String path = newPath();
+    RecordsLog log = open(path, new ArrayList<>());
+    for (int i = 0; i < 5; i++)
+      log.append(event(i));
+    check(log.flush(FLUSH), "the events were flushed");
+    Path file = logFile(path);
+    byte[] bytes = Files.readAllBytes(file);
+    bytes[bytes.length - 5] ^= 1;
+    Files.write(file, bytes);
+    checkEquals(range(0, 4), replay(path), "events before the corrupt one");
+  }
+
+  static void snapshotReplacesEvents() throws Exception {
+    String path = newPath();
+    RecordsLog log = open(path, new ArrayList<>());
+    for (int i = 0; i < 10; i++)
+      log.append(event(i));
+    check(log.snapshot(event(1000)), "the snapshot was queued");
+    log.append(event(10));
+    check(log.flush(FLUSH), "the snapshot was flushed");
+    List<Integer> snapshot = new ArrayList<>();
+    List<Integer> events = new ArrayList<>();
+    new RecordsLog(path, true).restore(state -> snapshot.add(state.getInt()),
+            event -> events.add(event.getInt()));
+    checkEquals(Arrays.asList(1000), snapshot, "snapshot");
+    checkEquals(range(10, 11), events, "events after the snapshot");
+  }
+
+  static void failedWriteIsRetried() throws Exception {
+    String path = newPath();
+    RecordsLog log = open(path, new ArrayList<>());
+    FaultyChannel channel = injectFaults(log);
+    log.append(event(0));
+    check(log.flush(FLUSH), "the first event was flushed");
+    channel.failures = 2;
+    for (int i = 1; i < 5; i++)
+      log.append(event(i));
+    check(log.flush(FLUSH), "the events were written by a retry");
+    check(!log.isFailed(), "the log did not fail");
+    checkEquals(range(0, 5), replay(path), "events without the partial writes");
+  }
+
+  static void logFailsClosed() throws Exception {
+    String path = newPath();
+    RecordsLog log = open(path, new ArrayList<>());
+    FaultyChannel channel = injectFaults(log);
+    log.append(event(0));
+    check(log.flush(FLUSH), "the first event was flushed");
+    channel.failures = Integer.MAX_VALUE;
+    log.append(event(1));
+    check(!log.flush(FLUSH), "the flush of the lost event fails");
+    check(log.isFailed(), "the log failed");
+    check(log.needsSnapshot(), "the log asks for a snapshot");
+    log.append(event(2));
+    check(!log.flush(FLUSH), "the events after the failure are not written");
+    checkEquals(range(0, 1), replay(path), "only the committed events are in the log");
+    check(log.snapshot(event(1000)), "the snapshot was queued");
+    log.append(event(3));
+    check(log.flush(FLUSH), "the log was written again after the snapshot");
+    check(!log.isFailed(), "the log recovered");
+    List<Integer> snapshot = new ArrayList<>();
+    List<Integer> events = new ArrayList<>();
+    new RecordsLog(path, true).restore(state -> snapshot.add(state.getInt()),
+            event -> events.add(event.getInt()));
+    checkEquals(Arrays.asList(1000), snapshot, "snapshot");
+    checkEquals(range(3, 4), events, "events after the snapshot");
+  }
+
+  /**
+   * Returns the path of a new log in a temporary directory.
+   */
+  private static String newPath() throws IOException {
+    return Files.createTempDirectory("records-log-test").resolve("test").toString();
+  }
+
+  /**
+   * Restores and opens a log, adding the events it replays to the list.
+   */
+  private static RecordsLog open(String path, List<Integer> events) throws IOException {
+    RecordsLog log = new RecordsLog(path, true);
+    log.restore(state -> { }, event -> events.add(event.getInt()));
+    return log;
+  }
+
+  /**
+   * Returns the events that a new log replays from the given path.
+   */
+  private static List<Integer> replay(String path) throws IOException {
+    List<Integer> events = new ArrayList<>();
+    open(path, events);
+    return events;
+  }
+
+  /**
+   * Returns the payload of an event.
+   */
+  private static ByteBuffer event(int value) {
+    ByteBuffer payload = ByteBuffer.allocate(Integer.BYTES);
+    payload.putInt(value).flip();
+    return payload;
+  }
+
+  /**
+   * Returns the numbers from the first one to the last one, excluded.
+   */
+  private static List<Integer> range(int first, int last) {
+    List<Integer> values = new ArrayList<>();
+    for (int i = first; i < last; i++)
+      values.add(i);
+    return values;
+  }
+
+  /**
+   * Returns the file of the events of a log.
+   */
+  private static Path logFile(String path) {
+    return Paths.get(path + ".log");
+  }
+
+  /**
+   * Appends bytes to the file of a log, like a write cut by a crash.
+   */
+  private static void appendBytes(String path, byte[] bytes) throws IOException {
+    Files.write(logFile(path), bytes, StandardOpenOption.APPEND);
+  }
+
+  /**
+   * Replaces the channel of a log with one that can be told to fail.
+   */
+  private static FaultyChannel injectFaults(RecordsLog log) throws ReflectiveOperationException {
+    Field field = RecordsLog.class.getDeclaredField("channel");
+    field.setAccessible(true);
+    FaultyChannel faulty = new FaultyChannel((FileChannel) field.get(log));
+    field.set(log, faulty);
+    return faulty;
+  }
+
+  /**
+   * FaultyChannel class.
+   * File channel whose gathering writes fail a given number of times, after
+   * writing a few bytes, like a disk that fails in the middle of a write.
+   */
+  private static final class FaultyChannel extends FileChannel {
+    private final FileChannel channel;
+    private volatile int failures;
+
+    FaultyChannel(FileChannel channel) {
+      this.channel = channel;
+    }
+
+    @Override
+    public long write(ByteBuffer[] sources, int offset, int length) throws IOException {
+      if (failures > 0) {
+        failures--;
+        ByteBuffer part = sources[offset].duplicate();
+        part.limit(part.position() + Math.min(3, part.remaining()));
+        channel.write(part);
+        throw new IOException("Write failure injected by the test.");
+      }
+      return channel.write(sources, offset, length);
+    }
+
+    @Override
+    public int read(ByteBuffer destination) throws IOException {
+      return channel.read(destination);
+    }
+
+    @Override
+    public long read(ByteBuffer[] destinations, int offset, int length) throws IOException {
+      return channel.read(destinations, offset, length);
+    }
+
+    @Override
+    public int write(ByteBuffer source) throws IOException {
+      return channel.write(source);
+    }
+
+    @Override
+    public long position() throws IOException {
+      return channel.position();
+    }
+
+    @Override
+    public FileChannel position(long position) throws IOException {
+      channel.position(position);
+      return this;
+    }
+
+    @Override
+    public long size() throws IOException {
+      return channel.size();
+    }
+
+    @Override
+    public FileChannel truncate(long size) throws IOException {
+      channel.truncate(size);
+      return this;
+    }
+
+    @Override
+    public void force(boolean metaData) throws IOException {
+      channel.force(metaData);
+    }
+
+    @Override
+    public long transferTo(long position, long count, WritableByteChannel target)
+            throws IOException {
+      return channel.transferTo(position, count, target);
+    }
+
+    @Override
+    public long transferFrom(ReadableByteChannel source, long position, long count)
+            throws IOException {
+      return channel.transferFrom(source, position, count);
+    }
+
+    @Override
+    public int read(ByteBuffer destination, long position) throws IOException {
+      return channel.read(destination, position);
+    }
+
+    @Override
+    public int write(ByteBuffer source, long position) throws IOException {
+      return channel.write(source, position);
+    }
+
+    @Override
+    public MappedByteBuffer map(MapMode mode, long position, long size) throws IOException {
+      return channel.map(mode, position, size);
+    }
+
+    @Override
+    public FileLock lock(long position, long size, boolean shared) throws IOException {
+      return channel.lock(position, size, shared);
+    }
+
+    @Override
+    public FileLock tryLock(long position, long size, boolean shared) throws IOException {
+      return channel.tryLock(position, size, shared);
+    }
+
+    @Override
+    protected void implCloseChannel() throws IOException {
+      channel.close();
+    }
+  }
+}
@@ -0,0 +1,103 @@
+package parallelBoggle;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static parallelBoggle.TestSupport.*;
+
+/**
+ * RoundCoordinatorTest class.
+ * Tests the phases of the RoundCoordinator when every player arrives, when
+ * a phase times out, and when an absent player catches up.
+ */
+public class RoundCoordinatorTest {
+  private static final long TIMEOUT = 50;
+  private static final TimingWheel TIMERS =
+          new TimingWheel(5, TimeUnit.MILLISECONDS, 64, "test-timers");
+
+  public static void main(String[] args) throws Exception {
+    System.out.println("RoundCoordinator");
+    run("a phase ends when every player arrives", RoundCoordinatorTest::phaseEndsWhenAllArrive);
+    run("arrivals without a username are counted", RoundCoordinatorTest::anonymousArrivals);
+    run("a phase times out without the absent players",
+            RoundCoordinatorTest::phaseTimesOutWithoutAbsentPlayers);
+    run("the next phases do not wait for the absent players",
+            RoundCoordinatorTest::nextPhasesDoNotWait);
+    run("an absent player catches up", RoundCoordinatorTest::absentPlayerCatchesUp);
+    run("a restored coordinator starts at its phase", RoundCoordinatorTest::restoredPhase);
+  }
+
+  static void phaseEndsWhenAllArrive() throws Exception {
+    RoundCoordinator coordinator = coordinator(2, "a", "b");
+    CompletableFuture<Integer> a = coordinator.arrive("a");
+    check(!a.isDone(), "the first player waits");
+    checkEquals(1, coordinator.getWaiting(), "waiting players");
+    CompletableFuture<Integer> b = coordinator.arrive("b");
+    checkEquals(0, a.getNow(-1), "phase of the first player");
+    checkEquals(0, b.getNow(-1), "phase of the second player");
+    checkEquals(0, coordinator.getWaiting(), "waiting players after the phase");
+    checkEquals(0, coordinator.getAbsent(), "absent players");
+  }
+
+  static void anonymousArrivals() throws Exception {
+    RoundCoordinator coordinator = coordinator(2);
+    CompletableFuture<Integer> first = coordinator.arrive(null);
+    check(!first.isDone(), "the first arrival waits");
+    coordinator.arrive(null);
+    checkEquals(0, first.getNow(-1), "phase");
+    check(!coordinator.arrive(null).isDone(), "the next phase waits again");
+  }
+
+  static void phaseTimesOutWithoutAbsentPlayers() throws Exception {
+    RoundCoordinator coordinator = coordinator(3, "a", "b", "c");
+    CompletableFuture<Integer> a = coordinator.arrive("a");
+    CompletableFuture<Integer> b = coordinator.arrive("b");
+    check(!a.isDone(), "the phase waits for the last player");
+    checkEquals(0, a.get(1, TimeUnit.SECONDS), "phase of the first player");
+    checkEquals(0, b.get(1, TimeUnit.SECONDS), "phase of the second player");
+    checkEquals(1, coordinator.getAbsent(), "absent players");
+  }
+
+  static void nextPhasesDoNotWait() throws Exception {
+    RoundCoordinator coordinator = coordinator(3, "a", "b", "c");
+    coordinator.arrive("a");
+    coordinator.arrive("b").get(1, TimeUnit.SECONDS);
+    coordinator.arrive("a");
+    checkEquals(1, coordinator.arrive("b").getNow(-1),
+            "the second phase ends without the absent player");
+  }
+
+  static void absentPlayerCatchesUp() throws Exception {
+    RoundCoordinator coordinator = coordinator(3, "a", "b", "c");
+    coordinator.arrive("a");
+    coordinator.arrive("b").get(1, TimeUnit.SECONDS);
+    coordinator.arrive("a");
+    coordinator.arrive("b");
+    checkEquals(0, coordinator.arrive("c").getNow(-1), "the missed first phase is released");
+    checkEquals(1, coordinator.arrive("c").getNow(-1), "the missed second phase is released");
+    CompletableFuture<Integer> c = coordinator.arrive("c");
+    check(!c.isDone(), "the player that caught up waits for the current phase");
+    checkEquals(0, coordinator.getAbsent(), "absent players once it caught up");
+    coordinator.arrive("a");
+    check(!c.isDone(), "the current phase waits for every player again");
+    coordinator.arrive("b");
+    checkEquals(2, c.getNow(-1), "phase of the player that caught up");
+  }
+
+  static void restoredPhase() throws Exception {
+    RoundCoordinator coordinator = new RoundCoordinator(1, TIMEOUT, TIMERS, 2);
+    coordinator.register("a");
+    checkEquals(2, coordinator.arrive("a").getNow(-1), "first phase after a restore");
+  }
+
+  /**
+   * Creates a coordinator for the given number of players and registers
+   * the given players.
+   */
+  private static RoundCoordinator coordinator(int parties, String... players) {
+    RoundCoordinator coordinator = new RoundCoordinator(parties, TIMEOUT, TIMERS);
+    for (String player : players)
+      coordinator.register(player);
+    return coordinator;
+  }
+}
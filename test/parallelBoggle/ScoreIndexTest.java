@@ -0,0 +1,93 @@
+package parallelBoggle;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static parallelBoggle.TestSupport.*;
+
+/**
+ * ScoreIndexTest class.
+ * Tests the rankings and high scores of the ScoreIndex against a plain list
+ * of scores, including the scores that make the index grow.
+ */
+public class ScoreIndexTest {
+  public static void main(String[] args) throws Exception {
+    System.out.println("ScoreIndex");
+    run("empty index", ScoreIndexTest::emptyIndex);
+    run("ties share their rank", ScoreIndexTest::tiesShareTheirRank);
+    run("moves update the ranking", ScoreIndexTest::movesUpdateTheRanking);
+    run("grows for scores out of range", ScoreIndexTest::growsForScoresOutOfRange);
+    run("matches a sorted list", ScoreIndexTest::matchesASortedList);
+  }
+
+  static void emptyIndex() {
+    ScoreIndex index = new ScoreIndex(50);
+    checkEquals(0, index.highScore(), "high score");
+    checkEquals(1, index.rank(10), "rank");
+  }
+
+  static void tiesShareTheirRank() {
+    ScoreIndex index = new ScoreIndex(50);
+    index.add(10);
+    index.add(10);
+    index.add(5);
+    checkEquals(1, index.rank(10), "rank of the tied leaders");
+    checkEquals(2, index.rank(5), "rank after the tie");
+    checkEquals(10, index.highScore(), "high score");
+  }
+
+  static void movesUpdateTheRanking() {
+    ScoreIndex index = new ScoreIndex(50);
+    index.add(0);
+    index.add(0);
+    index.move(0, 8);
+    checkEquals(1, index.rank(8), "rank of the mover");
+    checkEquals(2, index.rank(0), "rank of the other player");
+    index.move(8, -3);
+    checkEquals(1, index.rank(0), "rank after a penalty");
+    checkEquals(2, index.rank(-3), "rank of the penalized player");
+    checkEquals(0, index.highScore(), "high score");
+  }
+
+  static void growsForScoresOutOfRange() {
+    ScoreIndex index = new ScoreIndex(10);
+    index.add(0);
+    index.add(0);
+    index.move(0, 500);
+    index.move(0, -1000);
+    checkEquals(500, index.highScore(), "high score above the range");
+    checkEquals(1, index.rank(500), "rank above the range");
+    checkEquals(2, index.rank(-1000), "rank below the range");
+  }
+
+  static void matchesASortedList() {
+    Random random = new Random(42);
+    ScoreIndex index = new ScoreIndex(100);
+    List<Integer> scores = new ArrayList<>();
+    for (int i = 0; i < 20; i++) {
+      index.add(0);
+      scores.add(0);
+    }
+    for (int step = 0; step < 2000; step++) {
+      int player = random.nextInt(scores.size());
+      int before = scores.get(player);
+      int after = before + random.nextInt(21) - 8;
+      index.move(before, after);
+      scores.set(player, after);
+      int high = Integer.MIN_VALUE;
+      for (int score : scores)
+        high = Math.max(high, score);
+      checkEquals(high, index.highScore(), "high score at step " + step);
+      checkEquals(expectedRank(scores, after), index.rank(after), "rank at step " + step);
+    }
+  }
+
+  /**
+   * Returns one plus the number of different scores higher than the given
+   * one.
+   */
+  private static int expectedRank(List<Integer> scores, int score) {
+    return 1 + (int) scores.stream().filter(s -> s > score).distinct().count();
+  }
+}
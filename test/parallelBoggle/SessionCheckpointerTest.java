@@ -0,0 +1,147 @@
+package parallelBoggle;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import static parallelBoggle.TestSupport.*;
+
+/**
+ * SessionCheckpointerTest class.
+ * Tests that a session saved by a SessionCheckpointer is restored with its
+ * board, solution, submissions, players, rejoin tokens and age, that the
+ * sessions saved with another dictionary are skipped, and that only the
+ * players with the right token rejoin a restored session.
+ */
+public class SessionCheckpointerTest {
+  private static final long FLUSH = 5000;
+  private static final String BOARD = "S S T P,R E H G,D Y R W,U U B P,";
+
+  private static WordDictionary dictionary;
+
+  public static void main(String[] args) throws Exception {
+    System.out.println("SessionCheckpointer");
+    dictionary = WordDictionary.fromText(Paths.get(WordDictionary.TEXT_FILE));
+    run("a saved session is restored", SessionCheckpointerTest::savedSessionIsRestored);
+    run("a session of another dictionary is skipped",
+            SessionCheckpointerTest::otherDictionaryIsSkipped);
+    run("a restored session is rejoined with its token",
+            SessionCheckpointerTest::rejoinNeedsTheToken);
+  }
+
+  static void savedSessionIsRestored() throws Exception {
+    String path = newPath();
+    LocalSession session = playedSession(17);
+    Thread.sleep(20);
+    long age = System.nanoTime() - session.getCreated();
+    save(new SessionCheckpointer(dictionary), path, session);
+    List<LocalSession> sessions = new SessionCheckpointer(dictionary).restore(path);
+    checkEquals(1, sessions.size(), "restored sessions");
+    LocalSession restored = sessions.get(0);
+    checkEquals(session.getId(), restored.getId(), "id");
+    checkEquals(session.getBoard(), restored.getBoard(), "board");
+    checkEquals(session.getBoardDimension(), restored.getBoardDimension(), "dimension");
+    checkEquals(session.getMinPlayers(), restored.getMinPlayers(), "players of the session");
+    checkEquals(session.getRoundsStarted(), restored.getRoundsStarted(), "rounds");
+    checkEquals(session.getSolution(), restored.getSolution(), "solution");
+    for (int i = 0; i < session.getSolution().size(); i++) {
+      checkEquals(session.getSolutionWordId(i), restored.getSolutionWordId(i), "word id " + i);
+      checkEquals(session.getSubmissions(i), restored.getSubmissions(i), "submissions " + i);
+    }
+    checkEquals(players(session), players(restored), "players");
+    for (Player player : session.getParticipants())
+      checkEquals(session.getToken(player.getUsername()),
+              restored.getToken(player.getUsername()), "token of " + player.getUsername());
+    long restoredAge = System.nanoTime() - restored.getCreated();
+    check(restoredAge >= age, "the age is kept");
+    check(restoredAge < age + TimeUnit.SECONDS.toNanos(10), "the age is not reset");
+  }
+
+  static void otherDictionaryIsSkipped() throws Exception {
+    String path = newPath();
+    save(new SessionCheckpointer(dictionary), path, playedSession(5));
+    Path words = Files.createTempFile("checkpointer-test", ".txt");
+    Files.write(words, Arrays.asList("sty", "step", "steps", "rest"));
+    WordDictionary other = WordDictionary.fromText(words);
+    check(other.checksum() != dictionary.checksum(), "the checksums differ");
+    check(new SessionCheckpointer(other).restore(path).isEmpty(), "the session is skipped");
+  }
+
+  static void rejoinNeedsTheToken() throws Exception {
+    String path = newPath();
+    LocalSession session = playedSession(9);
+    long token = session.forPlayer("bob").getRejoinToken();
+    checkThrows(BoggleException.class, () -> session.rejoin("bob", token),
+            "a session that was not restored");
+    save(new SessionCheckpointer(dictionary), path, session);
+    LocalSession restored = new SessionCheckpointer(dictionary).restore(path).get(0);
+    BoggleException e = checkThrows(BoggleException.class,
+            () -> restored.rejoin("bob", token + 1), "wrong token");
+    checkEquals("The rejoin token is not valid.", e.getMessage(), "message");
+    checkThrows(BoggleException.class, () -> restored.rejoin("carol", token), "unknown player");
+    checkThrows(BoggleException.class, () -> restored.rejoin("alice", token),
+            "token of another player");
+    restored.rejoin("bob", token);
+    checkEquals(token, restored.forPlayer("bob").getRejoinToken(), "token of the seat");
+    checkEquals(session.getPlayerStatistics("bob").getScore(),
+            restored.getPlayerStatistics("bob").getScore(), "score after rejoining");
+  }
+
+  /**
+   * Creates a session of two players that played a round in which they
+   * submitted some words of the solution, some of them more than once.
+   */
+  private static LocalSession playedSession(int id) {
+    int[] solution = new BoardSolver(dictionary.getTrie(), 4).solve(BOARD);
+    check(solution.length > 4, "the board has words");
+    Map<String, Player> players = new ConcurrentHashMap<>();
+    players.put("alice", new Player("alice"));
+    LocalSession session = new LocalSession(id, BOARD, 4, solution, dictionary, players, 3);
+    session.addPlayer("bob");
+    session.openRound(0, TimeUnit.MINUTES.toNanos(1));
+    for (int i = 0; i < 4; i++) {
+      int wordId = session.getSolutionWordId(i);
+      String player = i % 2 == 0 ? "alice" : "bob";
+      int points = session.evaluateWord(wordId) == 1 ? dictionary.getPoints(wordId) : -1;
+      session.updateScoreBoard(points, player, wordId);
+      if (i < 2)
+        session.updateScoreBoard(session.evaluateWord(wordId) == 1 ? 1 : -1, "bob", wordId);
+    }
+    session.closeRound();
+    return session;
+  }
+
+  /**
+   * Saves a session in a log that is opened by the given checkpointer.
+   */
+  private static void save(SessionCheckpointer checkpointer, String path, LocalSession session) {
+    check(checkpointer.restore(path).isEmpty(), "the log starts empty");
+    SessionRegistry registry = new SessionRegistry(1);
+    registry.restore(session, null);
+    checkpointer.close(registry, FLUSH);
+    checkEquals(1, checkpointer.getSaved(), "saved sessions");
+  }
+
+  /**
+   * Returns the statistics of the players of a session as sorted strings.
+   */
+  private static List<String> players(LocalSession session) {
+    String[] players = session.getParticipants().stream()
+            .map(p -> p.getUsername() + "|" + p.getScore() + "|" + p.getBestWord() + "|"
+                    + p.getBestWordScore() + "|" + p.getNewWords() + "|" + p.getRepeatedWords())
+            .sorted().toArray(String[]::new);
+    return Arrays.asList(players);
+  }
+
+  /**
+   * Returns the path of a checkpoint in a new temporary directory.
+   */
+  private static String newPath() throws Exception {
+    return Files.createTempDirectory("checkpointer-test").resolve("sessions").toString();
+  }
+}
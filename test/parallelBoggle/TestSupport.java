@@ -0,0 +1,63 @@
+package parallelBoggle;
+
+import java.util.Objects;
+
+/**
+ * TestSupport class.
+ * Checks shared by the tests. The tests are plain programs, because the
+ * project does not use a build tool or a test framework: every test class
+ * has a main method that runs its tests, and a check that fails throws an
+ * AssertionError, so the program ends with a non-zero exit code.
+ */
+final class TestSupport {
+  private TestSupport() {
+  }
+
+  /**
+   * Action class.
+   * A piece of code under test that may throw checked exceptions.
+   */
+  interface Action {
+    void run() throws Exception;
+  }
+
+  /**
+   * Runs a test and prints its name once it passed.
+   */
+  static void run(String name, Action test) throws Exception {
+    test.run();
+    System.out.println("  ok " + name);
+  }
+
+  /**
+   * Fails with the given message if the condition is false.
+   */
+  static void check(boolean condition, String message) {
+    if (!condition)
+      throw new AssertionError(message);
+  }
+
+  /**
+   * Fails if the actual value is not equal to the expected one.
+   */
+  static void checkEquals(Object expected, Object actual, String message) {
+    if (!Objects.equals(expected, actual))
+      throw new AssertionError(message + ": expected " + expected + " but was " + actual);
+  }
+
+  /**
+   * Fails if the action does not throw an exception of the given type.
+   * Returns the exception.
+   */
+  static <T extends Throwable> T checkThrows(Class<T> type, Action action, String message)
+          throws Exception {
+    try {
+      action.run();
+    } catch (Throwable e) {
+      if (type.isInstance(e))
+        return type.cast(e);
+      throw new AssertionError(message + ": threw " + e, e);
+    }
+    throw new AssertionError(message + ": nothing was thrown");
+  }
+}
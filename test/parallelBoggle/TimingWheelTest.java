@@ -0,0 +1,114 @@
+package parallelBoggle;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static parallelBoggle.TestSupport.*;
+
+/**
+ * TimingWheelTest class.
+ * Tests that the tasks of a TimingWheel expire after their delay, also when
+ * the delay is longer than a turn of the wheel, and that cancelled tasks
+ * never run.
+ */
+public class TimingWheelTest {
+  private static final long TICK = 5;
+
+  public static void main(String[] args) throws Exception {
+    System.out.println("TimingWheel");
+    run("tasks expire after their delay", TimingWheelTest::tasksExpireAfterTheirDelay);
+    run("delays longer than a turn", TimingWheelTest::delaysLongerThanATurn);
+    run("cancelled tasks do not run", TimingWheelTest::cancelledTasksDoNotRun);
+    run("expired tasks cannot be cancelled", TimingWheelTest::expiredTasksCannotBeCancelled);
+    run("many tasks expire", TimingWheelTest::manyTasksExpire);
+    run("a failing task does not stop the wheel", TimingWheelTest::failingTaskDoesNotStopTheWheel);
+  }
+
+  static void tasksExpireAfterTheirDelay() throws Exception {
+    TimingWheel wheel = wheel(64);
+    long start = System.nanoTime();
+    CountDownLatch done = new CountDownLatch(1);
+    long[] elapsed = new long[1];
+    wheel.schedule(() -> {
+      elapsed[0] = System.nanoTime() - start;
+      done.countDown();
+    }, 60, TimeUnit.MILLISECONDS);
+    checkEquals(1, wheel.getPending(), "pending tasks");
+    check(done.await(1, TimeUnit.SECONDS), "the task ran");
+    check(elapsed[0] >= TimeUnit.MILLISECONDS.toNanos(60 - TICK),
+            "the task ran after its delay, not after " + elapsed[0] + " ns");
+    checkEquals(0, wheel.getPending(), "pending tasks after the run");
+  }
+
+  static void delaysLongerThanATurn() throws Exception {
+    TimingWheel wheel = wheel(8);
+    long start = System.nanoTime();
+    CountDownLatch done = new CountDownLatch(1);
+    long[] elapsed = new long[1];
+    wheel.schedule(() -> {
+      elapsed[0] = System.nanoTime() - start;
+      done.countDown();
+    }, 25 * TICK, TimeUnit.MILLISECONDS);
+    check(done.await(1, TimeUnit.SECONDS), "the task ran");
+    check(elapsed[0] >= TimeUnit.MILLISECONDS.toNanos(24 * TICK),
+            "the task waited for the turns of the wheel, not " + elapsed[0] + " ns");
+  }
+
+  static void cancelledTasksDoNotRun() throws Exception {
+    TimingWheel wheel = wheel(64);
+    AtomicInteger runs = new AtomicInteger();
+    TimingWheel.Timeout cancelled = wheel.schedule(runs::incrementAndGet, 20, TimeUnit.MILLISECONDS);
+    CountDownLatch later = new CountDownLatch(1);
+    wheel.schedule(later::countDown, 60, TimeUnit.MILLISECONDS);
+    check(cancelled.cancel(), "the first cancel succeeds");
+    check(!cancelled.cancel(), "the second cancel fails");
+    checkEquals(1, wheel.getPending(), "pending tasks after the cancel");
+    check(later.await(1, TimeUnit.SECONDS), "the other task ran");
+    checkEquals(0, runs.get(), "runs of the cancelled task");
+  }
+
+  static void expiredTasksCannotBeCancelled() throws Exception {
+    TimingWheel wheel = wheel(64);
+    CountDownLatch done = new CountDownLatch(1);
+    TimingWheel.Timeout timeout = wheel.schedule(done::countDown, 10, TimeUnit.MILLISECONDS);
+    check(done.await(1, TimeUnit.SECONDS), "the task ran");
+    check(!timeout.cancel(), "a task that ran cannot be cancelled");
+    checkEquals(0, wheel.getPending(), "pending tasks");
+  }
+
+  static void manyTasksExpire() throws Exception {
+    TimingWheel wheel = wheel(16);
+    int count = 1000;
+    CountDownLatch done = new CountDownLatch(count / 2);
+    AtomicInteger cancelledRuns = new AtomicInteger();
+    for (int i = 0; i < count; i++) {
+      long delay = i % 100;
+      if (i % 2 == 0)
+        wheel.schedule(done::countDown, delay, TimeUnit.MILLISECONDS);
+      else
+        wheel.schedule(cancelledRuns::incrementAndGet, delay + 50, TimeUnit.MILLISECONDS).cancel();
+    }
+    check(done.await(2, TimeUnit.SECONDS), "every task ran");
+    Thread.sleep(200);
+    checkEquals(0, cancelledRuns.get(), "runs of the cancelled tasks");
+    checkEquals(0, wheel.getPending(), "pending tasks");
+  }
+
+  static void failingTaskDoesNotStopTheWheel() throws Exception {
+    TimingWheel wheel = wheel(64);
+    CountDownLatch done = new CountDownLatch(1);
+    wheel.schedule(() -> {
+      throw new IllegalStateException("expected by the test");
+    }, 5, TimeUnit.MILLISECONDS);
+    wheel.schedule(done::countDown, 30, TimeUnit.MILLISECONDS);
+    check(done.await(1, TimeUnit.SECONDS), "the task after the failure ran");
+  }
+
+  /**
+   * Creates a wheel with the test tick and the given number of buckets.
+   */
+  private static TimingWheel wheel(int size) {
+    return new TimingWheel(TICK, TimeUnit.MILLISECONDS, size, "test-wheel");
+  }
+}
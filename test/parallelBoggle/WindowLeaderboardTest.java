@@ -0,0 +1,173 @@
+package parallelBoggle;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static parallelBoggle.TestSupport.*;
+
+/**
+ * WindowLeaderboardTest class.
+ * Tests the ring of buckets of the hourly window of a WindowLeaderboard. The
+ * expiry thread is stopped and the time is passed to the window, so the
+ * buckets expire exactly when the tests say.
+ */
+public class WindowLeaderboardTest {
+  private static final long MINUTE = TimeUnit.MINUTES.toNanos(1);
+  private static final int BUCKETS = 60;
+
+  public static void main(String[] args) throws Exception {
+    System.out.println("WindowLeaderboard");
+    run("a bucket expires after its slice", WindowLeaderboardTest::bucketExpiresAfterItsSlice);
+    run("an idle gap detaches every bucket once", WindowLeaderboardTest::idleGapDetachesOnce);
+    run("batched subtraction keeps the sums consistent",
+            WindowLeaderboardTest::batchedSubtraction);
+    run("results that do not fit are dropped", WindowLeaderboardTest::resultsAreDropped);
+  }
+
+  static void bucketExpiresAfterItsSlice() throws Exception {
+    Hour hour = new Hour();
+    hour.add(0, player("ann", 10), player("bob", 4));
+    hour.add(30 * MINUTE, player("ann", 5));
+    checkEquals(List.of("ann|15|2", "bob|4|1"), hour.page(), "before the expiry");
+    hour.expire(BUCKETS * MINUTE - 1);
+    checkEquals(List.of("ann|15|2", "bob|4|1"), hour.page(), "at the end of the window");
+    hour.expire(BUCKETS * MINUTE);
+    checkEquals(List.of("ann|5|1"), hour.page(), "after the first slice expired");
+    hour.expire((BUCKETS + 30) * MINUTE);
+    checkEquals(List.of(), hour.page(), "after the second slice expired");
+    checkEquals(0, hour.leaderboard.size(WindowLeaderboard.HOUR), "size");
+  }
+
+  static void idleGapDetachesOnce() throws Exception {
+    Hour hour = new Hour();
+    for (int i = 0; i < BUCKETS; i++)
+      hour.add(i * MINUTE, player("p" + i, i + 1), player("all", 1));
+    checkEquals(BUCKETS + 1, hour.leaderboard.size(WindowLeaderboard.HOUR), "size");
+    long later = 1000 * BUCKETS * MINUTE;
+    hour.add(later);
+    checkEquals(BUCKETS, hour.expiring().size(), "detached buckets");
+    hour.add(later + 3 * BUCKETS * MINUTE);
+    checkEquals(BUCKETS, hour.expiring().size(), "detached buckets after a second gap");
+    hour.expire(later + 3 * BUCKETS * MINUTE);
+    check(hour.expiring().isEmpty(), "the detached buckets were subtracted");
+    checkEquals(List.of(), hour.page(), "ranking");
+    hour.add(later + 4 * BUCKETS * MINUTE, player("all", 7));
+    checkEquals(List.of("all|7|1"), hour.page(), "the sum starts from zero");
+  }
+
+  static void batchedSubtraction() throws Exception {
+    Hour hour = new Hour();
+    List<Player> first = new ArrayList<>();
+    List<Player> second = new ArrayList<>();
+    List<String> expected = new ArrayList<>();
+    for (int i = 0; i < 1000; i++) {
+      first.add(player(String.format("p%04d", i), 1000 + i));
+      if (i % 3 == 0) {
+        second.add(player(String.format("p%04d", i), i));
+        expected.add(0, String.format("p%04d|%d|1", i, i));
+      }
+    }
+    hour.add(0, first.toArray(new Player[0]));
+    hour.add(MINUTE, second.toArray(new Player[0]));
+    checkEquals(1000, hour.leaderboard.size(WindowLeaderboard.HOUR), "size");
+    hour.expire(BUCKETS * MINUTE);
+    checkEquals(expected.size(), hour.sums().size(), "sums");
+    checkEquals(expected.size(), hour.ranking().size(), "ranking");
+    List<String> page = new ArrayList<>();
+    for (int offset = 0; offset < expected.size(); offset += Leaderboard.MAX_PAGE)
+      page.addAll(hour.page(offset));
+    checkEquals(expected, page, "ranking after the expiry");
+  }
+
+  static void resultsAreDropped() throws Exception {
+    Hour hour = new Hour();
+    Player[] players = new Player[WindowLeaderboard.BUCKET_PLAYERS + 5];
+    for (int i = 0; i < players.length; i++)
+      players[i] = player("p" + i, 1);
+    hour.add(0, players);
+    checkEquals(5L, hour.leaderboard.getDropped(), "dropped results");
+    hour.add(MINUTE / 2, player("p0", 1));
+    checkEquals(5L, hour.leaderboard.getDropped(), "a player already in the bucket is kept");
+    checkEquals(WindowLeaderboard.BUCKET_PLAYERS, hour.leaderboard.size(WindowLeaderboard.HOUR),
+            "size");
+    hour.add(MINUTE, player("new", 1));
+    checkEquals(5L, hour.leaderboard.getDropped(), "the next bucket has room");
+  }
+
+  /**
+   * Creates a player with the result of a game.
+   */
+  private static Player player(String name, int score) {
+    return new Player(name, score, "", 0, 1, 0);
+  }
+
+  /**
+   * Hour class.
+   * A window leaderboard without its expiry thread and the methods of its
+   * hourly window, which are passed the time.
+   */
+  private static final class Hour {
+    private final WindowLeaderboard leaderboard;
+    private final Object window;
+
+    Hour() throws Exception {
+      leaderboard = new WindowLeaderboard();
+      for (Thread thread : Thread.getAllStackTraces().keySet()) {
+        if (thread.getName().equals("window-expiry")) {
+          thread.interrupt();
+          thread.join();
+        }
+      }
+      Field windows = WindowLeaderboard.class.getDeclaredField("windows");
+      windows.setAccessible(true);
+      window = ((Object[]) windows.get(leaderboard))[WindowLeaderboard.HOUR];
+    }
+
+    void add(long now, Player... players) throws Exception {
+      Method add = window.getClass().getDeclaredMethod("add", List.class, long.class);
+      add.setAccessible(true);
+      add.invoke(window, List.of(players), now);
+    }
+
+    void expire(long now) throws Exception {
+      Method expire = window.getClass().getDeclaredMethod("expire", long.class);
+      expire.setAccessible(true);
+      expire.invoke(window, now);
+    }
+
+    Collection<?> expiring() throws Exception {
+      return (Collection<?>) field("expiring");
+    }
+
+    Map<?, ?> sums() throws Exception {
+      return (Map<?, ?>) field("sums");
+    }
+
+    RankedSet<?> ranking() throws Exception {
+      return (RankedSet<?>) field("ranking");
+    }
+
+    private Object field(String name) throws Exception {
+      Field field = window.getClass().getDeclaredField(name);
+      field.setAccessible(true);
+      return field.get(window);
+    }
+
+    List<String> page() {
+      return page(0);
+    }
+
+    List<String> page(int offset) {
+      List<String> page = new ArrayList<>();
+      for (PlayerRecord record : leaderboard.getPage(WindowLeaderboard.HOUR, offset,
+              Leaderboard.MAX_PAGE))
+        page.add(record.getUsername() + "|" + record.getTotalScore() + "|" + record.getGames());
+      return page;
+    }
+  }
+}